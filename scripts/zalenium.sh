@@ -5,12 +5,29 @@ CONTAINER_LIVE_PREVIEW_PORT="5555"
 CHROME_CONTAINERS=1
 FIREFOX_CONTAINERS=1
 MAX_DOCKER_SELENIUM_CONTAINERS=10
+CHROME_POOL_SIZE=0
+FIREFOX_POOL_SIZE=0
+MAX_TEST_SESSIONS=1
+POOL_PROFILES=""
+MAX_CONCURRENT_CREATES=5
+CREATES_PER_SECOND=5
+MAX_NODE_AGE_SECS=0
+DOCKER_CONNECTION_POOL_SIZE=100
+DOCKER_HOSTS=""
+HUB_ADDRESS=""
+ADMISSION_CONTROL_ENABLED=false
+ADMISSION_MAX_CPU_PERCENT=90
+ADMISSION_MIN_FREE_MEMORY_MB=1024
+VIDEO_STREAMING_ENABLED=false
+CLOUD_DOWNLOADS_PER_PROVIDER=3
+CLOUD_CONCURRENCY_POLL_SECS=30
 SELENIUM_ARTIFACT="$(pwd)/selenium-server-standalone-${selenium-server.major-minor.version}.${selenium-server.patch-level.version}.jar"
 ZALENIUM_ARTIFACT="$(pwd)/${project.build.finalName}.jar"
 SAUCE_LABS_ENABLED=false
 BROWSER_STACK_ENABLED=false
 TESTINGBOT_ENABLED=false
 VIDEO_RECORDING_ENABLED=true
+KEEP_ONLY_FAILED_TESTS_VIDEOS=false
 SCREEN_WIDTH=1900
 SCREEN_HEIGHT=1880
 TZ="Europe/Berlin"
@@ -342,12 +359,29 @@ StartUp()
     export ZALENIUM_CHROME_CONTAINERS=${CHROME_CONTAINERS}
     export ZALENIUM_FIREFOX_CONTAINERS=${FIREFOX_CONTAINERS}
     export ZALENIUM_MAX_DOCKER_SELENIUM_CONTAINERS=${MAX_DOCKER_SELENIUM_CONTAINERS}
+    export ZALENIUM_CHROME_POOL_SIZE=${CHROME_POOL_SIZE}
+    export ZALENIUM_FIREFOX_POOL_SIZE=${FIREFOX_POOL_SIZE}
+    export ZALENIUM_MAX_TEST_SESSIONS=${MAX_TEST_SESSIONS}
     export ZALENIUM_VIDEO_RECORDING_ENABLED=${VIDEO_RECORDING_ENABLED}
+    export ZALENIUM_KEEP_ONLY_FAILED_TESTS_VIDEOS=${KEEP_ONLY_FAILED_TESTS_VIDEOS}
     export ZALENIUM_TZ=${TZ}
     export ZALENIUM_SCREEN_WIDTH=${SCREEN_WIDTH}
     export ZALENIUM_SCREEN_HEIGHT=${SCREEN_HEIGHT}
     export ZALENIUM_CONTAINER_NAME=${CONTAINER_NAME}
     export ZALENIUM_CONTAINER_LIVE_PREVIEW_PORT=${CONTAINER_LIVE_PREVIEW_PORT}
+    export ZALENIUM_POOL_PROFILES=${POOL_PROFILES}
+    export ZALENIUM_MAX_CONCURRENT_CREATES=${MAX_CONCURRENT_CREATES}
+    export ZALENIUM_CREATES_PER_SECOND=${CREATES_PER_SECOND}
+    export ZALENIUM_MAX_NODE_AGE_SECS=${MAX_NODE_AGE_SECS}
+    export ZALENIUM_DOCKER_CONNECTION_POOL_SIZE=${DOCKER_CONNECTION_POOL_SIZE}
+    export ZALENIUM_DOCKER_HOSTS=${DOCKER_HOSTS}
+    export ZALENIUM_HUB_ADDRESS=${HUB_ADDRESS}
+    export ZALENIUM_ADMISSION_CONTROL_ENABLED=${ADMISSION_CONTROL_ENABLED}
+    export ZALENIUM_ADMISSION_MAX_CPU_PERCENT=${ADMISSION_MAX_CPU_PERCENT}
+    export ZALENIUM_ADMISSION_MIN_FREE_MEMORY_MB=${ADMISSION_MIN_FREE_MEMORY_MB}
+    export ZALENIUM_VIDEO_STREAMING_ENABLED=${VIDEO_STREAMING_ENABLED}
+    export ZALENIUM_CLOUD_DOWNLOADS_PER_PROVIDER=${CLOUD_DOWNLOADS_PER_PROVIDER}
+    export ZALENIUM_CLOUD_CONCURRENCY_POLL_SECS=${CLOUD_CONCURRENCY_POLL_SECS}
 
     # Random ID used for Google Analytics
     # If it is running inside the Zalando Jenkins env, we pick the team name from the $BUILD_URL
@@ -687,14 +721,31 @@ function usage()
     echo -e "\t --chromeContainers -> Number of Chrome containers created on startup. Default is 1 when parameter is absent."
     echo -e "\t --firefoxContainers -> Number of Firefox containers created on startup. Default is 1 when parameter is absent."
     echo -e "\t --maxDockerSeleniumContainers -> Max number of docker-selenium containers running at the same time. Default is 10 when parameter is absent."
+    echo -e "\t --chromePoolSize -> Number of idle Chrome nodes kept ready, refilled when a node takes a test. Default is 0 when parameter is absent."
+    echo -e "\t --firefoxPoolSize -> Number of idle Firefox nodes kept ready, refilled when a node takes a test. Default is 0 when parameter is absent."
+    echo -e "\t --maxTestSessions -> Number of tests a docker-selenium container runs, cleaning up the browser in between, before it is replaced. Default is 1 when parameter is absent."
     echo -e "\t --sauceLabsEnabled -> Determines if the Sauce Labs node is started. Defaults to 'false' when parameter absent."
     echo -e "\t --browserStackEnabled -> Determines if the Browser Stack node is started. Defaults to 'false' when parameter absent."
     echo -e "\t --testingBotEnabled -> Determines if the TestingBot node is started. Defaults to 'false' when parameter absent."
     echo -e "\t --startTunnel -> When using a cloud testing platform is enabled, starts the tunnel to allow local testing. Defaults to 'false'."
     echo -e "\t --videoRecordingEnabled -> Sets if video is recorded in every test. Defaults to 'true' when parameter absent."
+    echo -e "\t --keepOnlyFailedTestsVideos -> Keeps only the videos of tests that set the cookie 'zaleniumTestPassed' to 'false', or did not set it, or timed out. Defaults to 'false' when parameter absent."
     echo -e "\t --screenWidth -> Sets the screen width. Defaults to 1900"
     echo -e "\t --screenHeight -> Sets the screen height. Defaults to 1880"
     echo -e "\t --timeZone -> Sets the time zone in the containers. Defaults to \"Europe/Berlin\""
+    echo -e "\t --poolProfiles -> Idle nodes kept ready with their own screen resolution and time zone, as \"browser:WIDTHxHEIGHT:TimeZone:size,...\", e.g. \"chrome:1280x1024:America/Montreal:2\". Empty when parameter is absent."
+    echo -e "\t --maxConcurrentCreates -> Number of docker-selenium containers created at the same time. Default is 5 when parameter is absent."
+    echo -e "\t --createsPerSecond -> Max number of docker-selenium container creations started per second, so the hub is not flooded with node registrations. Default is 5 when parameter is absent."
+    echo -e "\t --maxNodeAgeSecs -> Seconds after which a docker-selenium container takes no new tests and is replaced once its current test is done. Default is 0 (no age limit) when parameter is absent."
+    echo -e "\t --dockerConnectionPoolSize -> Connections to each Docker daemon shared by all the Docker calls of the hub. Default is 100 when parameter is absent."
+    echo -e "\t --dockerHosts -> Other Docker hosts where docker-selenium containers are created, as \"dockerUri;nodeAddress;maxContainers,...\". The node address and the max. amount of containers are optional. Empty when parameter is absent."
+    echo -e "\t --hubAddress -> Address (host:port) where the nodes on other Docker hosts reach the hub, needed together with --dockerHosts. Empty when parameter is absent."
+    echo -e "\t --admissionControlEnabled -> Creates local docker-selenium containers only while the machine has CPU and memory left, --maxDockerSeleniumContainers is still the upper limit. Defaults to 'false' when parameter absent."
+    echo -e "\t --admissionMaxCpuPercent -> With admission control, max. CPU usage in percent of the machine with the new container running. Default is 90 when parameter is absent."
+    echo -e "\t --admissionMinFreeMemoryMb -> With admission control, memory in MB that has to stay free after a new container is created. Default is 1024 when parameter is absent."
+    echo -e "\t --videoStreamingEnabled -> Nodes on the local Docker host record the video straight into the videos folder, it only works when /home/seluser/videos is mounted from the host. Defaults to 'false' when parameter absent."
+    echo -e "\t --cloudDownloadsPerProvider -> Videos and logs downloaded at the same time from each cloud testing platform, the pending downloads survive a restart. Default is 3 when parameter is absent."
+    echo -e "\t --cloudConcurrencyPollSecs -> Seconds between the reads of the free slots in the account of each cloud testing platform. Default is 30 when parameter is absent."
     echo -e "\t --sendAnonymousUsageInfo -> Collects anonymous usage of the tool. Defaults to 'true'"
     echo -e "\t --debugEnabled -> enables LogLevel.FINE. Defaults to 'false'"
     echo ""
@@ -738,6 +789,15 @@ case ${SCRIPT_ACTION} in
                 --maxDockerSeleniumContainers)
                     MAX_DOCKER_SELENIUM_CONTAINERS=${VALUE}
                     ;;
+                --chromePoolSize)
+                    CHROME_POOL_SIZE=${VALUE}
+                    ;;
+                --firefoxPoolSize)
+                    FIREFOX_POOL_SIZE=${VALUE}
+                    ;;
+                --maxTestSessions)
+                    MAX_TEST_SESSIONS=${VALUE}
+                    ;;
                 --sauceLabsEnabled)
                     SAUCE_LABS_ENABLED=${VALUE}
                     ;;
@@ -750,6 +810,9 @@ case ${SCRIPT_ACTION} in
                 --videoRecordingEnabled)
                     VIDEO_RECORDING_ENABLED=${VALUE}
                     ;;
+                --keepOnlyFailedTestsVideos)
+                    KEEP_ONLY_FAILED_TESTS_VIDEOS=${VALUE}
+                    ;;
                 --screenWidth)
                     SCREEN_WIDTH=${VALUE}
                     ;;
@@ -759,6 +822,45 @@ case ${SCRIPT_ACTION} in
                 --timeZone)
                     TZ=${VALUE}
                     ;;
+                --poolProfiles)
+                    POOL_PROFILES=${VALUE}
+                    ;;
+                --maxConcurrentCreates)
+                    MAX_CONCURRENT_CREATES=${VALUE}
+                    ;;
+                --createsPerSecond)
+                    CREATES_PER_SECOND=${VALUE}
+                    ;;
+                --maxNodeAgeSecs)
+                    MAX_NODE_AGE_SECS=${VALUE}
+                    ;;
+                --dockerConnectionPoolSize)
+                    DOCKER_CONNECTION_POOL_SIZE=${VALUE}
+                    ;;
+                --dockerHosts)
+                    DOCKER_HOSTS=${VALUE}
+                    ;;
+                --hubAddress)
+                    HUB_ADDRESS=${VALUE}
+                    ;;
+                --admissionControlEnabled)
+                    ADMISSION_CONTROL_ENABLED=${VALUE}
+                    ;;
+                --admissionMaxCpuPercent)
+                    ADMISSION_MAX_CPU_PERCENT=${VALUE}
+                    ;;
+                --admissionMinFreeMemoryMb)
+                    ADMISSION_MIN_FREE_MEMORY_MB=${VALUE}
+                    ;;
+                --videoStreamingEnabled)
+                    VIDEO_STREAMING_ENABLED=${VALUE}
+                    ;;
+                --cloudDownloadsPerProvider)
+                    CLOUD_DOWNLOADS_PER_PROVIDER=${VALUE}
+                    ;;
+                --cloudConcurrencyPollSecs)
+                    CLOUD_CONCURRENCY_POLL_SECS=${VALUE}
+                    ;;
                 --sendAnonymousUsageInfo)
                     SEND_ANONYMOUS_USAGE_INFO=${VALUE}
                     ;;
@@ -0,0 +1,227 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.CpuStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides if a Docker host has enough CPU and memory left for one more docker-selenium container, instead of
+ * relying only on a fixed amount of containers.
+ * The host resources and the usage of the running containers (Docker stats) are sampled in the background, so
+ * asking for admission does not call the daemon nor read any file. The containers admitted since the last sample
+ * are added to it with the average usage of a container, since they don't show up in the load right away.
+ * Once the thresholds are crossed, new containers are admitted again only after the usage drops clearly below
+ * them, otherwise creations would start and stop with every sample.
+ */
+@SuppressWarnings("WeakerAccess")
+public class AdmissionController {
+
+    private static final Logger LOGGER = Logger.getLogger(AdmissionController.class.getName());
+    private static final String LOGGING_PREFIX = "[AC] ";
+    private static final long SAMPLE_INTERVAL_SECS = 5;
+    // Docker stats take a couple of seconds per container, so only a few containers are sampled each time.
+    private static final int CONTAINERS_SAMPLED_PER_INTERVAL = 5;
+    // Used until some containers were sampled, docker-selenium containers get 1GB of shared memory.
+    private static final long DEFAULT_CONTAINER_MEMORY_BYTES = 1024L * 1024 * 1024;
+    private static final double DEFAULT_CONTAINER_CPUS = 0.5;
+    // Admission resumes when the CPU usage is below this share of the max. CPU usage...
+    private static final double RESUME_CPU_FACTOR = 0.85;
+    // ...and the free memory is above this multiple of the min. free memory.
+    private static final double RESUME_MEMORY_FACTOR = 1.5;
+
+    private final HostResourceReader hostResourceReader;
+    private final Supplier<DockerClient> dockerClient;
+    private final Supplier<Collection<String>> runningContainerIds;
+    private final int maxCpuPercent;
+    private final long minFreeMemoryBytes;
+    private final Map<String, ContainerUsage> containerUsages = new HashMap<>();
+    private List<String> containersToSample = new ArrayList<>();
+    private HostResourceReader.HostResources hostResources;
+    private int containersAdmittedSinceSample = 0;
+    private boolean admitting = true;
+    private ScheduledExecutorService sampleExecutor;
+
+    public AdmissionController(HostResourceReader hostResourceReader, Supplier<DockerClient> dockerClient,
+                               Supplier<Collection<String>> runningContainerIds, int maxCpuPercent,
+                               long minFreeMemoryBytes) {
+        this.hostResourceReader = hostResourceReader;
+        this.dockerClient = dockerClient;
+        this.runningContainerIds = runningContainerIds;
+        this.maxCpuPercent = maxCpuPercent;
+        this.minFreeMemoryBytes = minFreeMemoryBytes;
+    }
+
+    public synchronized void start() {
+        if (sampleExecutor != null) {
+            return;
+        }
+        sampleExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AdmissionControllerSample");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampleExecutor.scheduleWithFixedDelay(this::sample, 0, SAMPLE_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (sampleExecutor != null) {
+            sampleExecutor.shutdownNow();
+            sampleExecutor = null;
+        }
+    }
+
+    /*
+        True when one more container fits with the last sample plus the containers admitted after it. Until the
+        first sample is taken, containers are admitted.
+     */
+    public synchronized boolean canAdmit() {
+        if (hostResources == null) {
+            return true;
+        }
+        int containersToAdd = containersAdmittedSinceSample + 1;
+        double cpuPercent = (getUsedCpus() + containersToAdd * getAverageContainerCpus())
+                / hostResources.getCpus() * 100;
+        long freeMemory = hostResources.getMemoryAvailable() - containersToAdd * getAverageContainerMemory();
+        if (admitting && (cpuPercent > maxCpuPercent || freeMemory < minFreeMemoryBytes)) {
+            admitting = false;
+            LOGGER.log(Level.INFO, () -> String.format("%sNot admitting new containers, with one more container " +
+                    "CPU usage would be %.0f%% and free memory %s MB -> %s", LOGGING_PREFIX, cpuPercent,
+                    freeMemory / (1024 * 1024), hostResources));
+        } else if (!admitting && cpuPercent <= maxCpuPercent * RESUME_CPU_FACTOR
+                && freeMemory >= minFreeMemoryBytes * RESUME_MEMORY_FACTOR) {
+            admitting = true;
+            LOGGER.log(Level.INFO, () -> String.format("%sAdmitting new containers again -> %s", LOGGING_PREFIX,
+                    hostResources));
+        }
+        return admitting;
+    }
+
+    public synchronized void containerAdmitted() {
+        containersAdmittedSinceSample++;
+    }
+
+    public synchronized boolean isAdmitting() {
+        return admitting;
+    }
+
+    /*
+        Reads the host resources and the Docker stats of a few running containers. Containers that are not running
+        anymore are forgotten.
+     */
+    @VisibleForTesting
+    void sample() {
+        try {
+            HostResourceReader.HostResources currentHostResources = hostResourceReader.read();
+            Collection<String> runningIds = runningContainerIds.get();
+            List<String> sampledIds;
+            synchronized (this) {
+                containerUsages.keySet().retainAll(runningIds);
+                containersToSample.retainAll(runningIds);
+                if (containersToSample.isEmpty()) {
+                    containersToSample = new ArrayList<>(runningIds);
+                }
+                int amountToSample = Math.min(CONTAINERS_SAMPLED_PER_INTERVAL, containersToSample.size());
+                sampledIds = new ArrayList<>(containersToSample.subList(0, amountToSample));
+                containersToSample.subList(0, amountToSample).clear();
+            }
+            Map<String, ContainerUsage> sampledUsages = new HashMap<>();
+            for (String containerId : sampledIds) {
+                ContainerUsage containerUsage = getContainerUsage(containerId);
+                if (containerUsage != null) {
+                    sampledUsages.put(containerId, containerUsage);
+                }
+            }
+            synchronized (this) {
+                containerUsages.putAll(sampledUsages);
+                containerUsages.keySet().retainAll(runningIds);
+                hostResources = currentHostResources;
+                containersAdmittedSinceSample = 0;
+            }
+            LOGGER.log(Level.FINE, () -> String.format("%s%s, %s containers, %.2f cpus and %s MB per container",
+                    LOGGING_PREFIX, currentHostResources, runningIds.size(), getAverageContainerCpus(),
+                    getAverageContainerMemory() / (1024 * 1024)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, LOGGING_PREFIX + "Could not read the host resources, " + e.toString(), e);
+        }
+    }
+
+    private ContainerUsage getContainerUsage(String containerId) throws InterruptedException {
+        try {
+            ContainerStats containerStats = dockerClient.get().stats(containerId);
+            Long memoryUsage = containerStats.memoryStats() == null ? null : containerStats.memoryStats().usage();
+            return new ContainerUsage(getCpus(containerStats), memoryUsage == null ? 0 : memoryUsage);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "No stats for container " + containerId, e);
+            return null;
+        }
+    }
+
+    /*
+        Same calculation as "docker stats": share of the CPU time used between the two readings, times the
+        amount of CPUs.
+     */
+    private static double getCpus(ContainerStats containerStats) {
+        CpuStats cpuStats = containerStats.cpuStats();
+        CpuStats preCpuStats = containerStats.precpuStats();
+        if (cpuStats == null || preCpuStats == null || cpuStats.systemCpuUsage() == null
+                || preCpuStats.systemCpuUsage() == null) {
+            return 0;
+        }
+        double containerDelta = cpuStats.cpuUsage().totalUsage() - preCpuStats.cpuUsage().totalUsage();
+        double systemDelta = cpuStats.systemCpuUsage() - preCpuStats.systemCpuUsage();
+        List<Long> perCpuUsage = cpuStats.cpuUsage().percpuUsage();
+        int cpus = perCpuUsage == null || perCpuUsage.isEmpty() ? 1 : perCpuUsage.size();
+        return systemDelta > 0 && containerDelta > 0 ? containerDelta / systemDelta * cpus : 0;
+    }
+
+    /*
+        The load average reacts slowly, so the CPU used by the containers is taken when it is higher.
+     */
+    private synchronized double getUsedCpus() {
+        double containersCpus = containerUsages.values().stream().mapToDouble(usage -> usage.cpus).sum();
+        return Math.max(hostResources.getLoad(), containersCpus);
+    }
+
+    private synchronized double getAverageContainerCpus() {
+        return containerUsages.isEmpty() ? DEFAULT_CONTAINER_CPUS :
+                containerUsages.values().stream().mapToDouble(usage -> usage.cpus).average().orElse(0);
+    }
+
+    private synchronized long getAverageContainerMemory() {
+        return containerUsages.isEmpty() ? DEFAULT_CONTAINER_MEMORY_BYTES :
+                (long) containerUsages.values().stream().mapToLong(usage -> usage.memoryBytes).average().orElse(0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, %s", admitting ? "admitting" : "not admitting",
+                hostResources == null ? "not sampled yet" : hostResources.toString());
+    }
+
+    private static class ContainerUsage {
+        private final double cpus;
+        private final long memoryBytes;
+
+        ContainerUsage(double cpus, long memoryBytes) {
+            this.cpus = cpus;
+            this.memoryBytes = memoryBytes;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending calls to a dependency that keeps failing or answering too slowly. After a number of consecutive
+ * failed (or slow) calls the circuit opens and calls are rejected right away, after a while a single trial call
+ * is let through, and the circuit closes again when it works.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long slowCallMillis;
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedTime = 0;
+    private boolean trialCallInFlight = false;
+
+    public CircuitBreaker(int failureThreshold, long openMillis, long slowCallMillis) {
+        this(failureThreshold, openMillis, slowCallMillis, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(int failureThreshold, long openMillis, long slowCallMillis, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.slowCallMillis = slowCallMillis;
+        this.clock = clock;
+    }
+
+    /*
+        Returns false when the call has to be rejected. Once the circuit was open long enough, only one caller
+        gets through to try the dependency again.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (clock.getAsLong() - openedTime < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialCallInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (trialCallInFlight) {
+                    return false;
+                }
+                trialCallInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /*
+        A call that worked, but took longer than the slow call threshold, counts as a failure.
+     */
+    public synchronized void recordSuccess(long latencyMillis) {
+        if (slowCallMillis > 0 && latencyMillis >= slowCallMillis) {
+            recordFailure();
+            return;
+        }
+        consecutiveFailures = 0;
+        trialCallInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        trialCallInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedTime = clock.getAsLong();
+        }
+    }
+
+    /*
+        The call did not tell anything about the health of the dependency (e.g. it was interrupted).
+     */
+    public synchronized void recordIgnored() {
+        trialCallInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
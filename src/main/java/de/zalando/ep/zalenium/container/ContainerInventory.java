@@ -0,0 +1,285 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Event;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory view of the docker-selenium containers. It is seeded once with a container listing and then kept
+ * up to date with the Docker events stream (create, start, die, destroy), so the amount of running containers
+ * can be read without calling the Docker daemon. A periodic reconcile pass fixes any drift with the daemon.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ContainerInventory {
+
+    public static final String BROWSER_LABEL = "zalenium.browser";
+    public static final String NODE_PORT_LABEL = "zalenium.node.port";
+    private static final Logger LOGGER = Logger.getLogger(ContainerInventory.class.getName());
+    private static final long RECONCILE_INTERVAL_SECS = 60;
+    private static final String UNKNOWN_BROWSER = "unknown";
+
+    private final DockerClient dockerClient;
+    private final String imageName;
+    private final Map<String, ContainerRecord> containers = new HashMap<>();
+    private final Map<String, Integer> runningContainersPerBrowser = new HashMap<>();
+    private final Map<String, Integer> runningContainersPerImage = new HashMap<>();
+    private final List<BiConsumer<String, Integer>> nodeContainerRemovedListeners = new CopyOnWriteArrayList<>();
+    private int runningContainers = 0;
+    private DockerEventWatcher eventWatcher;
+    private ScheduledExecutorService reconcileExecutor;
+
+    public ContainerInventory(DockerClient dockerClient, String imageName) {
+        this.dockerClient = dockerClient;
+        this.imageName = imageName;
+    }
+
+    /*
+        Seeds the inventory and starts following the events stream.
+     */
+    public synchronized void start() {
+        if (eventWatcher != null) {
+            return;
+        }
+        eventWatcher = new DockerEventWatcher(dockerClient, DockerClient.EventsParam.type(Event.Type.CONTAINER));
+        eventWatcher.addEventListener(this::processEvent);
+        eventWatcher.addReconnectListener(this::reconcile);
+        eventWatcher.start();
+        reconcile();
+        reconcileExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ContainerInventoryReconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconcileExecutor.scheduleWithFixedDelay(this::reconcile, RECONCILE_INTERVAL_SECS, RECONCILE_INTERVAL_SECS,
+                TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (eventWatcher != null) {
+            eventWatcher.stop();
+            eventWatcher = null;
+        }
+        if (reconcileExecutor != null) {
+            reconcileExecutor.shutdownNow();
+            reconcileExecutor = null;
+        }
+    }
+
+    public synchronized int getRunningCount() {
+        return runningContainers;
+    }
+
+    public synchronized int getRunningCount(String browser) {
+        return runningContainersPerBrowser.getOrDefault(normalizeBrowser(browser), 0);
+    }
+
+    public synchronized int getRunningCountByImage(String image) {
+        return runningContainersPerImage.getOrDefault(image, 0);
+    }
+
+    public synchronized Set<String> getRunningContainerIds() {
+        Set<String> runningContainerIds = new HashSet<>();
+        containers.forEach((containerId, record) -> {
+            if (record.running) {
+                runningContainerIds.add(containerId);
+            }
+        });
+        return runningContainerIds;
+    }
+
+    /*
+        Invoked with the container id and the node port label when a node container is removed, also for the ones
+        whose node never registered.
+     */
+    public void addNodeContainerRemovedListener(BiConsumer<String, Integer> nodeContainerRemovedListener) {
+        nodeContainerRemovedListeners.add(nodeContainerRemovedListener);
+    }
+
+    /*
+        Registers a container right after it was created, so the counts are correct before its event arrives.
+     */
+    public void containerCreated(String containerId, String image, String browser) {
+        updateContainer(containerId, image, browser, true);
+    }
+
+    /*
+        Replaces the current state with a fresh container listing, logging the differences found.
+     */
+    public void reconcile() {
+        long listingStartTime = System.nanoTime();
+        List<Container> containerList;
+        try {
+            containerList = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Containers could not be listed, inventory will be reconciled later.", e);
+            return;
+        }
+        Map<String, ContainerRecord> currentContainers = new HashMap<>();
+        if (containerList != null) {
+            for (Container container : containerList) {
+                if (container.image() == null || !container.image().contains(imageName)) {
+                    continue;
+                }
+                String browser = container.labels() == null ? null : container.labels().get(BROWSER_LABEL);
+                boolean running = !"exited".equalsIgnoreCase(container.state());
+                currentContainers.put(container.id(),
+                        new ContainerRecord(container.image(), normalizeBrowser(browser), running, listingStartTime));
+            }
+        }
+        synchronized (this) {
+            // Changes received while the listing was running are newer than the listing itself.
+            for (Map.Entry<String, ContainerRecord> container : containers.entrySet()) {
+                if (container.getValue().updateTime - listingStartTime > 0) {
+                    currentContainers.put(container.getKey(), container.getValue());
+                }
+            }
+            if (!currentContainers.equals(containers)) {
+                LOGGER.log(Level.FINE, "Container inventory drift fixed, {0} containers tracked, {1} listed.",
+                        new Object[]{containers.size(), currentContainers.size()});
+            }
+            containers.clear();
+            containers.putAll(currentContainers);
+            recount();
+        }
+    }
+
+    @VisibleForTesting
+    void processEvent(Event event) {
+        if (event.type() != null && event.type() != Event.Type.CONTAINER) {
+            return;
+        }
+        String action = DockerEventWatcher.getAction(event);
+        String containerId = DockerEventWatcher.getActorId(event);
+        if (action == null || containerId == null) {
+            return;
+        }
+        String image = DockerEventWatcher.getActorAttribute(event, "image");
+        String browser = DockerEventWatcher.getActorAttribute(event, BROWSER_LABEL);
+        switch (action) {
+            case "create":
+            case "start":
+            case "restart":
+            case "unpause":
+                if (image != null && image.contains(imageName)) {
+                    updateContainer(containerId, image, browser, true);
+                }
+                break;
+            case "die":
+            case "stop":
+                markExited(containerId);
+                break;
+            case "destroy":
+                removeContainer(containerId);
+                notifyNodeContainerRemoved(containerId, DockerEventWatcher.getActorAttribute(event, NODE_PORT_LABEL));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void notifyNodeContainerRemoved(String containerId, String nodePortLabel) {
+        if (nodePortLabel == null) {
+            return;
+        }
+        int nodePort;
+        try {
+            nodePort = Integer.parseInt(nodePortLabel);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.FINE, "Container {0} has an invalid node port label {1}",
+                    new Object[]{containerId, nodePortLabel});
+            return;
+        }
+        for (BiConsumer<String, Integer> nodeContainerRemovedListener : nodeContainerRemovedListeners) {
+            nodeContainerRemovedListener.accept(containerId, nodePort);
+        }
+    }
+
+    private synchronized void updateContainer(String containerId, String image, String browser, boolean running) {
+        ContainerRecord current = containers.get(containerId);
+        String recordBrowser = browser == null && current != null ? current.browser : normalizeBrowser(browser);
+        containers.put(containerId, new ContainerRecord(image, recordBrowser, running, System.nanoTime()));
+        recount();
+    }
+
+    private synchronized void markExited(String containerId) {
+        ContainerRecord current = containers.get(containerId);
+        if (current != null && current.running) {
+            containers.put(containerId, new ContainerRecord(current.image, current.browser, false, System.nanoTime()));
+            recount();
+        }
+    }
+
+    private synchronized void removeContainer(String containerId) {
+        if (containers.remove(containerId) != null) {
+            recount();
+        }
+    }
+
+    /*
+        Counters are rebuilt on each state change, which happens far less often than they are read.
+     */
+    private void recount() {
+        runningContainers = 0;
+        runningContainersPerBrowser.clear();
+        runningContainersPerImage.clear();
+        for (ContainerRecord record : containers.values()) {
+            if (record.running) {
+                runningContainers++;
+                runningContainersPerBrowser.merge(record.browser, 1, Integer::sum);
+                runningContainersPerImage.merge(record.image, 1, Integer::sum);
+            }
+        }
+    }
+
+    private static String normalizeBrowser(String browser) {
+        return browser == null || browser.isEmpty() ? UNKNOWN_BROWSER : browser.toLowerCase();
+    }
+
+    private static class ContainerRecord {
+        private final String image;
+        private final String browser;
+        private final boolean running;
+        private final long updateTime;
+
+        ContainerRecord(String image, String browser, boolean running, long updateTime) {
+            this.image = image;
+            this.browser = browser;
+            this.running = running;
+            this.updateTime = updateTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ContainerRecord that = (ContainerRecord) o;
+            return running == that.running && image.equals(that.image) && browser.equals(that.browser);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * image.hashCode() + browser.hashCode()) + (running ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package de.zalando.ep.zalenium.container;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs container creations in parallel, with a limit on how many run at the same time and a token bucket on how
+ * often a new one can start. Too many containers starting at once means too many nodes trying to register at the
+ * same time, and the hub just cannot process all the registrations fast enough, causing many unexpected errors.
+ * Create tasks return the port of the new node, or -1 when nothing was created.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ContainerProvisioner {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerProvisioner.class.getName());
+    private static final String LOGGING_PREFIX = "[CP] ";
+
+    private final ThreadPoolExecutor executor;
+    private final TokenBucket tokenBucket;
+    private final AtomicInteger inFlightCreates = new AtomicInteger(0);
+    private final AtomicLong completedCreates = new AtomicLong(0);
+    private final AtomicLong failedCreates = new AtomicLong(0);
+    private final AtomicLong totalCreateLatencyMillis = new AtomicLong(0);
+    private final AtomicLong maxCreateLatencyMillis = new AtomicLong(0);
+
+    public ContainerProvisioner(int maxConcurrentCreates, double createsPerSecond) {
+        int threads = Math.max(1, maxConcurrentCreates);
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ContainerProvisioner-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.tokenBucket = new TokenBucket(createsPerSecond, Math.max(1, (int) Math.ceil(createsPerSecond)));
+    }
+
+    /*
+        Queues a create task, the returned future completes with the node port (or -1) once the task has run.
+     */
+    public CompletableFuture<Integer> submit(String description, IntSupplier createTask) {
+        CreateTask task = new CreateTask(description, createTask);
+        executor.execute(task);
+        return task.result;
+    }
+
+    /*
+        Tasks still queued complete with -1, so whatever was reserved for them is given back.
+     */
+    public void shutdown() {
+        for (Runnable queuedTask : executor.shutdownNow()) {
+            if (queuedTask instanceof CreateTask) {
+                ((CreateTask) queuedTask).result.complete(-1);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getInFlightCreates() {
+        return inFlightCreates.get();
+    }
+
+    public long getCompletedCreates() {
+        return completedCreates.get();
+    }
+
+    public long getFailedCreates() {
+        return failedCreates.get();
+    }
+
+    public long getAverageCreateLatencyMillis() {
+        long creates = completedCreates.get() + failedCreates.get();
+        return creates == 0 ? 0 : totalCreateLatencyMillis.get() / creates;
+    }
+
+    public long getMaxCreateLatencyMillis() {
+        return maxCreateLatencyMillis.get();
+    }
+
+    private void create(String description, IntSupplier createTask, CompletableFuture<Integer> result) {
+        try {
+            tokenBucket.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.complete(-1);
+            return;
+        }
+        inFlightCreates.incrementAndGet();
+        long start = System.currentTimeMillis();
+        int nodePort = -1;
+        try {
+            nodePort = createTask.getAsInt();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
+        } finally {
+            inFlightCreates.decrementAndGet();
+            recordCreate(description, System.currentTimeMillis() - start, nodePort > 0);
+            result.complete(nodePort);
+        }
+    }
+
+    private void recordCreate(String description, long latencyMillis, boolean created) {
+        if (created) {
+            completedCreates.incrementAndGet();
+        } else {
+            failedCreates.incrementAndGet();
+        }
+        totalCreateLatencyMillis.addAndGet(latencyMillis);
+        maxCreateLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+        LOGGER.log(Level.FINE, () -> String.format("%s%s %s in %s ms. Queued: %s, in flight: %s, avg. latency: " +
+                        "%s ms, max. latency: %s ms", LOGGING_PREFIX, description, created ? "created" : "not created",
+                latencyMillis, getQueueDepth(), getInFlightCreates(), getAverageCreateLatencyMillis(),
+                getMaxCreateLatencyMillis()));
+    }
+
+    private class CreateTask implements Runnable {
+        private final String description;
+        private final IntSupplier createTask;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private CreateTask(String description, IntSupplier createTask) {
+            this.description = description;
+            this.createTask = createTask;
+        }
+
+        @Override
+        public void run() {
+            create(description, createTask, result);
+        }
+    }
+}
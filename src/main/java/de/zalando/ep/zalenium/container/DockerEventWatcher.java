@@ -0,0 +1,128 @@
+package de.zalando.ep.zalenium.container;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.messages.Event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the Docker events stream in a single daemon thread and hands every event to the registered listeners.
+ * When the stream breaks, it is opened again after a short pause and the reconnect listeners are notified, so
+ * they can re-read the state they might have missed in between.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerEventWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerEventWatcher.class.getName());
+    private static final long RECONNECT_SLEEP_MILLIS = 5 * 1000L;
+
+    private final DockerClient dockerClient;
+    private final DockerClient.EventsParam[] eventsParams;
+    private final List<Consumer<Event>> eventListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> reconnectListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean stopped = false;
+    private volatile EventStream eventStream;
+    private Thread watcherThread;
+
+    public DockerEventWatcher(DockerClient dockerClient, DockerClient.EventsParam... eventsParams) {
+        this.dockerClient = dockerClient;
+        this.eventsParams = eventsParams;
+    }
+
+    public void addEventListener(Consumer<Event> eventListener) {
+        eventListeners.add(eventListener);
+    }
+
+    public void addReconnectListener(Runnable reconnectListener) {
+        reconnectListeners.add(reconnectListener);
+    }
+
+    public synchronized void start() {
+        if (watcherThread != null) {
+            return;
+        }
+        stopped = false;
+        watcherThread = new Thread(this::watchEvents, "DockerEventWatcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        closeEventStream();
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread = null;
+        }
+    }
+
+    private void watchEvents() {
+        boolean firstConnection = true;
+        while (!stopped) {
+            try {
+                eventStream = dockerClient.events(eventsParams);
+                if (!firstConnection) {
+                    reconnectListeners.forEach(Runnable::run);
+                }
+                firstConnection = false;
+                while (!stopped && eventStream.hasNext()) {
+                    Event event = eventStream.next();
+                    for (Consumer<Event> eventListener : eventListeners) {
+                        eventListener.accept(event);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Docker events stream interrupted, connecting again.", e);
+            } finally {
+                closeEventStream();
+            }
+            if (!stopped) {
+                firstConnection = false;
+                try {
+                    Thread.sleep(RECONNECT_SLEEP_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void closeEventStream() {
+        EventStream currentEventStream = eventStream;
+        eventStream = null;
+        if (currentEventStream != null) {
+            try {
+                currentEventStream.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, e.toString(), e);
+            }
+        }
+    }
+
+    /*
+        Only the action and actor fields of the events are read, the older status, id and from fields are deprecated.
+     */
+    public static String getAction(Event event) {
+        return event.action();
+    }
+
+    public static String getActorId(Event event) {
+        return event.actor() == null ? null : event.actor().id();
+    }
+
+    public static String getActorAttribute(Event event, String attribute) {
+        if (event.actor() == null || event.actor().attributes() == null) {
+            return null;
+        }
+        return event.actor().attributes().get(attribute);
+    }
+}
@@ -0,0 +1,194 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DockerClient;
+
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A Docker daemon where docker-selenium containers can be created. It keeps how many containers run there, how
+ * many are being created, and whether the last creations failed, so the DockerHostPool can decide where the next
+ * container goes.
+ * The local host is the daemon where Zalenium runs, its nodes share the network of the Zalenium container. Nodes
+ * on a remote host use the network of that host and register with its address.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerHost {
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long UNHEALTHY_MILLIS = 30 * 1000L;
+
+    private final String name;
+    private final String nodeAddress;
+    private final boolean local;
+    private final Supplier<DockerClient> dockerClient;
+    private final Supplier<ContainerInventory> containerInventory;
+    private final Supplier<DockerImageCache> imageCache;
+    private final IntSupplier maxContainers;
+    private final LongSupplier clock;
+    private AdmissionController admissionController;
+    private int containersBeingCreated = 0;
+    private int consecutiveFailures = 0;
+    private long unhealthyUntil = 0;
+
+    /*
+        The local host reads its client, inventory, image cache and max. amount of containers from the starter
+        proxy, since they can change after the host was created.
+     */
+    public DockerHost(String name, String nodeAddress, boolean local, Supplier<DockerClient> dockerClient,
+                      Supplier<ContainerInventory> containerInventory, Supplier<DockerImageCache> imageCache,
+                      IntSupplier maxContainers) {
+        this(name, nodeAddress, local, dockerClient, containerInventory, imageCache, maxContainers,
+                System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    DockerHost(String name, String nodeAddress, boolean local, Supplier<DockerClient> dockerClient,
+               Supplier<ContainerInventory> containerInventory, Supplier<DockerImageCache> imageCache,
+               IntSupplier maxContainers, LongSupplier clock) {
+        this.name = name;
+        this.nodeAddress = nodeAddress;
+        this.local = local;
+        this.dockerClient = dockerClient;
+        this.containerInventory = containerInventory;
+        this.imageCache = imageCache;
+        this.maxContainers = maxContainers;
+        this.clock = clock;
+    }
+
+    /*
+        A remote daemon with its own inventory and image cache, they are started with start().
+     */
+    public static DockerHost remote(String name, DockerClient dockerClient, String nodeAddress, int maxContainers,
+                                    String imageName) {
+        ContainerInventory inventory = new ContainerInventory(dockerClient, imageName);
+        DockerImageCache cache = new DockerImageCache(dockerClient, imageName);
+        return new DockerHost(name, nodeAddress, false, () -> dockerClient, () -> inventory, () -> cache,
+                () -> maxContainers);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNodeAddress() {
+        return nodeAddress;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public DockerClient getDockerClient() {
+        return dockerClient.get();
+    }
+
+    public ContainerInventory getContainerInventory() {
+        return containerInventory.get();
+    }
+
+    public DockerImageCache getImageCache() {
+        return imageCache.get();
+    }
+
+    public int getMaxContainers() {
+        return maxContainers.getAsInt();
+    }
+
+    /*
+        When set, containers are only created while the host has CPU and memory left, the max. amount of
+        containers is still the upper limit.
+     */
+    public synchronized void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public synchronized AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public synchronized boolean hasResourcesLeft() {
+        return admissionController == null || admissionController.canAdmit();
+    }
+
+    /*
+        The local inventory and image cache are started by the starter proxy when it needs them.
+     */
+    public synchronized void start() {
+        if (!local) {
+            getContainerInventory().start();
+            getImageCache().start();
+        }
+        if (admissionController != null) {
+            admissionController.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (!local) {
+            getContainerInventory().stop();
+            getImageCache().stop();
+        }
+        if (admissionController != null) {
+            admissionController.stop();
+        }
+    }
+
+    public int getRunningCount() {
+        return getContainerInventory().getRunningCount();
+    }
+
+    public synchronized int getContainersBeingCreated() {
+        return containersBeingCreated;
+    }
+
+    /*
+        Containers being created are counted as running ones, so parallel creations don't go over the max.
+     */
+    public synchronized int getFreeCapacity() {
+        return getMaxContainers() - getRunningCount() - containersBeingCreated;
+    }
+
+    /*
+        After a few failed creations in a row the host is skipped for a while, then it gets a new chance. A host
+        whose Docker client suspended the calls is skipped as well.
+     */
+    public synchronized boolean isHealthy() {
+        SharedDockerClient sharedDockerClient = SharedDockerClient.of(getDockerClient());
+        if (sharedDockerClient != null && sharedDockerClient.getCircuitState() == CircuitBreaker.State.OPEN) {
+            return false;
+        }
+        return consecutiveFailures < MAX_CONSECUTIVE_FAILURES || clock.getAsLong() >= unhealthyUntil;
+    }
+
+    synchronized void creationStarted() {
+        containersBeingCreated++;
+        if (admissionController != null) {
+            admissionController.containerAdmitted();
+        }
+    }
+
+    synchronized void creationFinished() {
+        containersBeingCreated--;
+    }
+
+    public synchronized void creationSucceeded() {
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void creationFailed() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+            unhealthyUntil = clock.getAsLong() + UNHEALTHY_MILLIS;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s/%s running, %s being created, %s%s)", name, getRunningCount(),
+                getMaxContainers(), getContainersBeingCreated(), isHealthy() ? "healthy" : "unhealthy",
+                getAdmissionController() == null ? "" : ", " + getAdmissionController());
+    }
+}
@@ -0,0 +1,130 @@
+package de.zalando.ep.zalenium.container;
+
+import com.spotify.docker.client.DockerClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The Docker hosts where docker-selenium containers can be created. Every new container goes to the healthy host
+ * with the most free capacity, so the nodes are spread across the hosts instead of filling one machine first.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerHostPool {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerHostPool.class.getName());
+    private static final String LOGGING_PREFIX = "[DH] ";
+
+    private final List<DockerHost> dockerHosts;
+
+    public DockerHostPool(List<DockerHost> dockerHosts) {
+        this.dockerHosts = Collections.unmodifiableList(new ArrayList<>(dockerHosts));
+    }
+
+    /*
+        Hosts are separated by commas, each one is "dockerUri;nodeAddress;maxContainers". The node address is the
+        one the hub uses to reach the nodes, it defaults to the host of the docker URI. The max. amount of
+        containers defaults to the given value. E.g. "tcp://10.0.0.2:2375;10.0.0.2;20,tcp://10.0.0.3:2375".
+     */
+    public static List<DockerHost> parseDockerHosts(String dockerHostsConfiguration, int defaultMaxContainers,
+                                                    String imageName,
+                                                    Function<String, DockerClient> dockerClientFactory) {
+        List<DockerHost> parsedHosts = new ArrayList<>();
+        if (dockerHostsConfiguration == null || dockerHostsConfiguration.trim().isEmpty()) {
+            return parsedHosts;
+        }
+        for (String dockerHostConfiguration : dockerHostsConfiguration.split(",")) {
+            if (dockerHostConfiguration.trim().isEmpty()) {
+                continue;
+            }
+            String[] values = dockerHostConfiguration.trim().split(";");
+            try {
+                String dockerUri = values[0].trim();
+                String nodeAddress = values.length > 1 && !values[1].trim().isEmpty() ? values[1].trim() :
+                        URI.create(dockerUri).getHost();
+                int maxContainers = values.length > 2 ? Integer.parseInt(values[2].trim()) : defaultMaxContainers;
+                if (nodeAddress == null || maxContainers < 0) {
+                    throw new IllegalArgumentException("Missing node address or negative max. amount of containers");
+                }
+                parsedHosts.add(DockerHost.remote(dockerUri, dockerClientFactory.apply(dockerUri), nodeAddress,
+                        maxContainers, imageName));
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, LOGGING_PREFIX + "Docker host {0} is not valid and will be ignored, {1}",
+                        new Object[]{dockerHostConfiguration, e.toString()});
+            }
+        }
+        return parsedHosts;
+    }
+
+    public List<DockerHost> getDockerHosts() {
+        return dockerHosts;
+    }
+
+    public void start() {
+        dockerHosts.forEach(DockerHost::start);
+    }
+
+    public void stop() {
+        dockerHosts.forEach(DockerHost::stop);
+    }
+
+    /*
+        Picks the healthy host with the most free capacity and CPU and memory left, and counts the new container
+        there, returns null when all of them are full. A forced creation goes to the host with the most free
+        capacity even if it is full, and to an unhealthy one if there is no other.
+     */
+    public synchronized DockerHost reserve(boolean forceCreation) {
+        DockerHost selectedHost = null;
+        int selectedFreeCapacity = Integer.MIN_VALUE;
+        boolean selectedAvailable = false;
+        for (DockerHost dockerHost : dockerHosts) {
+            boolean available = dockerHost.isHealthy() && dockerHost.hasResourcesLeft();
+            int freeCapacity = dockerHost.getFreeCapacity();
+            boolean better = available && !selectedAvailable ||
+                    available == selectedAvailable && freeCapacity > selectedFreeCapacity;
+            if (better) {
+                selectedHost = dockerHost;
+                selectedFreeCapacity = freeCapacity;
+                selectedAvailable = available;
+            }
+        }
+        if (selectedHost == null || !forceCreation && (!selectedAvailable || selectedFreeCapacity <= 0)) {
+            LOGGER.log(Level.FINE, () -> LOGGING_PREFIX + "No Docker host can take a new container -> " + dockerHosts);
+            return null;
+        }
+        selectedHost.creationStarted();
+        DockerHost reservedHost = selectedHost;
+        LOGGER.log(Level.FINE, () -> LOGGING_PREFIX + "New container goes to " + reservedHost);
+        return selectedHost;
+    }
+
+    public void release(DockerHost dockerHost) {
+        dockerHost.creationFinished();
+    }
+
+    /*
+        Returns the remote host where the node with the given address runs, or null for the local nodes.
+     */
+    public DockerHost getRemoteHostForNode(String nodeAddress) {
+        for (DockerHost dockerHost : dockerHosts) {
+            if (!dockerHost.isLocal() && dockerHost.getNodeAddress().equalsIgnoreCase(nodeAddress)) {
+                return dockerHost;
+            }
+        }
+        return null;
+    }
+
+    public int getRunningCount() {
+        return dockerHosts.stream().mapToInt(DockerHost::getRunningCount).sum();
+    }
+
+    @Override
+    public String toString() {
+        return dockerHosts.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the latest downloaded tag of an image together with its labels, so starting a container does not need
+ * to list, sort and inspect the images each time. The cached value is dropped when an image is pulled, tagged,
+ * or deleted, and in any case after a while, in case one of those events was missed.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerImageCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerImageCache.class.getName());
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = 10 * 60 * 1000L;
+
+    private final DockerClient dockerClient;
+    private final String imageName;
+    private final long timeToLiveMillis;
+    private ResolvedImage resolvedImage;
+    private long resolvedTime;
+    private DockerEventWatcher eventWatcher;
+
+    public DockerImageCache(DockerClient dockerClient, String imageName) {
+        this(dockerClient, imageName, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    public DockerImageCache(DockerClient dockerClient, String imageName, long timeToLiveMillis) {
+        this.dockerClient = dockerClient;
+        this.imageName = imageName;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    public synchronized void start() {
+        if (eventWatcher != null) {
+            return;
+        }
+        eventWatcher = new DockerEventWatcher(dockerClient, DockerClient.EventsParam.type(Event.Type.IMAGE));
+        eventWatcher.addEventListener(this::processEvent);
+        eventWatcher.addReconnectListener(this::invalidate);
+        eventWatcher.start();
+    }
+
+    public synchronized void stop() {
+        if (eventWatcher != null) {
+            eventWatcher.stop();
+            eventWatcher = null;
+        }
+    }
+
+    /*
+        Returns the cached image, resolving it again when it was invalidated or is too old. If no image is
+        downloaded, or the daemon can't be reached, the plain image name is returned and nothing is cached.
+     */
+    public synchronized ResolvedImage getResolvedImage() {
+        if (resolvedImage != null && System.currentTimeMillis() - resolvedTime < timeToLiveMillis) {
+            return resolvedImage;
+        }
+        try {
+            ResolvedImage latestImage = resolveLatestImage();
+            if (latestImage != null) {
+                resolvedImage = latestImage;
+                resolvedTime = System.currentTimeMillis();
+                return resolvedImage;
+            }
+        } catch (DockerException e) {
+            LOGGER.log(Level.FINE, "Could not resolve the latest downloaded " + imageName + " image", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new ResolvedImage(imageName, Collections.emptyMap());
+    }
+
+    public synchronized void invalidate() {
+        resolvedImage = null;
+    }
+
+    @VisibleForTesting
+    void processEvent(Event event) {
+        String action = DockerEventWatcher.getAction(event);
+        if (action == null) {
+            return;
+        }
+        switch (action) {
+            case "pull":
+            case "tag":
+            case "untag":
+            case "delete":
+            case "import":
+            case "load":
+                String image = DockerEventWatcher.getActorId(event);
+                if (image == null || image.contains(imageName) || image.startsWith("sha256:")) {
+                    LOGGER.log(Level.FINE, "Image {0} event received for {1}, resolving it again on next use.",
+                            new Object[]{action, image});
+                    invalidate();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private ResolvedImage resolveLatestImage() throws DockerException, InterruptedException {
+        List<Image> images = new ArrayList<>(dockerClient.listImages(DockerClient.ListImagesParam.byName(imageName)));
+        images.removeIf(image -> image.repoTags() == null || image.repoTags().isEmpty());
+        if (images.isEmpty()) {
+            LOGGER.log(Level.SEVERE, "A downloaded docker-selenium image was not found!");
+            return null;
+        }
+        images.sort((o1, o2) -> o2.created().compareTo(o1.created()));
+        String latestImage = images.get(0).repoTags().get(0);
+        Map<String, String> labels = new HashMap<>();
+        ImageInfo imageInfo = dockerClient.inspectImage(latestImage);
+        if (imageInfo != null && imageInfo.config() != null && imageInfo.config().labels() != null) {
+            labels.putAll(imageInfo.config().labels());
+        }
+        return new ResolvedImage(latestImage, labels);
+    }
+
+    /**
+     * Image tag to start containers from, plus the labels it was built with (e.g. the browser versions).
+     */
+    public static class ResolvedImage {
+        private final String image;
+        private final Map<String, String> labels;
+
+        public ResolvedImage(String image, Map<String, String> labels) {
+            this.image = image;
+            this.labels = Collections.unmodifiableMap(new HashMap<>(labels));
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getLabel(String label) {
+            return labels.get(label);
+        }
+    }
+}
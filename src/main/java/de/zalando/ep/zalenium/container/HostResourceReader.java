@@ -0,0 +1,167 @@
+package de.zalando.ep.zalenium.container;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reads the CPU load and the available memory of the machine from /proc, and the limits of the cgroup where
+ * Zalenium runs from /sys/fs/cgroup (v1 and v2). When the cgroup limits are lower than the machine values, the
+ * cgroup limits are used.
+ */
+@SuppressWarnings("WeakerAccess")
+public class HostResourceReader {
+
+    // Values this big in cgroup v1 mean that there is no limit.
+    private static final long CGROUP_V1_UNLIMITED = Long.MAX_VALUE / 2;
+
+    private final Path rootPath;
+
+    /*
+        The root path is "/" except in tests, where fake /proc and /sys/fs/cgroup files are used.
+     */
+    public HostResourceReader(Path rootPath) {
+        this.rootPath = rootPath;
+    }
+
+    public HostResources read() throws IOException {
+        double cpus = getMachineCpus();
+        double cgroupCpus = getCgroupCpus();
+        if (cgroupCpus > 0 && cgroupCpus < cpus) {
+            cpus = cgroupCpus;
+        }
+        String loadAverage = readFirstLine("proc/loadavg");
+        double load = Double.parseDouble(loadAverage.trim().split("\\s+")[0]);
+
+        long memoryTotal = getMeminfoBytes("MemTotal");
+        long memoryAvailable = getMeminfoBytes("MemAvailable");
+        long cgroupMemoryLimit = getCgroupMemoryLimit();
+        if (cgroupMemoryLimit > 0 && cgroupMemoryLimit < memoryTotal) {
+            memoryTotal = cgroupMemoryLimit;
+            memoryAvailable = Math.min(memoryAvailable, cgroupMemoryLimit - getCgroupMemoryUsage());
+        }
+        return new HostResources(cpus, load, memoryTotal, Math.max(0, memoryAvailable));
+    }
+
+    private double getMachineCpus() throws IOException {
+        Path cpuInfo = rootPath.resolve("proc/cpuinfo");
+        if (!Files.exists(cpuInfo)) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        long processors = Files.readAllLines(cpuInfo, StandardCharsets.UTF_8).stream()
+                .filter(line -> line.startsWith("processor"))
+                .count();
+        return processors > 0 ? processors : Runtime.getRuntime().availableProcessors();
+    }
+
+    /*
+        cgroup v2 has "quota period" in cpu.max ("max" when there is no limit), v1 has the quota (-1 when there
+        is no limit) and the period in two files. Returns -1 when there is no limit.
+     */
+    private double getCgroupCpus() throws IOException {
+        String cpuMax = readFirstLineIfExists("sys/fs/cgroup/cpu.max");
+        if (cpuMax != null) {
+            String[] values = cpuMax.trim().split("\\s+");
+            if ("max".equals(values[0]) || values.length < 2) {
+                return -1;
+            }
+            return Double.parseDouble(values[0]) / Double.parseDouble(values[1]);
+        }
+        String quota = readFirstLineIfExists("sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+        String period = readFirstLineIfExists("sys/fs/cgroup/cpu/cpu.cfs_period_us");
+        if (quota == null || period == null || Long.parseLong(quota.trim()) <= 0) {
+            return -1;
+        }
+        return Double.parseDouble(quota.trim()) / Double.parseDouble(period.trim());
+    }
+
+    /*
+        Returns -1 when there is no limit.
+     */
+    private long getCgroupMemoryLimit() throws IOException {
+        String memoryMax = readFirstLineIfExists("sys/fs/cgroup/memory.max");
+        if (memoryMax != null) {
+            return "max".equals(memoryMax.trim()) ? -1 : Long.parseLong(memoryMax.trim());
+        }
+        String limit = readFirstLineIfExists("sys/fs/cgroup/memory/memory.limit_in_bytes");
+        if (limit == null || Long.parseLong(limit.trim()) >= CGROUP_V1_UNLIMITED) {
+            return -1;
+        }
+        return Long.parseLong(limit.trim());
+    }
+
+    private long getCgroupMemoryUsage() throws IOException {
+        String usage = readFirstLineIfExists("sys/fs/cgroup/memory.current");
+        if (usage == null) {
+            usage = readFirstLineIfExists("sys/fs/cgroup/memory/memory.usage_in_bytes");
+        }
+        return usage == null ? 0 : Long.parseLong(usage.trim());
+    }
+
+    /*
+        /proc/meminfo values are in kB, e.g. "MemAvailable:    8123456 kB".
+     */
+    private long getMeminfoBytes(String name) throws IOException {
+        List<String> lines = Files.readAllLines(rootPath.resolve("proc/meminfo"), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.startsWith(name + ":")) {
+                return Long.parseLong(line.substring(name.length() + 1).trim().split("\\s+")[0]) * 1024;
+            }
+        }
+        throw new IOException(name + " not found in /proc/meminfo");
+    }
+
+    private String readFirstLine(String path) throws IOException {
+        List<String> lines = Files.readAllLines(rootPath.resolve(path), StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(path + " is empty");
+        }
+        return lines.get(0);
+    }
+
+    private String readFirstLineIfExists(String path) throws IOException {
+        return Files.exists(rootPath.resolve(path)) ? readFirstLine(path) : null;
+    }
+
+    /**
+     * CPUs (cores, possibly a fraction of them when limited by the cgroup), 1 minute load average and memory in
+     * bytes.
+     */
+    public static class HostResources {
+        private final double cpus;
+        private final double load;
+        private final long memoryTotal;
+        private final long memoryAvailable;
+
+        public HostResources(double cpus, double load, long memoryTotal, long memoryAvailable) {
+            this.cpus = cpus;
+            this.load = load;
+            this.memoryTotal = memoryTotal;
+            this.memoryAvailable = memoryAvailable;
+        }
+
+        public double getCpus() {
+            return cpus;
+        }
+
+        public double getLoad() {
+            return load;
+        }
+
+        public long getMemoryTotal() {
+            return memoryTotal;
+        }
+
+        public long getMemoryAvailable() {
+            return memoryAvailable;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cpus: %.1f, load: %.2f, memory available: %s MB of %s MB", cpus, load,
+                    memoryAvailable / (1024 * 1024), memoryTotal / (1024 * 1024));
+        }
+    }
+}
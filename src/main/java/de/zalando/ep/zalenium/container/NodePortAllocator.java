@@ -0,0 +1,97 @@
+package de.zalando.ep.zalenium.container;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.BitSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out the ports used by the docker-selenium nodes from a fixed range. Allocated ports are tracked in a
+ * bitmap, so finding a free one does not depend on how many ports are in use, and they are given back explicitly
+ * when the node is gone. The search continues from the last allocated port, so a just released port is not
+ * reused right away while its container might still be stopping.
+ */
+@SuppressWarnings("WeakerAccess")
+public class NodePortAllocator {
+
+    private static final Logger LOGGER = Logger.getLogger(NodePortAllocator.class.getName());
+
+    private final int lowerBoundary;
+    private final int upperBoundary;
+    private final BitSet allocatedPorts;
+    private int nextPortIndex = 0;
+
+    public NodePortAllocator(int lowerBoundary, int upperBoundary) {
+        if (upperBoundary < lowerBoundary) {
+            throw new IllegalArgumentException(String.format("Invalid port range %s-%s", lowerBoundary, upperBoundary));
+        }
+        this.lowerBoundary = lowerBoundary;
+        this.upperBoundary = upperBoundary;
+        this.allocatedPorts = new BitSet(getRangeSize());
+    }
+
+    /*
+        Returns a free port from the range, or -1 if all of them are allocated. The bitmap is the source of truth,
+        the ServerSocket probe is only a fallback to skip ports taken by something else outside of Zalenium.
+     */
+    public int allocate() {
+        int rangeSize = getRangeSize();
+        for (int attempt = 0; attempt < rangeSize; attempt++) {
+            int port = reserveNextPort();
+            if (port == -1) {
+                return -1;
+            }
+            if (isPortAvailable(port)) {
+                return port;
+            }
+            LOGGER.log(Level.FINE, "Port {0} is used outside of Zalenium, skipping it.", port);
+            release(port);
+        }
+        return -1;
+    }
+
+    public synchronized void release(int port) {
+        if (port >= lowerBoundary && port <= upperBoundary) {
+            allocatedPorts.clear(port - lowerBoundary);
+        }
+    }
+
+    public synchronized boolean isAllocated(int port) {
+        return port >= lowerBoundary && port <= upperBoundary && allocatedPorts.get(port - lowerBoundary);
+    }
+
+    public synchronized int getAllocatedCount() {
+        return allocatedPorts.cardinality();
+    }
+
+    private synchronized int reserveNextPort() {
+        int rangeSize = getRangeSize();
+        int portIndex = allocatedPorts.nextClearBit(nextPortIndex);
+        if (portIndex >= rangeSize) {
+            portIndex = allocatedPorts.nextClearBit(0);
+            if (portIndex >= rangeSize) {
+                return -1;
+            }
+        }
+        allocatedPorts.set(portIndex);
+        nextPortIndex = (portIndex + 1) % rangeSize;
+        return lowerBoundary + portIndex;
+    }
+
+    /*
+        Done outside of the lock, so concurrent allocations don't wait for each other's socket probe.
+     */
+    protected boolean isPortAvailable(int port) {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            return serverSocket.getLocalPort() == port;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            return false;
+        }
+    }
+
+    private int getRangeSize() {
+        return upperBoundary - lowerBoundary + 1;
+    }
+}
@@ -0,0 +1,93 @@
+package de.zalando.ep.zalenium.container;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerMount;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Lets the docker-selenium containers record their video straight into the videos folder of Zalenium, instead of
+ * keeping it inside the container until the test is done. Each node gets its own folder below the videos folder,
+ * mounted as /videos in the node, so the recording grows there while the test runs and it only needs to be moved
+ * when the test is done.
+ * It works only for containers on the Docker host where Zalenium runs, and only when the videos folder of Zalenium
+ * is mounted from that host, since the folder is mounted into the nodes by its path on the host.
+ */
+@SuppressWarnings("WeakerAccess")
+public class RecordingVolume {
+
+    public static final String RECORDINGS_FOLDER = ".recordings";
+    private static final String NODE_VIDEOS_FOLDER = "/videos";
+    private static final Logger LOGGER = Logger.getLogger(RecordingVolume.class.getName());
+
+    private final Path localVideosFolder;
+    private final String hostVideosFolder;
+
+    public RecordingVolume(Path localVideosFolder, String hostVideosFolder) {
+        this.localVideosFolder = localVideosFolder;
+        this.hostVideosFolder = hostVideosFolder;
+    }
+
+    /*
+        Looks up where the videos folder of the Zalenium container comes from on the Docker host, returns null when
+        it is not mounted from the host (e.g. Zalenium does not run in a container).
+     */
+    public static RecordingVolume resolve(DockerClient dockerClient, String zaleniumContainerName,
+                                          Path localVideosFolder) {
+        try {
+            ContainerInfo containerInfo = dockerClient.inspectContainer(zaleniumContainerName);
+            if (containerInfo.mounts() != null) {
+                for (ContainerMount mount : containerInfo.mounts()) {
+                    if (localVideosFolder.toString().equals(mount.destination()) && mount.source() != null) {
+                        return new RecordingVolume(localVideosFolder, mount.source());
+                    }
+                }
+            }
+            LOGGER.log(Level.WARNING, "{0} is not mounted from the Docker host, videos are copied from the " +
+                    "containers when the tests are done.", localVideosFolder);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not find the videos folder on the Docker host, videos are copied " +
+                    "from the containers when the tests are done. " + e.toString(), e);
+        }
+        return null;
+    }
+
+    /*
+        Creates the folder of the node, it is created here and not by Docker, so it belongs to the same user that
+        runs the recording. Returns the bind to add to the container.
+     */
+    public String prepare(String nodeName) throws IOException {
+        Files.createDirectories(getRecordingFolder(nodeName));
+        return String.format("%s/%s/%s:%s", hostVideosFolder, RECORDINGS_FOLDER, nodeName, NODE_VIDEOS_FOLDER);
+    }
+
+    public Path getRecordingFolder(String nodeName) {
+        return localVideosFolder.resolve(RECORDINGS_FOLDER).resolve(nodeName);
+    }
+
+    /*
+        Removes what is left in the folder of a node that is gone.
+     */
+    public static void removeRecordingFolder(Path recordingFolder) {
+        if (!Files.exists(recordingFolder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(recordingFolder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not remove " + recordingFolder, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s on the Docker host)", localVideosFolder, hostVideosFolder);
+    }
+}
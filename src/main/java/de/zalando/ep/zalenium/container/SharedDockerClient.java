@@ -0,0 +1,264 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.BadParamException;
+import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.NotFoundException;
+import de.zalando.ep.zalenium.util.Environment;
+import de.zalando.ep.zalenium.util.LatencyHistogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single access point to the Docker daemon for all the proxies. It wraps one DockerClient (and therefore one
+ * connection pool) and, for every call:
+ * - measures latency and errors per API method,
+ * - lets identical read calls that are already in flight (e.g. many node pollers listing the containers at the
+ * same moment) share the same answer instead of sending the same request again,
+ * - rejects calls right away while the daemon keeps failing or answering too slowly (circuit breaker).
+ */
+@SuppressWarnings("WeakerAccess")
+public class SharedDockerClient implements InvocationHandler {
+
+    @VisibleForTesting
+    static final String ZALENIUM_DOCKER_CONNECTION_POOL_SIZE = "ZALENIUM_DOCKER_CONNECTION_POOL_SIZE";
+    @VisibleForTesting
+    static final int DEFAULT_CONNECTION_POOL_SIZE = 100;
+    private static final Logger LOGGER = Logger.getLogger(SharedDockerClient.class.getName());
+    private static final String LOGGING_PREFIX = "[DC] ";
+    private static final String DOCKER_SOCKET = "unix:///var/run/docker.sock";
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 10 * 1000L;
+    private static final long SLOW_CALL_MILLIS = 10 * 1000L;
+    // Calls whose answer is plain data, so callers asking the same thing at the same time can share it.
+    private static final List<String> COALESCED_CALL_PREFIXES = Arrays.asList("list", "inspect", "top", "info",
+            "version", "ping");
+    private static DockerClient sharedInstance;
+
+    private final DockerClient dockerClient;
+    private final CircuitBreaker circuitBreaker;
+    private final ConcurrentMap<String, LatencyHistogram> callMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlightCalls = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCalls = new AtomicLong(0);
+    private final AtomicLong rejectedCalls = new AtomicLong(0);
+
+    private SharedDockerClient(DockerClient dockerClient, CircuitBreaker circuitBreaker) {
+        this.dockerClient = dockerClient;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /*
+        The client used by all the proxies, the size of its connection pool is read from the environment.
+     */
+    public static synchronized DockerClient getInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = create(DOCKER_SOCKET);
+        }
+        return sharedInstance;
+    }
+
+    /*
+        Creates a client for the given daemon (e.g. "tcp://10.0.0.2:2375"), with its own connection pool.
+     */
+    public static DockerClient create(String dockerUri) {
+        int connectionPoolSize = new Environment().getIntEnvVariable(ZALENIUM_DOCKER_CONNECTION_POOL_SIZE,
+                DEFAULT_CONNECTION_POOL_SIZE);
+        DockerClient dockerClient = DefaultDockerClient.builder()
+                .uri(dockerUri)
+                .connectionPoolSize(connectionPoolSize > 0 ? connectionPoolSize : DEFAULT_CONNECTION_POOL_SIZE)
+                .build();
+        return wrap(dockerClient, new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS,
+                SLOW_CALL_MILLIS));
+    }
+
+    public static DockerClient wrap(DockerClient dockerClient, CircuitBreaker circuitBreaker) {
+        return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+                new Class<?>[]{DockerClient.class}, new SharedDockerClient(dockerClient, circuitBreaker));
+    }
+
+    /*
+        Returns the wrapper behind a client created by this class, to read its metrics, or null for other clients.
+     */
+    public static SharedDockerClient of(DockerClient dockerClient) {
+        if (dockerClient != null && Proxy.isProxyClass(dockerClient.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(dockerClient);
+            if (handler instanceof SharedDockerClient) {
+                return (SharedDockerClient) handler;
+            }
+        }
+        return null;
+    }
+
+    public Map<String, LatencyHistogram> getCallMetrics() {
+        return Collections.unmodifiableMap(callMetrics);
+    }
+
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        // Methods like close() or getHost() don't talk to the daemon.
+        if (!Arrays.asList(method.getExceptionTypes()).contains(DockerException.class)) {
+            return invokeDockerClient(method, args);
+        }
+        if (isCoalesced(method)) {
+            return invokeSingleFlight(method, args);
+        }
+        return invokeMeasured(method, args);
+    }
+
+    private Object invokeSingleFlight(Method method, Object[] args) throws Throwable {
+        List<Object> callKey = getCallKey(method, args);
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> inFlightCall = inFlightCalls.putIfAbsent(callKey, call);
+        if (inFlightCall != null) {
+            coalescedCalls.incrementAndGet();
+            try {
+                return inFlightCall.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            Object result = invokeMeasured(method, args);
+            call.complete(result);
+            return result;
+        } catch (Throwable t) {
+            call.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlightCalls.remove(callKey, call);
+        }
+    }
+
+    private Object invokeMeasured(Method method, Object[] args) throws Throwable {
+        if (!circuitBreaker.allowRequest()) {
+            rejectedCalls.incrementAndGet();
+            throw new DockerException(String.format("%s was not sent, calls to the Docker daemon are suspended " +
+                    "because it failed or was too slow several times in a row.", method.getName()));
+        }
+        CircuitBreaker.State previousState = circuitBreaker.getState();
+        LatencyHistogram latencyHistogram = callMetrics.computeIfAbsent(method.getName(),
+                name -> new LatencyHistogram());
+        long start = System.currentTimeMillis();
+        try {
+            Object result = invokeDockerClient(method, args);
+            long latency = System.currentTimeMillis() - start;
+            latencyHistogram.record(latency, false);
+            circuitBreaker.recordSuccess(latency);
+            return result;
+        } catch (Throwable t) {
+            long latency = System.currentTimeMillis() - start;
+            latencyHistogram.record(latency, true);
+            if (t instanceof InterruptedException || !(t instanceof DockerException)) {
+                circuitBreaker.recordIgnored();
+            } else if (isDaemonFailure((DockerException) t)) {
+                circuitBreaker.recordFailure();
+            } else {
+                // The daemon answered properly, e.g. the container was not found.
+                circuitBreaker.recordSuccess(latency);
+            }
+            throw t;
+        } finally {
+            logStateChange(previousState, method);
+        }
+    }
+
+    private Object invokeDockerClient(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(dockerClient, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return String.format("%s(%s)", SharedDockerClient.class.getSimpleName(), dockerClient);
+        }
+    }
+
+    private void logStateChange(CircuitBreaker.State previousState, Method method) {
+        CircuitBreaker.State currentState = circuitBreaker.getState();
+        if (previousState == currentState) {
+            return;
+        }
+        if (currentState == CircuitBreaker.State.OPEN) {
+            LOGGER.log(Level.WARNING, () -> String.format("%sDocker daemon calls suspended after %s failed, " +
+                    "calls so far -> %s", LOGGING_PREFIX, method.getName(), callMetrics));
+        } else if (currentState == CircuitBreaker.State.CLOSED) {
+            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Docker daemon calls resumed.");
+        }
+    }
+
+    /*
+        Errors where the daemon did answer the request (missing container, conflict, bad parameter...) say nothing
+        about its health.
+     */
+    private static boolean isDaemonFailure(DockerException e) {
+        if (e instanceof NotFoundException || e instanceof ConflictException || e instanceof BadParamException) {
+            return false;
+        }
+        return !(e instanceof DockerRequestException) || ((DockerRequestException) e).status() >= 500;
+    }
+
+    private static boolean isCoalesced(Method method) {
+        for (String prefix : COALESCED_CALL_PREFIXES) {
+            if (method.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        Params implement equals, varargs arrays are turned into lists so two calls with the same params match.
+     */
+    private static List<Object> getCallKey(Method method, Object[] args) {
+        List<Object> callKey = new ArrayList<>();
+        callKey.add(method);
+        if (args != null) {
+            for (Object arg : args) {
+                callKey.add(arg instanceof Object[] ? Arrays.asList((Object[]) arg) : arg);
+            }
+        }
+        return callKey;
+    }
+}
@@ -0,0 +1,61 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a constant rate up to the bucket capacity, and each operation
+ * takes one, so short bursts up to the capacity go through right away and longer ones are spread over time.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double availableTokens;
+    private long lastRefillTime;
+
+    public TokenBucket(double tokensPerSecond, int capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    TokenBucket(double tokensPerSecond, int capacity, LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.availableTokens = capacity;
+        this.lastRefillTime = nanoClock.getAsLong();
+    }
+
+    /*
+        Takes a token if there is one, otherwise returns how many nanoseconds to wait until the next one.
+     */
+    public synchronized long tryAcquire() {
+        refill();
+        if (availableTokens >= 1) {
+            availableTokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - availableTokens) / tokensPerNano);
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        availableTokens = Math.min(capacity, availableTokens + (now - lastRefillTime) * tokensPerNano);
+        lastRefillTime = now;
+    }
+}
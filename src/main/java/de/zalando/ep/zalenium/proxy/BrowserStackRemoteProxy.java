@@ -9,8 +9,6 @@ import org.openqa.grid.internal.Registry;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /*
     This class should work in a similar way as its sibling, SauceLabsRemoteProxy
@@ -19,36 +17,19 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
 
     private static final String BROWSER_STACK_URL = "http://hub-cloud.browserstack.com:80";
     private static final String BROWSER_STACK_ACCOUNT_INFO = "https://www.browserstack.com/automate/plan.json";
-    private static final Logger logger = Logger.getLogger(BrowserStackRemoteProxy.class.getName());
     private static final String BROWSER_STACK_USER = getEnv().getStringEnvVariable("BROWSER_STACK_USER", "");
     private static final String BROWSER_STACK_KEY = getEnv().getStringEnvVariable("BROWSER_STACK_KEY", "");
     private static final String BROWSER_STACK_PROXY_NAME = "BrowserStack";
 
     public BrowserStackRemoteProxy(RegistrationRequest request, Registry registry) {
-        super(updateBSCapabilities(request, BROWSER_STACK_ACCOUNT_INFO), registry);
+        super(updateBSCapabilities(request), registry);
     }
 
     @VisibleForTesting
-    private static RegistrationRequest updateBSCapabilities(RegistrationRequest registrationRequest, String url) {
-        JsonElement bsAccountInfo = getCommonProxyUtilities().readJSONFromUrl(url, BROWSER_STACK_USER, BROWSER_STACK_KEY);
-        try {
-            registrationRequest.getConfiguration().capabilities.clear();
-            String logMessage = String.format("[BS] Getting account max. concurrency from %s", url);
-            int browserStackAccountConcurrency;
-            if (bsAccountInfo == null) {
-                logMessage = String.format("[BS] Account max. concurrency was NOT fetched from %s", url);
-                browserStackAccountConcurrency = 1;
-            } else {
-                browserStackAccountConcurrency = bsAccountInfo.getAsJsonObject().get("parallel_sessions_max_allowed").getAsInt();
-            }
-            logger.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, browserStackAccountConcurrency,
-                    BROWSER_STACK_PROXY_NAME);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, e.toString(), e);
-            getGa().trackException(e);
-        }
-        return addCapabilitiesToRegistrationRequest(registrationRequest, 1, BROWSER_STACK_PROXY_NAME);
+    private static RegistrationRequest updateBSCapabilities(RegistrationRequest registrationRequest) {
+        registrationRequest.getConfiguration().capabilities.clear();
+        return addCapabilitiesToRegistrationRequest(registrationRequest, CONSERVATIVE_SLOT_COUNT,
+                BROWSER_STACK_PROXY_NAME);
     }
 
     @Override
@@ -100,6 +81,18 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
         return ".mp4";
     }
 
+    @Override
+    public CloudConcurrencyTracker.AccountConcurrency readAccountConcurrency() {
+        JsonElement bsAccountInfo = getCommonProxyUtilities().readJSONFromUrl(BROWSER_STACK_ACCOUNT_INFO,
+                BROWSER_STACK_USER, BROWSER_STACK_KEY, 1);
+        if (bsAccountInfo == null) {
+            return null;
+        }
+        JsonObject plan = bsAccountInfo.getAsJsonObject();
+        return new CloudConcurrencyTracker.AccountConcurrency(plan.get("parallel_sessions_max_allowed").getAsInt(),
+                plan.get("parallel_sessions_running").getAsInt());
+    }
+
     @Override
     public String getProxyName() {
         return BROWSER_STACK_PROXY_NAME;
@@ -0,0 +1,344 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.Dashboard;
+import de.zalando.ep.zalenium.util.TestInformation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads the videos and logs of the tests that ran in the cloud testing providers, shared by all the cloud
+ * proxies. Each provider gets a bounded number of parallel downloads, and the ones waiting are taken in order: first
+ * attempts before retries, then the oldest first. A failed download is tried again later with exponential backoff
+ * and jitter, without a thread waiting for it.
+ * The pending downloads are saved every second in a file in the videos folder, so the ones left when the hub stops
+ * are picked up again once the proxy of their provider is registered.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudArtifactDownloader {
+
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_DOWNLOADS_PER_PROVIDER = "ZALENIUM_CLOUD_DOWNLOADS_PER_PROVIDER";
+    @VisibleForTesting
+    static final int DEFAULT_DOWNLOADS_PER_PROVIDER = 3;
+    // Videos are usually not ready right after the test, so the first retry comes a few seconds later.
+    private static final long FIRST_RETRY_DELAY_MILLIS = 5 * 1000L;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000L;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long QUEUE_SAVE_INTERVAL_MILLIS = 1000L;
+    private static final String QUEUE_FILE_NAME = ".pendingDownloads.json";
+    private static final Logger LOGGER = Logger.getLogger(CloudArtifactDownloader.class.getName());
+    private static CloudArtifactDownloader sharedInstance;
+
+    private final int downloadsPerProvider;
+    private final long firstRetryDelayMillis;
+    private final long maxRetryDelayMillis;
+    private final int maxAttempts;
+    private final Path queueFile;
+    private final ScheduledExecutorService retryTimer;
+    private final ConcurrentMap<String, ThreadPoolExecutor> providerExecutors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ArtifactSource> sources = new ConcurrentHashMap<>();
+    // Downloads loaded from the queue file, waiting for the proxy of their provider.
+    private final Map<String, List<Download>> waitingForSource = new ConcurrentHashMap<>();
+    private final Set<Download> pendingDownloads = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicBoolean queueChanged = new AtomicBoolean(false);
+
+    @VisibleForTesting
+    CloudArtifactDownloader(int downloadsPerProvider, long firstRetryDelayMillis, long maxRetryDelayMillis,
+                            int maxAttempts, Path queueFile, long queueSaveIntervalMillis) {
+        this.downloadsPerProvider = downloadsPerProvider;
+        this.firstRetryDelayMillis = firstRetryDelayMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.queueFile = queueFile;
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CloudArtifactDownloaderTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadQueue();
+        retryTimer.scheduleWithFixedDelay(this::saveQueueIfChanged, queueSaveIntervalMillis,
+                queueSaveIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized CloudArtifactDownloader getInstance() {
+        if (sharedInstance == null) {
+            int downloads = CloudTestingRemoteProxy.getEnv().getIntEnvVariable(ZALENIUM_CLOUD_DOWNLOADS_PER_PROVIDER,
+                    DEFAULT_DOWNLOADS_PER_PROVIDER);
+            Path queueFile = Paths.get(new CommonProxyUtilities().currentLocalPath(), Dashboard.VIDEOS_FOLDER_NAME,
+                    QUEUE_FILE_NAME);
+            sharedInstance = new CloudArtifactDownloader(downloads > 0 ? downloads : DEFAULT_DOWNLOADS_PER_PROVIDER,
+                    FIRST_RETRY_DELAY_MILLIS, MAX_RETRY_DELAY_MILLIS, MAX_ATTEMPTS, queueFile,
+                    QUEUE_SAVE_INTERVAL_MILLIS);
+        }
+        return sharedInstance;
+    }
+
+    /*
+        The source that downloads the artifacts of a provider, the downloads of that provider left from before a
+        restart start now.
+     */
+    public void register(ArtifactSource source) {
+        String provider = source.getProviderName();
+        sources.put(provider, source);
+        List<Download> downloads = waitingForSource.remove(provider);
+        if (downloads != null) {
+            LOGGER.log(Level.INFO, "Resuming {0} pending downloads from {1}", new Object[]{downloads.size(), provider});
+            downloads.forEach(download -> schedule(download, 0));
+        }
+    }
+
+    public void enqueue(ArtifactSource source, String seleniumSessionId) {
+        register(source);
+        Download download = new Download(source.getProviderName(), seleniumSessionId, 0, System.currentTimeMillis(),
+                sequence.incrementAndGet());
+        pendingDownloads.add(download);
+        queueChanged.set(true);
+        schedule(download, 0);
+    }
+
+    public int getPendingDownloads() {
+        return pendingDownloads.size();
+    }
+
+    public int getQueuedDownloads(String provider) {
+        ThreadPoolExecutor executor = providerExecutors.get(provider);
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    @VisibleForTesting
+    void shutdown() {
+        retryTimer.shutdownNow();
+        providerExecutors.values().forEach(ThreadPoolExecutor::shutdownNow);
+        saveQueueIfChanged();
+    }
+
+    private void schedule(Download download, long delayMillis) {
+        retryTimer.schedule(() -> getExecutor(download.provider).execute(new Attempt(download)), delayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /*
+        The waiting downloads of a provider are kept in a priority queue, its threads stop when there is nothing to
+        download.
+     */
+    private ThreadPoolExecutor getExecutor(String provider) {
+        return providerExecutors.computeIfAbsent(provider, key -> {
+            AtomicInteger threadNumber = new AtomicInteger(0);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(downloadsPerProvider, downloadsPerProvider, 60L,
+                    TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "CloudArtifactDownloader-" + provider + "-" +
+                                threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    private void runAttempt(Download download) {
+        ArtifactSource source = sources.get(download.provider);
+        download.attempts++;
+        try {
+            source.downloadArtifacts(download);
+            pendingDownloads.remove(download);
+            LOGGER.log(Level.INFO, "{0} artifacts of {1} downloaded", new Object[]{download.provider,
+                    download.seleniumSessionId});
+        } catch (Exception e) {
+            if (download.attempts >= maxAttempts) {
+                pendingDownloads.remove(download);
+                LOGGER.log(Level.SEVERE, String.format("%s artifacts of %s could not be downloaded after %s attempts",
+                        download.provider, download.seleniumSessionId, download.attempts), e);
+                source.downloadAbandoned(download);
+            } else {
+                long retryDelayMillis = getRetryDelayMillis(download.attempts);
+                LOGGER.log(Level.INFO, String.format("%s artifacts of %s not downloaded (%s), trying again in %s ms",
+                        download.provider, download.seleniumSessionId, e.toString(), retryDelayMillis));
+                LOGGER.log(Level.FINE, e.toString(), e);
+                schedule(download, retryDelayMillis);
+            }
+        }
+        queueChanged.set(true);
+    }
+
+    /*
+        Doubles with every attempt up to the max, a random half of it is taken off so the retries of many
+        downloads that failed together do not hit the provider at the same moment again.
+     */
+    @VisibleForTesting
+    long getRetryDelayMillis(int attempts) {
+        long delayMillis = Math.min(maxRetryDelayMillis, firstRetryDelayMillis << Math.min(attempts - 1, 20));
+        return delayMillis / 2 + ThreadLocalRandom.current().nextLong(delayMillis / 2 + 1);
+    }
+
+    /*
+        The queue file is written by the timer in batches, so neither the session that enqueued a download nor the
+        download threads wait for the disk.
+     */
+    private void saveQueueIfChanged() {
+        if (queueChanged.getAndSet(false)) {
+            saveQueue();
+        }
+    }
+
+    private synchronized void saveQueue() {
+        JsonArray queue = new JsonArray();
+        List<Download> downloads = new ArrayList<>(pendingDownloads);
+        downloads.sort(Comparator.comparingLong(download -> download.sequenceNumber));
+        for (Download download : downloads) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("provider", download.provider);
+            entry.addProperty("seleniumSessionId", download.seleniumSessionId);
+            entry.addProperty("attempts", download.attempts);
+            entry.addProperty("enqueuedAt", download.enqueuedAt);
+            queue.add(entry);
+        }
+        try {
+            Files.createDirectories(queueFile.toAbsolutePath().getParent());
+            Path temporaryFile = queueFile.resolveSibling(queueFile.getFileName() + ".tmp");
+            Files.write(temporaryFile, queue.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryFile, queueFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Pending downloads could not be saved to " + queueFile, e);
+        }
+    }
+
+    private void loadQueue() {
+        if (!Files.exists(queueFile)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(queueFile, StandardCharsets.UTF_8)) {
+            for (JsonElement element : new JsonParser().parse(reader).getAsJsonArray()) {
+                JsonObject entry = element.getAsJsonObject();
+                Download download = new Download(entry.get("provider").getAsString(),
+                        entry.get("seleniumSessionId").getAsString(), entry.get("attempts").getAsInt(),
+                        entry.get("enqueuedAt").getAsLong(), sequence.incrementAndGet());
+                pendingDownloads.add(download);
+                waitingForSource.computeIfAbsent(download.provider, provider -> new ArrayList<>()).add(download);
+            }
+            LOGGER.log(Level.INFO, "{0} pending downloads loaded from {1}", new Object[]{pendingDownloads.size(),
+                    queueFile});
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Pending downloads could not be loaded from " + queueFile, e);
+        }
+    }
+
+    /**
+     * Downloads the artifacts of a test, it is called again for the same download when an attempt fails.
+     */
+    public interface ArtifactSource extends CloudProvider {
+        void downloadArtifacts(Download download) throws Exception;
+
+        /*
+            Called when the download is not tried anymore, to remove what the attempts left.
+         */
+        default void downloadAbandoned(Download download) {
+        }
+    }
+
+    /**
+     * The artifacts of one test. What an attempt already got is kept, so the next attempt does not download it
+     * again, and the files keep the same names.
+     */
+    public static class Download {
+        private final String provider;
+        private final String seleniumSessionId;
+        private final long enqueuedAt;
+        private final long sequenceNumber;
+        private final Set<String> downloadedUrls = Collections.synchronizedSet(new HashSet<>());
+        private volatile int attempts;
+        private volatile TestInformation testInformation;
+
+        private Download(String provider, String seleniumSessionId, int attempts, long enqueuedAt,
+                         long sequenceNumber) {
+            this.provider = provider;
+            this.seleniumSessionId = seleniumSessionId;
+            this.attempts = attempts;
+            this.enqueuedAt = enqueuedAt;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        public String getSeleniumSessionId() {
+            return seleniumSessionId;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public TestInformation getTestInformation() {
+            return testInformation;
+        }
+
+        public void setTestInformation(TestInformation testInformation) {
+            this.testInformation = testInformation;
+        }
+
+        public boolean isDownloaded(String url) {
+            return downloadedUrls.contains(url);
+        }
+
+        public void downloaded(String url) {
+            downloadedUrls.add(url);
+        }
+    }
+
+    private class Attempt implements Runnable, Comparable<Attempt> {
+        private final Download download;
+        private final int attempts;
+
+        private Attempt(Download download) {
+            this.download = download;
+            this.attempts = download.attempts;
+        }
+
+        @Override
+        public void run() {
+            runAttempt(download);
+        }
+
+        @Override
+        public int compareTo(Attempt other) {
+            if (attempts != other.attempts) {
+                return Integer.compare(attempts, other.attempts);
+            }
+            if (download.enqueuedAt != other.download.enqueuedAt) {
+                return Long.compare(download.enqueuedAt, other.download.enqueuedAt);
+            }
+            return Long.compare(download.sequenceNumber, other.download.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the free slots in the accounts of the cloud testing providers, shared by all the cloud proxies.
+ * The accounts are usually shared with other teams, so the concurrency read when the proxy registers does not say
+ * how many sessions can be started right now. A background poller reads how many sessions the account allows and
+ * how many are running, and the sessions this hub started since the last poll are counted on top, so a burst of
+ * requests between two polls does not take more slots than the ones that are free.
+ * When the provider cannot be polled, or the last poll is too old, the slots of the proxy are the only limit.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudConcurrencyTracker {
+
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_CONCURRENCY_POLL_SECS = "ZALENIUM_CLOUD_CONCURRENCY_POLL_SECS";
+    @VisibleForTesting
+    static final int DEFAULT_CLOUD_CONCURRENCY_POLL_SECS = 30;
+    // After this many intervals without a successful poll, the account information is not trusted anymore.
+    private static final int STALE_AFTER_POLLS = 3;
+    public static final int UNKNOWN = -1;
+    private static final Logger LOGGER = Logger.getLogger(CloudConcurrencyTracker.class.getName());
+    private static CloudConcurrencyTracker sharedInstance;
+
+    private final long pollIntervalMillis;
+    private final ConcurrentMap<String, ProviderState> providers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller;
+
+    @VisibleForTesting
+    CloudConcurrencyTracker(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    public static synchronized CloudConcurrencyTracker getInstance() {
+        if (sharedInstance == null) {
+            int pollSeconds = CloudTestingRemoteProxy.getEnv().getIntEnvVariable(ZALENIUM_CLOUD_CONCURRENCY_POLL_SECS,
+                    DEFAULT_CLOUD_CONCURRENCY_POLL_SECS);
+            sharedInstance = new CloudConcurrencyTracker(
+                    TimeUnit.SECONDS.toMillis(pollSeconds > 0 ? pollSeconds : DEFAULT_CLOUD_CONCURRENCY_POLL_SECS));
+        }
+        return sharedInstance;
+    }
+
+    /*
+        The provider is read right away and polled from then on, the poller starts with the first provider
+        registered.
+     */
+    public synchronized void register(ConcurrencySource source) {
+        ProviderState state = getState(source);
+        state.source = source;
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CloudConcurrencyTracker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        poller.execute(() -> poll(state));
+    }
+
+    /*
+        Takes a slot in the account of the provider for a new session, when there is one free. The slot has to be
+        released when the session could not be created or once it is over.
+     */
+    public boolean tryReserveSlot(ConcurrencySource source) {
+        ProviderState state = getState(source);
+        synchronized (state) {
+            int freeSlots = state.getFreeSlots();
+            if (freeSlots == UNKNOWN || freeSlots > 0) {
+                state.hubSessions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public void releaseSlot(ConcurrencySource source) {
+        ProviderState state = getState(source);
+        synchronized (state) {
+            state.hubSessions = Math.max(0, state.hubSessions - 1);
+            state.hubSessionsAtPoll = Math.min(state.hubSessionsAtPoll, state.hubSessions);
+        }
+    }
+
+    /*
+        The slots that are free in the account of the provider right now, or UNKNOWN when it cannot be told.
+     */
+    public int getFreeSlots(ConcurrencySource source) {
+        ProviderState state = getState(source);
+        synchronized (state) {
+            return state.getFreeSlots();
+        }
+    }
+
+    /*
+        The sessions the account of the provider allows in parallel, or UNKNOWN when it cannot be told.
+     */
+    public int getAllowedSlots(ConcurrencySource source) {
+        ProviderState state = getState(source);
+        synchronized (state) {
+            return state.isKnown() ? state.concurrency.getAllowed() : UNKNOWN;
+        }
+    }
+
+    @VisibleForTesting
+    void poll() {
+        providers.values().forEach(this::poll);
+    }
+
+    private void poll(ProviderState state) {
+        ConcurrencySource source = state.source;
+        if (source == null) {
+            return;
+        }
+        try {
+            AccountConcurrency concurrency = source.readAccountConcurrency();
+            if (concurrency == null) {
+                return;
+            }
+            synchronized (state) {
+                state.concurrency = concurrency;
+                state.polledAt = System.currentTimeMillis();
+                state.hubSessionsAtPoll = state.hubSessions;
+            }
+            source.accountConcurrencyRead(concurrency);
+            LOGGER.log(Level.FINE, "{0} account concurrency: {1}", new Object[]{state.provider, concurrency});
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Account concurrency of " + state.provider + " could not be read", e);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private ProviderState getState(ConcurrencySource source) {
+        return providers.computeIfAbsent(source.getProviderName(), key -> new ProviderState(key, pollIntervalMillis));
+    }
+
+    /*
+        Reads how many sessions the account of a provider allows and how many are running in it, null when the
+        provider does not offer that information. Each successful read is handed back to the source as well.
+     */
+    public interface ConcurrencySource extends CloudProvider {
+        AccountConcurrency readAccountConcurrency() throws Exception;
+
+        default void accountConcurrencyRead(AccountConcurrency concurrency) {
+        }
+    }
+
+    public static class AccountConcurrency {
+        private final int allowed;
+        private final int running;
+
+        /*
+            Running can be UNKNOWN when the provider only tells the allowed sessions, then only the sessions of
+            this hub are counted as running.
+         */
+        public AccountConcurrency(int allowed, int running) {
+            this.allowed = allowed;
+            this.running = running;
+        }
+
+        public int getAllowed() {
+            return allowed;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s of %s sessions running", running == UNKNOWN ? "unknown" : running, allowed);
+        }
+    }
+
+    private static class ProviderState {
+        private final String provider;
+        private final long pollIntervalMillis;
+        private volatile ConcurrencySource source;
+        private AccountConcurrency concurrency;
+        private long polledAt;
+        // Sessions of this hub in the account right now, and how many of them were there at the last poll.
+        private int hubSessions;
+        private int hubSessionsAtPoll;
+
+        private ProviderState(String provider, long pollIntervalMillis) {
+            this.provider = provider;
+            this.pollIntervalMillis = pollIntervalMillis;
+        }
+
+        private boolean isKnown() {
+            return concurrency != null
+                    && System.currentTimeMillis() - polledAt <= STALE_AFTER_POLLS * pollIntervalMillis;
+        }
+
+        private int getFreeSlots() {
+            if (!isKnown()) {
+                return UNKNOWN;
+            }
+            int running;
+            if (concurrency.getRunning() == UNKNOWN) {
+                running = hubSessions;
+            } else {
+                running = concurrency.getRunning() + Math.max(0, hubSessions - hubSessionsAtPoll);
+            }
+            return Math.max(0, concurrency.getAllowed() - running);
+        }
+    }
+}
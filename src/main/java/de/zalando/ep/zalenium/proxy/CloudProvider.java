@@ -0,0 +1,16 @@
+package de.zalando.ep.zalenium.proxy;
+
+/**
+ * Something that belongs to one cloud testing provider, e.g. its proxy. The provider name keys the state that is
+ * shared per provider, like its account concurrency or its download threads.
+ */
+public interface CloudProvider {
+    String getProxyName();
+
+    /*
+        The name of the proxy, or the class name when the proxy has none.
+     */
+    default String getProviderName() {
+        return getProxyName() == null ? getClass().getSimpleName() : getProxyName();
+    }
+}
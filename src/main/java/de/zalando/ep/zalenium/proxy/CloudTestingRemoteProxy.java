@@ -14,6 +14,7 @@ import org.apache.commons.io.FileUtils;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
 import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
 import org.openqa.grid.internal.utils.CapabilityMatcher;
 import org.openqa.grid.internal.utils.HtmlRenderer;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
@@ -30,13 +31,25 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @SuppressWarnings("WeakerAccess")
-public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
+public class CloudTestingRemoteProxy extends DefaultRemoteProxy implements CloudArtifactDownloader.ArtifactSource,
+        CloudConcurrencyTracker.ConcurrencySource {
 
+    /*
+        Cloud proxies register with a single slot, so the hub does not wait for the provider to answer before
+        starting. The slots are resized once the account concurrency is read in the background.
+     */
+    protected static final int CONSERVATIVE_SLOT_COUNT = 1;
     private static final Logger logger = Logger.getLogger(CloudTestingRemoteProxy.class.getName());
     private static final GoogleAnalyticsApi defaultGA = new GoogleAnalyticsApi();
     private static final CommonProxyUtilities defaultCommonProxyUtilities = new CommonProxyUtilities();
@@ -46,6 +59,13 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
     private static Environment env = defaultEnvironment;
     private final HtmlRenderer renderer = new CloudProxyHtmlRenderer(this);
     private CapabilityMatcher capabilityHelper;
+    private volatile List<TestSlot> resizedTestSlots;
+    /*
+        Taken when a slot gets a session and when the slots are resized. Grid 3.3.1 keeps its registry lock to
+        itself, but every slot of this proxy is claimed through getNewSession, so this lock keeps a resize from
+        dropping a slot that is getting a session at the same time.
+     */
+    private final Object testSlotsLock = new Object();
 
     @SuppressWarnings("WeakerAccess")
     public CloudTestingRemoteProxy(RegistrationRequest request, Registry registry) {
@@ -107,8 +127,76 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         if (!hasCapability(requestedCapability)) {
             return null;
         }
+        /*
+            The account is shared with other teams, the test stays in the queue until the provider has a free slot.
+        */
+        CloudConcurrencyTracker concurrencyTracker = CloudConcurrencyTracker.getInstance();
+        if (!concurrencyTracker.tryReserveSlot(this)) {
+            logger.log(Level.FINE, () -> getProxyName() + " has no free slots in the account right now");
+            return null;
+        }
+        TestSession testSession;
+        synchronized (testSlotsLock) {
+            testSession = super.getNewSession(requestedCapability);
+        }
+        if (testSession == null) {
+            concurrencyTracker.releaseSlot(this);
+            return null;
+        }
         logger.log(Level.INFO, () ->"Test will be forwarded to " + getProxyName() + ", " + requestedCapability);
-        return super.getNewSession(requestedCapability);
+        return testSession;
+    }
+
+    @Override
+    public List<TestSlot> getTestSlots() {
+        List<TestSlot> testSlots = resizedTestSlots;
+        return testSlots == null ? super.getTestSlots() : testSlots;
+    }
+
+    /*
+        Gives the proxy as many slots as sessions the account allows. Free slots are the only ones removed when
+        the account allows less sessions than before, busy ones are removed by a later read once their test is over.
+     */
+    @VisibleForTesting
+    void resizeTestSlots(int slots) {
+        int previousSize;
+        int newSize;
+        synchronized (testSlotsLock) {
+            List<TestSlot> currentTestSlots = getTestSlots();
+            if (currentTestSlots.isEmpty() || currentTestSlots.size() == slots) {
+                return;
+            }
+            List<TestSlot> testSlots = new ArrayList<>(currentTestSlots);
+            TestSlot template = currentTestSlots.get(0);
+            while (testSlots.size() < slots) {
+                Map<String, Object> capabilities = new HashMap<>(template.getCapabilities());
+                capabilities.put(RegistrationRequest.MAX_INSTANCES, slots);
+                testSlots.add(createTestSlot(template.getProtocol(), capabilities));
+            }
+            // No session can be given to a slot while the lock is held, so a free slot stays free until the swap.
+            for (int i = testSlots.size() - 1; i >= 0 && testSlots.size() > slots; i--) {
+                if (testSlots.get(i).getSession() == null) {
+                    testSlots.remove(i);
+                }
+            }
+            config.maxSession = slots;
+            resizedTestSlots = Collections.unmodifiableList(testSlots);
+            previousSize = currentTestSlots.size();
+            newSize = testSlots.size();
+        }
+        logger.log(Level.INFO, "{0} slots resized from {1} to {2}",
+                new Object[]{getProxyName(), previousSize, newSize});
+    }
+
+    @Override
+    public void accountConcurrencyRead(CloudConcurrencyTracker.AccountConcurrency concurrency) {
+        resizeTestSlots(Math.max(CONSERVATIVE_SLOT_COUNT, concurrency.getAllowed()));
+    }
+
+    @Override
+    public void afterSession(TestSession session) {
+        CloudConcurrencyTracker.getInstance().releaseSlot(this);
+        super.afterSession(session);
     }
 
     @Override
@@ -197,28 +285,85 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         return false;
     }
 
+    /*
+        Null when the provider does not tell how many sessions are running in the account.
+     */
+    @Override
+    public CloudConcurrencyTracker.AccountConcurrency readAccountConcurrency() throws Exception {
+        return null;
+    }
+
+    /*
+        The video and logs are downloaded by the shared downloader, which limits the parallel downloads of each
+        provider and retries them later when they are not ready yet.
+     */
     public void addTestToDashboard(String seleniumSessionId) {
-        new Thread(() -> {
-            try {
-                TestInformation testInformation = getTestInformation(seleniumSessionId);
-                String fileNameWithFullPath = testInformation.getVideoFolderPath() + "/" + testInformation.getFileName();
-                commonProxyUtilities.downloadFile(testInformation.getVideoUrl(), fileNameWithFullPath,
-                        getUserNameValue(), getAccessKeyValue(), useAuthenticationToDownloadFile());
-                if (convertVideoFileToMP4()) {
-                    commonProxyUtilities.convertFlvFileToMP4(testInformation);
-                }
-                for (String logUrl : testInformation.getLogUrls()) {
-                    String fileName = logUrl.substring(logUrl.lastIndexOf('/') + 1);
-                    fileNameWithFullPath = testInformation.getLogsFolderPath() + "/" + fileName;
-                    commonProxyUtilities.downloadFile(logUrl, fileNameWithFullPath,
-                            getUserNameValue(), getAccessKeyValue(), useAuthenticationToDownloadFile());
-                }
-                createFeatureNotImplementedFile(testInformation.getLogsFolderPath());
-                Dashboard.updateDashboard(testInformation);
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, e.toString(), e);
+        CloudArtifactDownloader.getInstance().enqueue(this, seleniumSessionId);
+    }
+
+    /*
+        One attempt to download the video and logs of a test and add it to the dashboard, what was downloaded by a
+        previous attempt is skipped.
+     */
+    @Override
+    public void downloadArtifacts(CloudArtifactDownloader.Download download) throws Exception {
+        TestInformation testInformation = download.getTestInformation();
+        if (testInformation == null) {
+            testInformation = getTestInformation(download.getSeleniumSessionId());
+            download.setTestInformation(testInformation);
+        }
+        String videoUrl = testInformation.getVideoUrl();
+        if (!download.isDownloaded(videoUrl)) {
+            String fileNameWithFullPath = testInformation.getVideoFolderPath() + "/" + testInformation.getFileName();
+            commonProxyUtilities.downloadFile(videoUrl, fileNameWithFullPath, getUserNameValue(),
+                    getAccessKeyValue(), useAuthenticationToDownloadFile());
+            if (convertVideoFileToMP4()) {
+                commonProxyUtilities.convertFlvFileToMP4(testInformation);
+            }
+            download.downloaded(videoUrl);
+        }
+        for (String logUrl : testInformation.getLogUrls()) {
+            if (!download.isDownloaded(logUrl)) {
+                String fileName = logUrl.substring(logUrl.lastIndexOf('/') + 1);
+                String fileNameWithFullPath = testInformation.getLogsFolderPath() + "/" + fileName;
+                commonProxyUtilities.downloadFile(logUrl, fileNameWithFullPath, getUserNameValue(),
+                        getAccessKeyValue(), useAuthenticationToDownloadFile());
+                download.downloaded(logUrl);
+            }
+        }
+        createFeatureNotImplementedFile(testInformation.getLogsFolderPath());
+        Dashboard.updateDashboard(testInformation);
+    }
+
+    @Override
+    public void downloadAbandoned(CloudArtifactDownloader.Download download) {
+        TestInformation testInformation = download.getTestInformation();
+        if (testInformation != null) {
+            deletePartialDownload(Paths.get(testInformation.getVideoFolderPath(), testInformation.getFileName()));
+            for (String logUrl : testInformation.getLogUrls()) {
+                String fileName = logUrl.substring(logUrl.lastIndexOf('/') + 1);
+                deletePartialDownload(Paths.get(testInformation.getLogsFolderPath(), fileName));
             }
-        }).start();
+        }
+    }
+
+    private void deletePartialDownload(Path target) {
+        try {
+            CloudHttpClient.deletePartialDownload(target);
+        } catch (IOException e) {
+            logger.log(Level.FINE, getProxyName() + " partial download could not be deleted: " + target, e);
+        }
+    }
+
+    /*
+        Downloads of this provider that were pending when the hub stopped are resumed once it is part of the grid,
+        and the free slots of its account are tracked from then on, the first read resizes the slots.
+     */
+    @Override
+    public void startPolling() {
+        super.startPolling();
+        CloudArtifactDownloader.getInstance().register(this);
+        CloudConcurrencyTracker.getInstance().register(this);
     }
 
     @Override
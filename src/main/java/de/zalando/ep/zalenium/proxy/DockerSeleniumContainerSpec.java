@@ -0,0 +1,82 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Browser, screen resolution and time zone of a docker-selenium container. It is built from the requested
+ * capabilities when the request arrives and passed along until the container is created, so requests with
+ * different values can be provisioned at the same time without sharing any state.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerSeleniumContainerSpec {
+    private final String browser;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final String timeZone;
+
+    public DockerSeleniumContainerSpec(String browser, int screenWidth, int screenHeight, String timeZone) {
+        this.browser = browser;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.timeZone = timeZone;
+    }
+
+    public String getBrowser() {
+        return browser;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public String getScreenResolution() {
+        return String.format("%sx%s", screenWidth, screenHeight);
+    }
+
+    /*
+        True when a node with the given capabilities runs this browser, and also this screen resolution and time
+        zone when the node registered them.
+     */
+    boolean matches(Map<String, Object> nodeCapabilities) {
+        Object browserName = nodeCapabilities.get(CapabilityType.BROWSER_NAME);
+        Object screenResolution = nodeCapabilities.get("screenResolution");
+        Object tz = nodeCapabilities.get("tz");
+        return browserName != null && browser.equalsIgnoreCase(browserName.toString())
+                && (screenResolution == null || getScreenResolution().equals(screenResolution.toString()))
+                && (tz == null || timeZone.equals(tz.toString()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DockerSeleniumContainerSpec that = (DockerSeleniumContainerSpec) o;
+        return screenWidth == that.screenWidth && screenHeight == that.screenHeight &&
+                browser.equalsIgnoreCase(that.browser) && Objects.equals(timeZone, that.timeZone);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(browser.toLowerCase(), screenWidth, screenHeight, timeZone);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", browser, getScreenResolution(), timeZone);
+    }
+}
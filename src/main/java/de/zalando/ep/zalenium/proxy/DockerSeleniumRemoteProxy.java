@@ -1,12 +1,16 @@
 package de.zalando.ep.zalenium.proxy;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.spotify.docker.client.DefaultDockerClient;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.Container;
 import com.spotify.docker.client.messages.ExecCreation;
+import de.zalando.ep.zalenium.container.ContainerInventory;
+import de.zalando.ep.zalenium.container.SharedDockerClient;
 import de.zalando.ep.zalenium.util.*;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -34,8 +38,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,22 +63,73 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     @VisibleForTesting
     static final boolean DEFAULT_VIDEO_RECORDING_ENABLED = true;
     @VisibleForTesting
+    static final String ZALENIUM_KEEP_ONLY_FAILED_TESTS_VIDEOS = "ZALENIUM_KEEP_ONLY_FAILED_TESTS_VIDEOS";
+    @VisibleForTesting
+    static final boolean DEFAULT_KEEP_ONLY_FAILED_TESTS_VIDEOS = false;
+    @VisibleForTesting
+    static final String KEEP_ONLY_FAILED_TESTS_VIDEOS_CAPABILITY = "keepOnlyFailedTestsVideos";
+    @VisibleForTesting
+    static final String TEST_PASSED_COOKIE = "zaleniumTestPassed";
+    @VisibleForTesting
     static final long DEFAULT_MAX_TEST_IDLE_TIME_SECS = 90L;
+    @VisibleForTesting
+    static final String ZALENIUM_MAX_TEST_SESSIONS = "ZALENIUM_MAX_TEST_SESSIONS";
+    @VisibleForTesting
+    static final int DEFAULT_MAX_TEST_SESSIONS = 1;
+    @VisibleForTesting
+    static final String ZALENIUM_MAX_NODE_AGE_SECS = "ZALENIUM_MAX_NODE_AGE_SECS";
+    // Zero means that nodes are not recycled because of their age.
+    @VisibleForTesting
+    static final long DEFAULT_MAX_NODE_AGE_SECS = 0L;
     private static final Logger LOGGER = Logger.getLogger(DockerSeleniumRemoteProxy.class.getName());
-    private static final int MAX_UNIQUE_TEST_SESSIONS = 1;
-    private static final DockerClient defaultDockerClient = new DefaultDockerClient("unix:///var/run/docker.sock");
+    private static final String MAX_TEST_SESSIONS_CAPABILITY = "maxTestSessions";
+    private static final String ARTIFACTS_FOLDER = "/tmp/artifacts";
+    private static final String VIDEOS_ARTIFACTS_FOLDER = "videos/";
+    private static final String LOGS_ARTIFACTS_FOLDER = "cont/";
+    private static final long LIFECYCLE_TICK_MILLIS = 500;
+    private static final NodeLifecycleScheduler lifecycleScheduler = new NodeLifecycleScheduler(LIFECYCLE_TICK_MILLIS);
+    // Threads of each teardown stage, shared by all nodes. The dashboard is written by one thread at a time anyway.
+    private static final int TEARDOWN_STAGE_THREADS = 10;
+    // Nodes waiting for a teardown stage before a warning is logged and the previous stages have to wait.
+    private static final int TEARDOWN_STAGE_QUEUE_THRESHOLD = 500;
+    private static final NodeTeardownPipeline teardownPipeline = new NodeTeardownPipeline(
+            stage -> stage == NodeTeardownPipeline.Stage.UPDATE_DASHBOARD ? 1 : TEARDOWN_STAGE_THREADS,
+            TEARDOWN_STAGE_QUEUE_THRESHOLD);
+    // Starting the recording when the node registers is not waited for, but it has to be done before it is stopped.
+    private static final int VIDEO_RECORDING_START_THREADS = 10;
+    private static final long VIDEO_RECORDING_START_TIMEOUT_SECS = 30;
+    private static final ExecutorService videoRecordingStarter = Executors.newFixedThreadPool(
+            VIDEO_RECORDING_START_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "VideoRecordingStarter");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final DockerClient defaultDockerClient = SharedDockerClient.getInstance();
     private static final Environment defaultEnvironment = new Environment();
     private static boolean videoRecordingEnabled;
+    private static boolean keepOnlyFailedTestsVideos;
+    private static int maxTestSessions;
+    private static long maxNodeAgeSecs;
     private static DockerClient dockerClient = defaultDockerClient;
     private static Environment env = defaultEnvironment;
     private int amountOfExecutedTests;
     private long maxTestIdleTimeSecs;
     private String testGroup;
     private String testName;
-    private String containerId = null;
+    private volatile String containerId = null;
     private TestInformation testInformation;
-    private boolean afterSessionEventReceived = false;
-    private DockerSeleniumNodePoller dockerSeleniumNodePollerThread = null;
+    private volatile boolean keepOnlyFailedTestVideo;
+    // Set by the test through a cookie, null when the test did not say if it passed.
+    private volatile Boolean testPassed;
+    private int maxTestSessionsForNode;
+    private final long creationTime = System.currentTimeMillis();
+    private volatile boolean afterSessionEventReceived = false;
+    private volatile boolean acceptingSessions = true;
+    private volatile boolean recycleRequired = false;
+    private volatile DockerSeleniumNodePoller dockerSeleniumNodePoller = null;
+    private volatile CompletableFuture<Void> videoRecordingStart = CompletableFuture.completedFuture(null);
+    // When the running recording started, zero when none is running.
+    private volatile long videoStartTime = 0;
     private GoogleAnalyticsApi ga = new GoogleAnalyticsApi();
     private CapabilityMatcher capabilityHelper;
     private final HtmlRenderer renderer = new WebProxyHtmlRendererBeta(this);
@@ -74,6 +138,9 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         super(request, registry);
         this.amountOfExecutedTests = 0;
         readEnvVarForVideoRecording();
+        readEnvVarsForNodeReuse();
+        this.maxTestSessionsForNode = maxTestSessions;
+        DockerSeleniumStarterRemoteProxy.nodeRegistered(getRemoteHost().getPort());
     }
 
     public HtmlRenderer getHtmlRender() {
@@ -85,6 +152,20 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         boolean videoEnabled = env.getBooleanEnvVariable(ZALENIUM_VIDEO_RECORDING_ENABLED,
                 DEFAULT_VIDEO_RECORDING_ENABLED);
         setVideoRecordingEnabled(videoEnabled);
+        keepOnlyFailedTestsVideos = env.getBooleanEnvVariable(ZALENIUM_KEEP_ONLY_FAILED_TESTS_VIDEOS,
+                DEFAULT_KEEP_ONLY_FAILED_TESTS_VIDEOS);
+    }
+
+    /*
+        By default each node runs a single test and is thrown away. When more sessions are allowed, the node is
+        cleaned up after each one and offered again, until it ran that many tests or it is older than the max age.
+     */
+    @VisibleForTesting
+    static void readEnvVarsForNodeReuse() {
+        int sessions = env.getIntEnvVariable(ZALENIUM_MAX_TEST_SESSIONS, DEFAULT_MAX_TEST_SESSIONS);
+        maxTestSessions = sessions > 0 ? sessions : DEFAULT_MAX_TEST_SESSIONS;
+        long ageSecs = env.getIntEnvVariable(ZALENIUM_MAX_NODE_AGE_SECS, (int) DEFAULT_MAX_NODE_AGE_SECS);
+        maxNodeAgeSecs = ageSecs > 0 ? ageSecs : DEFAULT_MAX_NODE_AGE_SECS;
     }
 
     @VisibleForTesting
@@ -127,8 +208,12 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (!hasCapability(requestedCapability)) {
             return null;
         }
-        if (increaseCounter()) {
+        if (increaseCounter(requestedCapability)) {
             TestSession newSession = super.getNewSession(requestedCapability);
+            if (newSession == null) {
+                sessionNotAssigned();
+                return null;
+            }
             String browserName = requestedCapability.getOrDefault(CapabilityType.BROWSER_NAME, "").toString();
             testName = requestedCapability.getOrDefault("name", "").toString();
             if (testName.isEmpty()) {
@@ -145,7 +230,13 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
             testInformation = new TestInformation(testName, testName, "Zalenium", browserName, browserVersion,
                     Platform.LINUX.name());
             testInformation.setVideoRecorded(isVideoRecordingEnabled());
+            keepOnlyFailedTestVideo = Boolean.parseBoolean(requestedCapability.getOrDefault(
+                    KEEP_ONLY_FAILED_TESTS_VIDEOS_CAPABILITY, keepOnlyFailedTestsVideos).toString());
+            testPassed = null;
             maxTestIdleTimeSecs = getConfiguredIdleTimeout(requestedCapability);
+            checkLifecycleAt(System.currentTimeMillis() + maxTestIdleTimeSecs * 1000L);
+            // This node is not idle anymore, the warm pool (when enabled) starts a replacement.
+            DockerSeleniumStarterRemoteProxy.nodeClaimed(requestedCapability, getId());
             return newSession;
         }
         LOGGER.log(Level.FINE, "{0} No more sessions allowed", getId());
@@ -160,6 +251,25 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return capabilityHelper;
     }
 
+    /*
+        The amount of sessions a node runs can be set with a capability, it is taken from the first session the
+        node gets, and the value set via ZALENIUM_MAX_TEST_SESSIONS is used when it is missing or not valid.
+     */
+    private int getConfiguredMaxTestSessions(Map<String, Object> requestedCapability) {
+        int configuredMaxTestSessions;
+        try {
+            configuredMaxTestSessions = Integer.parseInt(requestedCapability.getOrDefault(MAX_TEST_SESSIONS_CAPABILITY,
+                    maxTestSessions).toString());
+        } catch (Exception e) {
+            configuredMaxTestSessions = maxTestSessions;
+            LOGGER.log(Level.FINE, getId() + " " + e.toString(), e);
+        }
+        if (configuredMaxTestSessions <= 0) {
+            configuredMaxTestSessions = maxTestSessions;
+        }
+        return configuredMaxTestSessions;
+    }
+
     private long getConfiguredIdleTimeout(Map<String, Object> requestedCapability) {
         long configuredIdleTimeout;
         try {
@@ -179,60 +289,257 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (RequestType.START_SESSION.equals(seleniumRequest.getRequestType())) {
-                videoRecording(DockerSeleniumContainerAction.START_RECORDING);
+                TestInformation sessionTestInformation = testInformation;
+                if (sessionTestInformation != null) {
+                    sessionTestInformation.setSessionStartTime(System.currentTimeMillis());
+                }
+            } else if (seleniumRequest.getPathInfo() != null && seleniumRequest.getPathInfo().endsWith("/cookie")) {
+                readTestPassedCookie(seleniumRequest);
             }
         }
         super.beforeCommand(session, request, response);
     }
 
+    /*
+        Tests tell if they passed by adding a cookie, e.g. {"name": "zaleniumTestPassed", "value": "false"}. The
+        cookie is still sent to the browser, like any other one.
+     */
+    private void readTestPassedCookie(WebDriverRequest seleniumRequest) {
+        try {
+            JsonElement cookie = new JsonParser().parse(seleniumRequest.getBody()).getAsJsonObject().get("cookie");
+            if (cookie != null && cookie.isJsonObject()) {
+                JsonObject cookieObject = cookie.getAsJsonObject();
+                if (cookieObject.has("name") && TEST_PASSED_COOKIE.equals(cookieObject.get("name").getAsString())) {
+                    testPassed = Boolean.parseBoolean(cookieObject.get("value").getAsString());
+                    LOGGER.log(Level.INFO, "{0} Test passed: {1}", new Object[]{getId(), testPassed});
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, getId() + " Could not read the cookie " + e.toString(), e);
+        }
+    }
+
+    /*
+        When only the videos of failed tests are kept, the video of a session is dropped unless the test said it
+        failed or it was idle for too long. Tests that did not say anything keep their video.
+     */
+    @VisibleForTesting
+    protected boolean isVideoKept(boolean isTestIdle) {
+        return !keepOnlyFailedTestVideo || isTestIdle || !Boolean.TRUE.equals(testPassed);
+    }
+
+    /*
+        The recording is started while the node waits for its session, so the video has the whole test and the
+        session creation does not wait for the docker exec. The time is taken once the exec is done, and the time
+        when the session started is kept as well, so the video can be trimmed to the test.
+     */
+    private void startVideoRecording() {
+        if (videoRecording(DockerSeleniumContainerAction.START_RECORDING)) {
+            videoStartTime = System.currentTimeMillis();
+        }
+    }
+
+    /*
+        The recording can only be stopped once it started, otherwise it would keep going after the session.
+     */
+    private void awaitVideoRecordingStart() {
+        try {
+            videoRecordingStart.get(VIDEO_RECORDING_START_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, getId() + " Video recording did not start properly.", e);
+            recycleRequired = true;
+        }
+    }
+
+    /*
+        The session is over, so collecting its artifacts and cleaning up (or removing) the node starts right away
+        in the lifecycle workers. The slot gets released meanwhile, and the node takes a new session only after it
+        was cleaned up.
+     */
     @Override
     public void afterSession(TestSession session) {
         this.afterSessionEventReceived = true;
-        String message = String.format("%s AFTER_SESSION command received. Node should shutdown soon...", getId());
+        String message = String.format("%s AFTER_SESSION command received. Node should be cleaned up or shutdown " +
+                "soon...", getId());
         LOGGER.log(Level.INFO, message);
+        DockerSeleniumNodePoller currentNodePoller = dockerSeleniumNodePoller;
+        if (currentNodePoller != null) {
+            currentNodePoller.sessionEnded();
+        }
         long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
         ga.testEvent(DockerSeleniumRemoteProxy.class.getName(), session.getRequestedCapabilities().toString(),
                 executionTime);
         super.afterSession(session);
     }
 
+    /*
+        The node lifecycle is checked by the shared scheduler, starting right away.
+     */
     @Override
     public void startPolling() {
         super.startPolling();
-        dockerSeleniumNodePollerThread = new DockerSeleniumNodePoller(this);
-        dockerSeleniumNodePollerThread.start();
+        DockerSeleniumNodePoller nodePoller = new DockerSeleniumNodePoller(this);
+        nodePoller.setScheduledCheck(lifecycleScheduler.register(getId(), nodePoller::check));
+        dockerSeleniumNodePoller = nodePoller;
+        nodePoller.scheduledCheck.runNow();
+        videoRecordingStart = CompletableFuture.runAsync(this::startVideoRecording, videoRecordingStarter);
     }
 
     @Override
     public void stopPolling() {
         super.stopPolling();
-        dockerSeleniumNodePollerThread.interrupt();
+        DockerSeleniumNodePoller currentNodePoller = dockerSeleniumNodePoller;
+        if (currentNodePoller != null) {
+            currentNodePoller.scheduledCheck.cancel();
+        }
+    }
+
+    /*
+        Moves the next lifecycle check forward, e.g. to when the session would be idle, or to now when the session
+        is over.
+     */
+    private void checkLifecycleAt(long time) {
+        DockerSeleniumNodePoller currentNodePoller = dockerSeleniumNodePoller;
+        if (currentNodePoller != null) {
+            currentNodePoller.scheduledCheck.runAt(time);
+        }
+    }
+
+    @VisibleForTesting
+    static NodeLifecycleScheduler getLifecycleScheduler() {
+        return lifecycleScheduler;
+    }
+
+    public static NodeTeardownPipeline getTeardownPipeline() {
+        return teardownPipeline;
     }
 
     @Override
     public void teardown() {
         super.teardown();
         stopPolling();
+        DockerSeleniumStarterRemoteProxy.releaseNodePort(getRemoteHost().getPort());
     }
 
     /*
-        Incrementing variable to count the number of tests executed, if possible.
+        Incrementing variable to count the number of tests executed, if possible. The node stops accepting sessions
+        until the one it got is done and the container was cleaned up.
      */
-    private synchronized boolean increaseCounter() {
+    private synchronized boolean increaseCounter(Map<String, Object> requestedCapability) {
+        if (!acceptingSessions || isNodeAgeLimitReached()) {
+            return false;
+        }
+        if (amountOfExecutedTests == 0) {
+            maxTestSessionsForNode = getConfiguredMaxTestSessions(requestedCapability);
+        }
         // Meaning that we have already executed the allowed number of tests.
         if (isTestSessionLimitReached()) {
             return false;
         }
         amountOfExecutedTests++;
+        acceptingSessions = false;
         return true;
     }
 
+    /*
+        The slot did not take the session after all, so it does not count.
+     */
+    private synchronized void sessionNotAssigned() {
+        amountOfExecutedTests--;
+        acceptingSessions = true;
+    }
+
     /*
         Method to decide if the node can be removed based on the amount of executed tests.
      */
     @VisibleForTesting
     protected synchronized boolean isTestSessionLimitReached() {
-        return getAmountOfExecutedTests() >= MAX_UNIQUE_TEST_SESSIONS;
+        return getAmountOfExecutedTests() >= maxTestSessionsForNode;
+    }
+
+    @VisibleForTesting
+    protected boolean isNodeAgeLimitReached() {
+        return maxNodeAgeSecs > 0 && System.currentTimeMillis() - creationTime >= maxNodeAgeSecs * 1000L;
+    }
+
+    /*
+        A node that finished a session is recycled when it ran all the sessions it is allowed to, when it is too
+        old, or when something failed in the container.
+     */
+    @VisibleForTesting
+    protected boolean isRecycleRequired() {
+        return recycleRequired || isTestSessionLimitReached() || isNodeAgeLimitReached();
+    }
+
+    /*
+        True when the node is clean and can still take a new session.
+     */
+    public synchronized boolean isAcceptingSessions() {
+        return acceptingSessions && !isTestSessionLimitReached() && !isNodeAgeLimitReached();
+    }
+
+    /*
+        An idle node that got too old stops accepting sessions, checked under the same lock used when a session is
+        assigned, so it cannot get one while it is being removed.
+     */
+    private synchronized boolean retireIfExpired() {
+        if (acceptingSessions && isNodeAgeLimitReached()) {
+            acceptingSessions = false;
+            return true;
+        }
+        return false;
+    }
+
+    /*
+        Kills any browser left from the previous session and removes its video and logs, so the next session
+        starts clean and gets only its own artifacts, then the recording for the next session is started. If any
+        of it fails, the node is not reused.
+     */
+    @VisibleForTesting
+    protected boolean cleanUpForNextSession() {
+        try {
+            processContainerAction(DockerSeleniumContainerAction.CLEAN_UP_SESSION, getContainerId());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, getId() + " Error cleaning up the node, it won't be reused. " + e.toString(), e);
+            ga.trackException(e);
+            recycleRequired = true;
+            return false;
+        }
+        startVideoRecording();
+        if (recycleRequired) {
+            return false;
+        }
+        synchronized (this) {
+            afterSessionEventReceived = false;
+            acceptingSessions = true;
+        }
+        LOGGER.log(Level.INFO, "{0} Node cleaned up after {1} of {2} tests, accepting new sessions.",
+                new Object[]{getId(), getAmountOfExecutedTests(), maxTestSessionsForNode});
+        return true;
+    }
+
+    /*
+        Milliseconds until the current session is idle for too long, or -1 when there is no session.
+     */
+    protected synchronized long getMillisUntilTestIdle() {
+        for (TestSlot testSlot : getTestSlots()) {
+            if (testSlot.getSession() != null) {
+                return Math.max(0, getMaxTestIdleTimeSecs() * 1000L - testSlot.getSession().getInactivityTime());
+            }
+        }
+        return -1;
+    }
+
+    /*
+        Milliseconds until the node is too old, or -1 when there is no age limit.
+     */
+    protected long getMillisUntilNodeAgeLimit() {
+        if (maxNodeAgeSecs <= 0) {
+            return -1;
+        }
+        return Math.max(0, creationTime + maxNodeAgeSecs * 1000L - System.currentTimeMillis());
     }
 
     /*
@@ -269,19 +576,31 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return amountOfExecutedTests;
     }
 
+    /*
+        Returns true when the action was done in the container. A recording that is running is always stopped,
+        even if a session disabled the video recording after it started.
+     */
     @VisibleForTesting
-    protected void videoRecording(final DockerSeleniumContainerAction action) {
-        if (isVideoRecordingEnabled()) {
+    protected boolean videoRecording(final DockerSeleniumContainerAction action) {
+        boolean recordingStopped = action == DockerSeleniumContainerAction.STOP_RECORDING;
+        if (recordingStopped ? videoStartTime != 0 : isVideoRecordingEnabled()) {
             try {
                 processContainerAction(action, getContainerId());
+                return true;
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, getId() + e.toString(), e);
                 ga.trackException(e);
+                recycleRequired = true;
+            } finally {
+                if (recordingStopped) {
+                    videoStartTime = 0;
+                }
             }
         } else {
             String message = String.format("%s %s: Video recording is disabled", getId(), action.getContainerAction());
             LOGGER.log(Level.INFO, message);
         }
+        return false;
     }
 
     public String getTestName() {
@@ -296,27 +615,69 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return maxTestIdleTimeSecs;
     }
 
+    @VisibleForTesting
+    TestInformation getTestInformation() {
+        return testInformation;
+    }
+
+    /*
+        Nodes created on a remote Docker host are managed through the client of that host.
+     */
+    private DockerClient getDockerClient() {
+        DockerClient hostDockerClient = DockerSeleniumStarterRemoteProxy.getDockerClientForNode(
+                getRemoteHost().getHost());
+        return hostDockerClient == null ? dockerClient : hostDockerClient;
+    }
+
+    /*
+        The id is recorded by the starter proxy when it creates the container. Containers created before the hub
+        restarted are looked up by the label with their node port, and the ones created by a hub version that did
+        not label them yet are looked up by their name. Neither lists all containers.
+     */
     protected String getContainerId() throws DockerException, InterruptedException {
         if (containerId == null) {
-            List<Container> containerList = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
-            for (Container container : containerList) {
-                String containerName = String.format("/%s_%s", DockerSeleniumStarterRemoteProxy.getContainerName(),
-                        getRemoteHost().getPort());
-                if (containerName.equalsIgnoreCase(container.names().get(0))) {
-                    containerId = container.id();
+            int nodePort = getRemoteHost().getPort();
+            containerId = DockerSeleniumStarterRemoteProxy.getContainerIdForNode(nodePort);
+            if (containerId == null) {
+                List<Container> containerList = getDockerClient().listContainers(
+                        DockerClient.ListContainersParam.allContainers(),
+                        DockerClient.ListContainersParam.withLabel(ContainerInventory.NODE_PORT_LABEL,
+                                String.valueOf(nodePort)));
+                if (!containerList.isEmpty()) {
+                    containerId = containerList.get(0).id();
                 }
             }
+            if (containerId == null) {
+                containerId = getContainerIdByName(DockerSeleniumStarterRemoteProxy.getNodeName(nodePort));
+            }
         }
         return containerId;
     }
 
+    /*
+        Docker matches the name filter as a pattern, e.g. zalenium_4000 also matches zalenium_40001, so the name
+        is compared afterwards.
+     */
+    private String getContainerIdByName(String nodeName) throws DockerException, InterruptedException {
+        List<Container> containerList = getDockerClient().listContainers(
+                DockerClient.ListContainersParam.allContainers(),
+                DockerClient.ListContainersParam.filter("name", nodeName));
+        String containerName = "/" + nodeName;
+        for (Container container : containerList) {
+            if (container.names() != null && container.names().stream().anyMatch(containerName::equalsIgnoreCase)) {
+                return container.id();
+            }
+        }
+        return null;
+    }
+
     @VisibleForTesting
     void processContainerAction(final DockerSeleniumContainerAction action, final String containerId) throws
             DockerException, InterruptedException, IOException, URISyntaxException {
         final String[] command = {"bash", "-c", action.getContainerAction()};
-        final ExecCreation execCreation = dockerClient.execCreate(containerId, command,
+        final ExecCreation execCreation = getDockerClient().execCreate(containerId, command,
                 DockerClient.ExecCreateParam.attachStdout(), DockerClient.ExecCreateParam.attachStderr());
-        final LogStream output = dockerClient.execStart(execCreation.id());
+        final LogStream output = getDockerClient().execStart(execCreation.id());
         LOGGER.log(Level.INFO, () -> String.format("%s %s", getId(), action.getContainerAction()));
         try {
             LOGGER.log(Level.INFO, () -> String.format("%s %s", getId(), output.readFully()));
@@ -325,69 +686,94 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
             ga.trackException(e);
         }
 
-        if (DockerSeleniumContainerAction.STOP_RECORDING == action) {
-            copyVideos(containerId);
-        }
     }
 
+    /*
+        The video and the logs are staged in one folder inside the container by COLLECT_ARTIFACTS, so they are
+        copied with a single tar stream. Each entry is written to its destination while the stream is read.
+        A video that was recorded into the videos folder of Zalenium is only moved to its final name, and a video
+        that is not kept is neither copied nor moved.
+     */
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @VisibleForTesting
-    void copyVideos(final String containerId) throws IOException, DockerException, InterruptedException, URISyntaxException {
-        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(dockerClient.archiveContainer(containerId,
-                "/videos/"))) {
+    void copyArtifacts(final String containerId, final TestInformation testInformation) throws IOException,
+            DockerException, InterruptedException, URISyntaxException {
+        Path recordingFolder = getRecordingFolder();
+        boolean videoKept = testInformation.isVideoRecorded();
+        if (recordingFolder != null && videoKept) {
+            moveRecordedVideo(recordingFolder, testInformation);
+        }
+        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(getDockerClient().archiveContainer(containerId,
+                ARTIFACTS_FOLDER + "/"))) {
             TarArchiveEntry entry;
             while ((entry = tarStream.getNextTarEntry()) != null) {
                 if (entry.isDirectory()) {
                     continue;
                 }
-                String fileExtension = entry.getName().substring(entry.getName().lastIndexOf('.'));
-                testInformation.setFileExtension(fileExtension);
-                File videoFile = new File(testInformation.getVideoFolderPath(), testInformation.getFileName());
-                File parent = videoFile.getParentFile();
+                // Entries look like artifacts/videos/<file> and artifacts/cont/<file>
+                String entryName = entry.getName().substring(entry.getName().indexOf('/') + 1);
+                File artifactFile;
+                if (entryName.startsWith(VIDEOS_ARTIFACTS_FOLDER) && videoKept) {
+                    String fileExtension = entryName.substring(entryName.lastIndexOf('.'));
+                    testInformation.setFileExtension(fileExtension);
+                    artifactFile = new File(testInformation.getVideoFolderPath(), testInformation.getFileName());
+                } else if (entryName.startsWith(LOGS_ARTIFACTS_FOLDER)) {
+                    artifactFile = new File(testInformation.getLogsFolderPath(),
+                            entryName.substring(LOGS_ARTIFACTS_FOLDER.length()));
+                } else {
+                    continue;
+                }
+                File parent = artifactFile.getParentFile();
                 if (!parent.exists()) {
                     parent.mkdirs();
                 }
-                OutputStream outputStream = new FileOutputStream(videoFile);
-                IOUtils.copy(tarStream, outputStream);
-                outputStream.close();
-                LOGGER.log(Level.INFO, "{0} Video file copied to: {1}/{2}", new Object[]{getId(),
-                        testInformation.getVideoFolderPath(), testInformation.getFileName()});
+                try (OutputStream outputStream = new FileOutputStream(artifactFile)) {
+                    IOUtils.copy(tarStream, outputStream);
+                }
+                if (entryName.startsWith(VIDEOS_ARTIFACTS_FOLDER)) {
+                    LOGGER.log(Level.INFO, "{0} Video file copied to: {1}/{2}, the session starts {3} ms into it",
+                            new Object[]{getId(), testInformation.getVideoFolderPath(), testInformation.getFileName(),
+                                    testInformation.getSessionStartOffsetInVideoMillis()});
+                }
             }
+            LOGGER.log(Level.INFO, "{0} Logs copied to: {1}", new Object[]{getId(), testInformation.getLogsFolderPath()});
         } catch (Exception e) {
-            LOGGER.log(Level.FINE, getId() + " Something happened while copying the video file, " +
+            LOGGER.log(Level.FINE, getId() + " Something happened while copying the artifacts, " +
                     "most of the time it is an issue while closing the input/output stream, which is usually OK.", e);
         }
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    @VisibleForTesting
-    void copyLogs(final String containerId) throws IOException, DockerException, InterruptedException, URISyntaxException {
-        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(dockerClient.archiveContainer(containerId,
-                "/var/log/cont/"))) {
-            TarArchiveEntry entry;
-            while ((entry = tarStream.getNextTarEntry()) != null) {
-                if (entry.isDirectory()) {
-                    continue;
-                }
-                String fileName = entry.getName().replace("cont/", "");
-                File logFile = new File(testInformation.getLogsFolderPath(), fileName);
-                File parent = logFile.getParentFile();
-                if (!parent.exists()) {
-                    parent.mkdirs();
-                }
-                OutputStream outputStream = new FileOutputStream(logFile);
-                IOUtils.copy(tarStream, outputStream);
-                outputStream.close();
+    private Path getRecordingFolder() {
+        return DockerSeleniumStarterRemoteProxy.getRecordingFolderForNode(getRemoteHost().getPort());
+    }
+
+    private void moveRecordedVideo(Path recordingFolder, TestInformation testInformation) {
+        try (DirectoryStream<Path> videos = Files.newDirectoryStream(recordingFolder, Files::isRegularFile)) {
+            for (Path video : videos) {
+                String videoName = video.getFileName().toString();
+                testInformation.setFileExtension(videoName.substring(videoName.lastIndexOf('.')));
+                Path videoFile = Paths.get(testInformation.getVideoFolderPath(), testInformation.getFileName());
+                Files.createDirectories(videoFile.getParent());
+                Files.move(video, videoFile, StandardCopyOption.ATOMIC_MOVE);
+                LOGGER.log(Level.INFO, "{0} Video file moved to: {1}, the session starts {2} ms into it",
+                        new Object[]{getId(), videoFile, testInformation.getSessionStartOffsetInVideoMillis()});
             }
-            LOGGER.log(Level.INFO, "{0} Logs copied to: {1}", new Object[]{getId(), testInformation.getLogsFolderPath()});
-        } catch (Exception e) {
-            LOGGER.log(Level.FINE, getId() + " Something happened while copying the log file, " +
-                    "most of the time it is an issue while closing the input/output stream, which is usually OK.", e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, getId() + " Error moving the recorded video.", e);
         }
     }
 
     public enum DockerSeleniumContainerAction {
-        START_RECORDING("start-video"), STOP_RECORDING("stop-video"), TRANSFER_LOGS("transfer-logs.sh");
+        START_RECORDING("start-video"), STOP_RECORDING("stop-video"),
+        // Hard links when possible, so staging does not copy the video inside the container.
+        COLLECT_ARTIFACTS("transfer-logs.sh; rm -rf " + ARTIFACTS_FOLDER + "; mkdir -p " + ARTIFACTS_FOLDER + " && " +
+                "(cp -al /videos /var/log/cont " + ARTIFACTS_FOLDER + "/ 2>/dev/null || " +
+                "cp -a /videos /var/log/cont " + ARTIFACTS_FOLDER + "/); true"),
+        // When the video is recorded outside of the container or it is not kept, only the logs are staged.
+        COLLECT_LOGS("transfer-logs.sh; rm -rf " + ARTIFACTS_FOLDER + "; mkdir -p " + ARTIFACTS_FOLDER + " && " +
+                "cp -a /var/log/cont " + ARTIFACTS_FOLDER + "/; true"),
+        CLEAN_UP_SESSION("pkill -9 -x 'chrome|firefox|firefox-bin|chromedriver|geckodriver'; rm -rf /videos/* " +
+                ARTIFACTS_FOLDER + "; find /var/log/cont -type f -exec truncate -s 0 {} +; true");
 
         private String containerAction;
 
@@ -401,72 +787,187 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     }
 
     /*
-        Class to poll continuously the node status regarding the amount of tests executed. If MAX_UNIQUE_TEST_SESSIONS
-        have been executed, then the node is removed from the grid (this should trigger the docker container to stop).
+        Checks the node status, run by the shared scheduler. After each session the video and logs are collected,
+        then the node is cleaned up for the next session, or removed from the grid (this should trigger the docker
+        container to stop) when it ran the allowed amount of tests, got too old, or had an error. The check only
+        looks at the node state, the rest is done by the teardown pipeline.
+        The end of a session is normally handled as soon as afterSession is received, the check is a safety net
+        for that and handles the idle tests and the nodes that got too old.
      */
-    static class DockerSeleniumNodePoller extends Thread {
+    static class DockerSeleniumNodePoller {
 
-        private static long sleepTimeBetweenChecks = 500;
-        private DockerSeleniumRemoteProxy dockerSeleniumRemoteProxy = null;
+        private static final long CHECK_INTERVAL_MILLIS = 500;
+        // Even without any deadline, the node is looked at every now and then.
+        private static final long MAX_CHECK_INTERVAL_MILLIS = 10 * 1000L;
+        private final DockerSeleniumRemoteProxy dockerSeleniumRemoteProxy;
+        private NodeLifecycleScheduler.ScheduledCheck scheduledCheck;
+        private boolean workInProgress = false;
 
         DockerSeleniumNodePoller(DockerSeleniumRemoteProxy dockerSeleniumRemoteProxy) {
             this.dockerSeleniumRemoteProxy = dockerSeleniumRemoteProxy;
         }
 
-        protected long getSleepTimeBetweenChecks() {
-            return sleepTimeBetweenChecks;
-        }
-
-        @Override
-        public void run() {
-            while (true) {
-                /*
-                    If the proxy is not busy and it can be released since the MAX_UNIQUE_TEST_SESSIONS have been executed,
-                    then the node executes its teardown.
-                    OR
-                    If the current session has been idle for a while, the node shuts down
-                */
-                boolean isTestCompleted = !dockerSeleniumRemoteProxy.isBusy()
-                        && dockerSeleniumRemoteProxy.isTestSessionLimitReached()
-                        && dockerSeleniumRemoteProxy.afterSessionEventReceived;
-                boolean isTestIdle = dockerSeleniumRemoteProxy.isTestIdle();
-
-                if (isTestCompleted || isTestIdle) {
-                    dockerSeleniumRemoteProxy.videoRecording(DockerSeleniumContainerAction.STOP_RECORDING);
-                    try {
-                        dockerSeleniumRemoteProxy.processContainerAction(DockerSeleniumContainerAction.TRANSFER_LOGS,
-                                dockerSeleniumRemoteProxy.getContainerId());
-                        dockerSeleniumRemoteProxy.copyLogs(dockerSeleniumRemoteProxy.getContainerId());
-                    } catch (Exception e) {
-                        LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error copying the logs.", e);
-                    }
-                    try {
-                        Dashboard.updateDashboard(dockerSeleniumRemoteProxy.testInformation);
-                    } catch (IOException e) {
-                        LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error while updating the " +
-                                "dashboard.", e);
-                    }
-                    shutdownNode(isTestIdle);
-                    return;
-                }
+        void setScheduledCheck(NodeLifecycleScheduler.ScheduledCheck scheduledCheck) {
+            this.scheduledCheck = scheduledCheck;
+        }
 
-                try {
-                    Thread.sleep(getSleepTimeBetweenChecks());
-                } catch (InterruptedException e) {
-                    LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error while sleeping the " +
-                            "thread, stopping thread execution.", e);
-                    Thread.currentThread().interrupt();
-                    dockerSeleniumRemoteProxy.ga.trackException(e);
-                    dockerSeleniumRemoteProxy.stopPolling();
-                    dockerSeleniumRemoteProxy.startPolling();
-                    return;
-                }
+        void sessionEnded() {
+            if (startWork()) {
+                processSessionEnd(false);
+            }
+        }
+
+        /*
+            Only one piece of work runs at a time for a node, e.g. an idle test that gets terminated also
+            triggers afterSession, which is ignored since the node is already being processed.
+         */
+        private synchronized boolean startWork() {
+            if (workInProgress) {
+                return false;
+            }
+            workInProgress = true;
+            return true;
+        }
+
+        private synchronized boolean isWorkInProgress() {
+            return workInProgress;
+        }
+
+        private synchronized void workDone() {
+            workInProgress = false;
+        }
+
+        /*
+            Returns when the node has to be checked again. While the node is being processed, it is checked
+            again when the work is done.
+         */
+        long check(long now) {
+            if (isWorkInProgress()) {
+                return now + MAX_CHECK_INTERVAL_MILLIS;
+            }
+            /*
+                If the proxy is not busy and the session is done, the artifacts are collected and the node is
+                either cleaned up for the next session or it executes its teardown.
+                OR
+                If the current session has been idle for a while, the node shuts down
+                OR
+                If the node is waiting for a session but it got too old, the node shuts down
+            */
+            boolean isSessionCompleted = !dockerSeleniumRemoteProxy.isBusy()
+                    && dockerSeleniumRemoteProxy.afterSessionEventReceived;
+            boolean isTestIdle = dockerSeleniumRemoteProxy.isTestIdle();
+
+            if ((isSessionCompleted || isTestIdle) && startWork()) {
+                processSessionEnd(isTestIdle);
+                return now + MAX_CHECK_INTERVAL_MILLIS;
+            }
+            if (dockerSeleniumRemoteProxy.retireIfExpired() && startWork()) {
+                teardownPipeline.submit(NodeTeardownPipeline.Stage.STOP_CONTAINER, dockerSeleniumRemoteProxy.getId(),
+                        () -> shutdownNode(false));
+                return NodeLifecycleScheduler.NO_MORE_CHECKS;
+            }
+            return now + getMillisUntilNextCheck();
+        }
+
+        /*
+            A running session is checked when it would be idle, and a free node when it would be too old.
+         */
+        private long getMillisUntilNextCheck() {
+            long millisUntilNextCheck = dockerSeleniumRemoteProxy.getMillisUntilTestIdle();
+            if (millisUntilNextCheck < 0) {
+                millisUntilNextCheck = dockerSeleniumRemoteProxy.isBusy() ? CHECK_INTERVAL_MILLIS :
+                        dockerSeleniumRemoteProxy.getMillisUntilNodeAgeLimit();
+            }
+            if (millisUntilNextCheck < 0) {
+                return MAX_CHECK_INTERVAL_MILLIS;
+            }
+            return Math.min(MAX_CHECK_INTERVAL_MILLIS, Math.max(CHECK_INTERVAL_MILLIS, millisUntilNextCheck));
+        }
+
+        /*
+            Each stage hands the node over to the next one. The container is cleaned up or stopped as soon as the
+            artifacts were copied, while the dashboard is updated on its own. The test information is taken now,
+            since the node gets a new one with its next session.
+         */
+        private void processSessionEnd(boolean isTestIdle) {
+            TestInformation testInformation = dockerSeleniumRemoteProxy.testInformation;
+            if (testInformation != null && testInformation.isVideoRecorded()
+                    && !dockerSeleniumRemoteProxy.isVideoKept(isTestIdle)) {
+                LOGGER.log(Level.INFO, "{0} Test passed, its video is not kept.", dockerSeleniumRemoteProxy.getId());
+                testInformation.setVideoRecorded(false);
+            }
+            submit(NodeTeardownPipeline.Stage.STOP_VIDEO, () -> stopVideo(isTestIdle, testInformation));
+        }
+
+        private void stopVideo(boolean isTestIdle, TestInformation testInformation) {
+            dockerSeleniumRemoteProxy.awaitVideoRecordingStart();
+            if (testInformation != null) {
+                testInformation.setVideoStartTime(dockerSeleniumRemoteProxy.videoStartTime);
             }
+            dockerSeleniumRemoteProxy.videoRecording(DockerSeleniumContainerAction.STOP_RECORDING);
+            submit(NodeTeardownPipeline.Stage.COLLECT_LOGS, () -> collectLogs(isTestIdle, testInformation));
+        }
+
+        private void collectLogs(boolean isTestIdle, TestInformation testInformation) {
+            try {
+                boolean copyVideo = dockerSeleniumRemoteProxy.getRecordingFolder() == null
+                        && testInformation != null && testInformation.isVideoRecorded();
+                DockerSeleniumContainerAction collectAction = copyVideo ?
+                        DockerSeleniumContainerAction.COLLECT_ARTIFACTS : DockerSeleniumContainerAction.COLLECT_LOGS;
+                dockerSeleniumRemoteProxy.processContainerAction(collectAction,
+                        dockerSeleniumRemoteProxy.getContainerId());
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error collecting the artifacts.", e);
+                dockerSeleniumRemoteProxy.recycleRequired = true;
+            }
+            submit(NodeTeardownPipeline.Stage.COPY_ARTIFACTS, () -> copyArtifacts(isTestIdle, testInformation));
+        }
+
+        private void copyArtifacts(boolean isTestIdle, TestInformation testInformation) {
+            try {
+                dockerSeleniumRemoteProxy.copyArtifacts(dockerSeleniumRemoteProxy.getContainerId(), testInformation);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error copying the artifacts.", e);
+                dockerSeleniumRemoteProxy.recycleRequired = true;
+            }
+            submit(NodeTeardownPipeline.Stage.UPDATE_DASHBOARD, () -> updateDashboard(testInformation));
+            submit(NodeTeardownPipeline.Stage.STOP_CONTAINER, () -> cleanUpOrShutdownNode(isTestIdle));
+        }
+
+        private void updateDashboard(TestInformation testInformation) {
+            try {
+                Dashboard.updateDashboard(testInformation);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getId() + " Error while updating the " +
+                        "dashboard.", e);
+            }
+        }
+
+        private void cleanUpOrShutdownNode(boolean isTestIdle) {
+            if (isTestIdle || dockerSeleniumRemoteProxy.isRecycleRequired()
+                    || !dockerSeleniumRemoteProxy.cleanUpForNextSession()) {
+                shutdownNode(isTestIdle);
+            }
+            workDone();
+            scheduledCheck.runNow();
+        }
+
+        private void submit(NodeTeardownPipeline.Stage stage, Runnable work) {
+            teardownPipeline.submit(stage, dockerSeleniumRemoteProxy.getId(), work);
         }
 
         private void shutdownNode(boolean isTestIdle) {
             String shutdownReason = String.format("%s Marking the node as down because it was stopped after %s tests.",
-                    dockerSeleniumRemoteProxy.getId(), MAX_UNIQUE_TEST_SESSIONS);
+                    dockerSeleniumRemoteProxy.getId(), dockerSeleniumRemoteProxy.getAmountOfExecutedTests());
+
+            if (dockerSeleniumRemoteProxy.recycleRequired) {
+                shutdownReason = String.format("%s Marking the node as down because of an error in its container.",
+                        dockerSeleniumRemoteProxy.getId());
+            } else if (!dockerSeleniumRemoteProxy.isTestSessionLimitReached()
+                    && dockerSeleniumRemoteProxy.isNodeAgeLimitReached()) {
+                shutdownReason = String.format("%s Marking the node as down because it is older than %s seconds.",
+                        dockerSeleniumRemoteProxy.getId(), maxNodeAgeSecs);
+            }
 
             if (isTestIdle) {
                 dockerSeleniumRemoteProxy.terminateIdleTest();
@@ -475,7 +976,7 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
             }
 
             try {
-                dockerClient.stopContainer(dockerSeleniumRemoteProxy.getContainerId(), 5);
+                dockerSeleniumRemoteProxy.getDockerClient().stopContainer(dockerSeleniumRemoteProxy.getContainerId(), 5);
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, dockerSeleniumRemoteProxy.getId() + " " + e.getMessage(), e);
                 dockerSeleniumRemoteProxy.ga.trackException(e);
@@ -1,16 +1,26 @@
 package de.zalando.ep.zalenium.proxy;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.spotify.docker.client.DefaultDockerClient;
+import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.DockerClient;
-import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.*;
+import de.zalando.ep.zalenium.container.AdmissionController;
+import de.zalando.ep.zalenium.container.ContainerInventory;
+import de.zalando.ep.zalenium.container.ContainerProvisioner;
+import de.zalando.ep.zalenium.container.DockerHost;
+import de.zalando.ep.zalenium.container.DockerHostPool;
+import de.zalando.ep.zalenium.container.DockerImageCache;
+import de.zalando.ep.zalenium.container.HostResourceReader;
+import de.zalando.ep.zalenium.container.NodePortAllocator;
+import de.zalando.ep.zalenium.container.RecordingVolume;
+import de.zalando.ep.zalenium.container.SharedDockerClient;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.Dashboard;
 import de.zalando.ep.zalenium.util.DockerSeleniumCapabilityMatcher;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.GoogleAnalyticsApi;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
-import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.TestSession;
 import org.openqa.grid.internal.listeners.RegistrationListener;
 import org.openqa.grid.internal.utils.CapabilityMatcher;
@@ -22,9 +32,12 @@ import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
-import java.io.IOException;
-import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -61,18 +74,61 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     static final String ZALENIUM_TZ = "ZALENIUM_TZ";
     @VisibleForTesting
+    static final int DEFAULT_CHROME_POOL_SIZE = 0;
+    @VisibleForTesting
+    static final int DEFAULT_FIREFOX_POOL_SIZE = 0;
+    @VisibleForTesting
+    static final String ZALENIUM_CHROME_POOL_SIZE = "ZALENIUM_CHROME_POOL_SIZE";
+    @VisibleForTesting
+    static final String ZALENIUM_FIREFOX_POOL_SIZE = "ZALENIUM_FIREFOX_POOL_SIZE";
+    @VisibleForTesting
+    static final String ZALENIUM_POOL_PROFILES = "ZALENIUM_POOL_PROFILES";
+    @VisibleForTesting
+    static final int DEFAULT_MAX_CONCURRENT_CREATES = 5;
+    @VisibleForTesting
+    static final int DEFAULT_CREATES_PER_SECOND = 5;
+    @VisibleForTesting
+    static final String ZALENIUM_MAX_CONCURRENT_CREATES = "ZALENIUM_MAX_CONCURRENT_CREATES";
+    @VisibleForTesting
+    static final String ZALENIUM_CREATES_PER_SECOND = "ZALENIUM_CREATES_PER_SECOND";
+    @VisibleForTesting
     static final String ZALENIUM_SCREEN_WIDTH = "ZALENIUM_SCREEN_WIDTH";
     @VisibleForTesting
     static final String ZALENIUM_SCREEN_HEIGHT = "ZALENIUM_SCREEN_HEIGHT";
     @VisibleForTesting
+    static final String ZALENIUM_DOCKER_HOSTS = "ZALENIUM_DOCKER_HOSTS";
+    @VisibleForTesting
+    static final String ZALENIUM_HUB_ADDRESS = "ZALENIUM_HUB_ADDRESS";
+    @VisibleForTesting
+    static final String ZALENIUM_ADMISSION_CONTROL_ENABLED = "ZALENIUM_ADMISSION_CONTROL_ENABLED";
+    @VisibleForTesting
+    static final String ZALENIUM_ADMISSION_MAX_CPU_PERCENT = "ZALENIUM_ADMISSION_MAX_CPU_PERCENT";
+    @VisibleForTesting
+    static final String ZALENIUM_ADMISSION_MIN_FREE_MEMORY_MB = "ZALENIUM_ADMISSION_MIN_FREE_MEMORY_MB";
+    @VisibleForTesting
+    static final String ZALENIUM_VIDEO_STREAMING_ENABLED = "ZALENIUM_VIDEO_STREAMING_ENABLED";
+    @VisibleForTesting
+    static final int DEFAULT_ADMISSION_MAX_CPU_PERCENT = 90;
+    @VisibleForTesting
+    static final int DEFAULT_ADMISSION_MIN_FREE_MEMORY_MB = 1024;
+    @VisibleForTesting
     private static final String DEFAULT_ZALENIUM_CONTAINER_NAME = "zalenium";
     @VisibleForTesting
     private static final String ZALENIUM_CONTAINER_NAME = "ZALENIUM_CONTAINER_NAME";
     private static final Logger LOGGER = Logger.getLogger(DockerSeleniumStarterRemoteProxy.class.getName());
     private static final String DOCKER_SELENIUM_IMAGE = "elgalu/selenium";
+    private static final String LOCAL_NODE_ADDRESS = "localhost";
+    private static final String LOCAL_HUB_PORT = "4445";
+    private static final String DEFAULT_HUB_PORT = "4444";
     private static final int LOWER_PORT_BOUNDARY = 40000;
     private static final int UPPER_PORT_BOUNDARY = 49999;
-    private static final DockerClient defaultDockerClient = new DefaultDockerClient("unix:///var/run/docker.sock");
+    /*
+        Same value as WAIT_TIMEOUT in the docker-selenium container, after it the node won't register anymore.
+        Used by the pending demand ledger and by the warm pool, so both give up on a node at the same time.
+     */
+    static final long NODE_REGISTRATION_TIMEOUT_MILLIS = 120 * 1000L;
+    private static final long FAILED_CREATION_RETRY_MILLIS = 1000L;
+    private static final DockerClient defaultDockerClient = SharedDockerClient.getInstance();
     private static final Environment defaultEnvironment = new Environment();
     private static final String LOGGING_PREFIX = "[DS] ";
     private static List<DesiredCapabilities> dockerSeleniumCapabilities = new ArrayList<>();
@@ -83,15 +139,32 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     private static int firefoxContainersOnStartup;
     private static int maxDockerSeleniumContainers;
     private static String configuredTimeZone;
-    private static String timeZone;
     private static int configuredScreenWidth;
-    private static int screenWidth;
     private static int configuredScreenHeight;
-    private static int screenHeight;
     private static String containerName;
+    private static DockerSeleniumWarmPool warmPool;
+    private static ContainerInventory containerInventory;
+    private static DockerImageCache imageCache;
+    private static ContainerProvisioner containerProvisioner;
+    private static DockerHostPool dockerHostPool;
+    private static List<DockerHost> remoteDockerHosts = new ArrayList<>();
+    private static String hubAddress;
+    private static boolean admissionControlEnabled;
+    private static int admissionMaxCpuPercent = DEFAULT_ADMISSION_MAX_CPU_PERCENT;
+    private static int admissionMinFreeMemoryMb = DEFAULT_ADMISSION_MIN_FREE_MEMORY_MB;
+    private static final PendingDemandLedger pendingDemandLedger = new PendingDemandLedger(
+            NODE_REGISTRATION_TIMEOUT_MILLIS, FAILED_CREATION_RETRY_MILLIS);
+    private static final NodePortAllocator nodePortAllocator = new NodePortAllocator(LOWER_PORT_BOUNDARY,
+            UPPER_PORT_BOUNDARY);
+    // Node ports are unique across all Docker hosts, so they identify the container of each node.
+    private static final ConcurrentMap<Integer, String> containerIdsByNodePort = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, Path> recordingFoldersByNodePort = new ConcurrentHashMap<>();
+    private static final Set<Integer> registeredNodePorts = ConcurrentHashMap.newKeySet();
+    private static boolean videoStreamingEnabled;
+    private static RecordingVolume recordingVolume;
+    private static boolean recordingVolumeResolved;
     private final HtmlRenderer renderer = new WebProxyHtmlRendererBeta(this);
-    private List<Integer> allocatedPorts = new ArrayList<>();
-    private boolean setupCompleted;
+    private volatile boolean setupCompleted;
     private CapabilityMatcher capabilityHelper;
 
     @SuppressWarnings("WeakerAccess")
@@ -115,19 +188,54 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         setMaxDockerSeleniumContainers(maxDSContainers);
 
         int sWidth = env.getIntEnvVariable(ZALENIUM_SCREEN_WIDTH, DEFAULT_SCREEN_WIDTH);
-        setScreenWidth(sWidth);
         setConfiguredScreenWidth(sWidth);
 
         int sHeight = env.getIntEnvVariable(ZALENIUM_SCREEN_HEIGHT, DEFAULT_SCREEN_HEIGHT);
-        setScreenHeight(sHeight);
         setConfiguredScreenHeight(sHeight);
 
         String tz = env.getStringEnvVariable(ZALENIUM_TZ, DEFAULT_TZ);
-        setTimeZone(tz);
         setConfiguredTimeZone(tz);
 
         String containerN = env.getStringEnvVariable(ZALENIUM_CONTAINER_NAME, DEFAULT_ZALENIUM_CONTAINER_NAME);
         setContainerName(containerN);
+
+        setHubAddress(env.getStringEnvVariable(ZALENIUM_HUB_ADDRESS, ""));
+        List<DockerHost> dockerHosts = DockerHostPool.parseDockerHosts(
+                env.getStringEnvVariable(ZALENIUM_DOCKER_HOSTS, ""), getMaxDockerSeleniumContainers(),
+                DOCKER_SELENIUM_IMAGE, SharedDockerClient::create);
+        if (!dockerHosts.isEmpty() && getHubAddress() == null) {
+            LOGGER.log(Level.WARNING, LOGGING_PREFIX + "{0} is needed by the nodes on other Docker hosts to " +
+                    "reach the hub, only the local Docker host will be used.", ZALENIUM_HUB_ADDRESS);
+            dockerHosts.clear();
+        }
+        setRemoteDockerHosts(dockerHosts);
+
+        boolean admissionControl = env.getBooleanEnvVariable(ZALENIUM_ADMISSION_CONTROL_ENABLED, false);
+        int maxCpuPercent = env.getIntEnvVariable(ZALENIUM_ADMISSION_MAX_CPU_PERCENT,
+                DEFAULT_ADMISSION_MAX_CPU_PERCENT);
+        int minFreeMemoryMb = env.getIntEnvVariable(ZALENIUM_ADMISSION_MIN_FREE_MEMORY_MB,
+                DEFAULT_ADMISSION_MIN_FREE_MEMORY_MB);
+        setAdmissionControl(admissionControl, maxCpuPercent, minFreeMemoryMb);
+
+        setVideoStreamingEnabled(env.getBooleanEnvVariable(ZALENIUM_VIDEO_STREAMING_ENABLED, false));
+
+        int maxConcurrentCreates = env.getIntEnvVariable(ZALENIUM_MAX_CONCURRENT_CREATES,
+                DEFAULT_MAX_CONCURRENT_CREATES);
+        int createsPerSecond = env.getIntEnvVariable(ZALENIUM_CREATES_PER_SECOND, DEFAULT_CREATES_PER_SECOND);
+        setContainerProvisioner(new ContainerProvisioner(
+                maxConcurrentCreates <= 0 ? DEFAULT_MAX_CONCURRENT_CREATES : maxConcurrentCreates,
+                createsPerSecond <= 0 ? DEFAULT_CREATES_PER_SECOND : createsPerSecond));
+    }
+
+    /*
+        The warm pool target sizes use the configured screen resolution and time zone, so they are read after them.
+     */
+    private static Map<DockerSeleniumContainerSpec, Integer> readWarmPoolConfigurationFromEnvVariables() {
+        int chromePoolSize = env.getIntEnvVariable(ZALENIUM_CHROME_POOL_SIZE, DEFAULT_CHROME_POOL_SIZE);
+        int firefoxPoolSize = env.getIntEnvVariable(ZALENIUM_FIREFOX_POOL_SIZE, DEFAULT_FIREFOX_POOL_SIZE);
+        String poolProfiles = env.getStringEnvVariable(ZALENIUM_POOL_PROFILES, "");
+        return DockerSeleniumWarmPool.buildTargetSizes(chromePoolSize, firefoxPoolSize, poolProfiles,
+                getConfiguredScreenWidth(), getConfiguredScreenHeight(), getConfiguredTimeZone());
     }
 
     /*
@@ -148,18 +256,13 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
             return dockerSeleniumCapabilities;
         }
 
-        String chromeVersion = "";
-        String firefoxVersion = "";
-
         // Getting versions from the current docker-selenium image
-        try {
-            String latestDownloadedImage = getLatestDownloadedImage(DOCKER_SELENIUM_IMAGE);
-            ImageInfo imageInfo = dockerClient.inspectImage(latestDownloadedImage);
-            chromeVersion = imageInfo.config().labels().get("selenium3_chrome_version");
-            firefoxVersion = imageInfo.config().labels().get("selenium3_firefox_version");
-        } catch (DockerException | InterruptedException e) {
+        DockerImageCache.ResolvedImage resolvedImage = getImageCache().getResolvedImage();
+        String chromeVersion = resolvedImage.getLabel("selenium3_chrome_version");
+        String firefoxVersion = resolvedImage.getLabel("selenium3_firefox_version");
+        if (chromeVersion == null && firefoxVersion == null) {
             LOGGER.log(Level.FINE, LOGGING_PREFIX + "Could not grab browser version information from the " +
-                    "docker-selenium image", e);
+                    "docker-selenium image");
         }
 
         dockerSeleniumCapabilities.clear();
@@ -190,11 +293,138 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     static void setDockerClient(final DockerClient client) {
         dockerClient = client;
+        resetContainerInventory();
+        resetImageCache();
     }
 
     @VisibleForTesting
     static void restoreDockerClient() {
         dockerClient = defaultDockerClient;
+        resetContainerInventory();
+        resetImageCache();
+    }
+
+    /*
+        The inventory follows the events of the current docker client, it is started the first time it is needed.
+     */
+    @VisibleForTesting
+    static synchronized ContainerInventory getContainerInventory() {
+        if (containerInventory == null) {
+            containerInventory = new ContainerInventory(dockerClient, DOCKER_SELENIUM_IMAGE);
+            containerInventory.addNodeContainerRemovedListener(DockerSeleniumStarterRemoteProxy::nodeContainerRemoved);
+            containerInventory.start();
+        }
+        return containerInventory;
+    }
+
+    @VisibleForTesting
+    static synchronized void setContainerInventory(final ContainerInventory inventory) {
+        resetContainerInventory();
+        containerInventory = inventory;
+    }
+
+    static synchronized ContainerProvisioner getContainerProvisioner() {
+        if (containerProvisioner == null) {
+            containerProvisioner = new ContainerProvisioner(DEFAULT_MAX_CONCURRENT_CREATES, DEFAULT_CREATES_PER_SECOND);
+        }
+        return containerProvisioner;
+    }
+
+    private static synchronized void setContainerProvisioner(ContainerProvisioner provisioner) {
+        if (containerProvisioner != null) {
+            containerProvisioner.shutdown();
+        }
+        containerProvisioner = provisioner;
+    }
+
+    /*
+        The image is resolved again after an image event (e.g. a new docker-selenium version was pulled).
+     */
+    @VisibleForTesting
+    static synchronized DockerImageCache getImageCache() {
+        if (imageCache == null) {
+            imageCache = new DockerImageCache(dockerClient, DOCKER_SELENIUM_IMAGE);
+            imageCache.start();
+        }
+        return imageCache;
+    }
+
+    /*
+        The local Docker host plus the configured remote ones. The local host always reads the current client,
+        inventory and max. amount of containers.
+     */
+    @VisibleForTesting
+    static synchronized DockerHostPool getDockerHostPool() {
+        if (dockerHostPool == null) {
+            List<DockerHost> dockerHosts = new ArrayList<>();
+            DockerHost localDockerHost = new DockerHost("local", LOCAL_NODE_ADDRESS, true, () -> dockerClient,
+                    DockerSeleniumStarterRemoteProxy::getContainerInventory,
+                    DockerSeleniumStarterRemoteProxy::getImageCache,
+                    DockerSeleniumStarterRemoteProxy::getMaxDockerSeleniumContainers);
+            if (admissionControlEnabled) {
+                HostResourceReader hostResourceReader = new HostResourceReader(Paths.get("/"));
+                localDockerHost.setAdmissionController(new AdmissionController(hostResourceReader,
+                        () -> dockerClient, () -> getContainerInventory().getRunningContainerIds(),
+                        admissionMaxCpuPercent, admissionMinFreeMemoryMb * 1024L * 1024L));
+            }
+            dockerHosts.add(localDockerHost);
+            for (DockerHost remoteDockerHost : remoteDockerHosts) {
+                remoteDockerHost.getContainerInventory()
+                        .addNodeContainerRemovedListener(DockerSeleniumStarterRemoteProxy::nodeContainerRemoved);
+                dockerHosts.add(remoteDockerHost);
+            }
+            dockerHostPool = new DockerHostPool(dockerHosts);
+            dockerHostPool.start();
+        }
+        return dockerHostPool;
+    }
+
+    @VisibleForTesting
+    static synchronized void setRemoteDockerHosts(List<DockerHost> dockerHosts) {
+        resetDockerHostPool();
+        remoteDockerHosts = new ArrayList<>(dockerHosts);
+    }
+
+    /*
+        With admission control, local containers are created while the machine has CPU and memory left (the max.
+        amount of containers is still the upper limit). It reads /proc and the cgroup files, so it only works for
+        the local Docker host.
+     */
+    @VisibleForTesting
+    static synchronized void setAdmissionControl(boolean enabled, int maxCpuPercent, int minFreeMemoryMb) {
+        resetDockerHostPool();
+        admissionControlEnabled = enabled;
+        admissionMaxCpuPercent = maxCpuPercent <= 0 ? DEFAULT_ADMISSION_MAX_CPU_PERCENT : maxCpuPercent;
+        admissionMinFreeMemoryMb = minFreeMemoryMb < 0 ? DEFAULT_ADMISSION_MIN_FREE_MEMORY_MB : minFreeMemoryMb;
+    }
+
+    private static synchronized void resetDockerHostPool() {
+        if (dockerHostPool != null) {
+            dockerHostPool.stop();
+            dockerHostPool = null;
+        }
+    }
+
+    /*
+        Nodes on remote hosts are managed through the client of their host, null is returned for the local nodes.
+     */
+    static DockerClient getDockerClientForNode(String nodeAddress) {
+        DockerHost dockerHost = getDockerHostPool().getRemoteHostForNode(nodeAddress);
+        return dockerHost == null ? null : dockerHost.getDockerClient();
+    }
+
+    private static synchronized void resetImageCache() {
+        if (imageCache != null) {
+            imageCache.stop();
+            imageCache = null;
+        }
+    }
+
+    private static synchronized void resetContainerInventory() {
+        if (containerInventory != null) {
+            containerInventory.stop();
+            containerInventory = null;
+        }
     }
 
     @VisibleForTesting
@@ -216,6 +446,20 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         DockerSeleniumStarterRemoteProxy.containerName = containerName;
     }
 
+    /*
+        Address (host:port) where the nodes on remote Docker hosts reach the hub, null when it was not configured.
+     */
+    @VisibleForTesting
+    static String getHubAddress() {
+        return hubAddress;
+    }
+
+    @VisibleForTesting
+    static void setHubAddress(String hubAddress) {
+        DockerSeleniumStarterRemoteProxy.hubAddress = hubAddress == null || hubAddress.trim().isEmpty() ? null :
+                hubAddress.trim();
+    }
+
     @VisibleForTesting
     protected static int getChromeContainersOnStartup() {
         return chromeContainersOnStartup;
@@ -238,88 +482,168 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
                 DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING : maxDockerSeleniumContainers;
     }
 
-    @VisibleForTesting
-    protected static String getTimeZone() {
-        return timeZone;
+    public static int getConfiguredScreenWidth() {
+        return configuredScreenWidth <= 0 ? DEFAULT_SCREEN_WIDTH : configuredScreenWidth;
     }
 
-    @VisibleForTesting
-    protected static void setTimeZone(String timeZone) {
+    public static void setConfiguredScreenWidth(int configuredScreenWidth) {
+        DockerSeleniumStarterRemoteProxy.configuredScreenWidth = configuredScreenWidth;
+    }
+
+    public static int getConfiguredScreenHeight() {
+        return configuredScreenHeight <= 0 ? DEFAULT_SCREEN_HEIGHT : configuredScreenHeight;
+    }
+
+    public static void setConfiguredScreenHeight(int configuredScreenHeight) {
+        DockerSeleniumStarterRemoteProxy.configuredScreenHeight = configuredScreenHeight;
+    }
+
+    public static String getConfiguredTimeZone() {
+        return configuredTimeZone == null ? DEFAULT_TZ : configuredTimeZone;
+    }
+
+    public static void setConfiguredTimeZone(String configuredTimeZone) {
+        DockerSeleniumStarterRemoteProxy.configuredTimeZone = getValidTimeZone(configuredTimeZone, DEFAULT_TZ);
+    }
+
+    private static String getValidTimeZone(String timeZone, String defaultTimeZone) {
         if (!Arrays.asList(TimeZone.getAvailableIDs()).contains(timeZone)) {
             LOGGER.log(Level.WARNING, () -> String.format("%s is not a real time zone.", timeZone));
+            return defaultTimeZone;
         }
-        DockerSeleniumStarterRemoteProxy.timeZone = Arrays.asList(TimeZone.getAvailableIDs()).contains(timeZone) ?
-                timeZone : DEFAULT_TZ;
+        return timeZone;
     }
 
     @VisibleForTesting
-    protected static int getScreenWidth() {
-        return screenWidth;
+    protected static void setEnv(final Environment env) {
+        DockerSeleniumStarterRemoteProxy.env = env;
     }
 
     @VisibleForTesting
-    protected static void setScreenWidth(int screenWidth) {
-        DockerSeleniumStarterRemoteProxy.screenWidth = screenWidth <= 0 ? DEFAULT_SCREEN_WIDTH : screenWidth;
+    static void restoreEnvironment() {
+        env = defaultEnvironment;
     }
 
     @VisibleForTesting
-    protected static int getScreenHeight() {
-        return screenHeight;
+    static DockerSeleniumWarmPool getWarmPool() {
+        return warmPool;
     }
 
     @VisibleForTesting
-    protected static void setScreenHeight(int screenHeight) {
-        DockerSeleniumStarterRemoteProxy.screenHeight = screenHeight <= 0 ? DEFAULT_SCREEN_HEIGHT : screenHeight;
+    static PendingDemandLedger getPendingDemandLedger() {
+        return pendingDemandLedger;
     }
 
-    public static int getConfiguredScreenWidth() {
-        return configuredScreenWidth <= 0 ? DEFAULT_SCREEN_WIDTH : configuredScreenWidth;
+    /*
+        Called by the docker-selenium nodes when they get a session, so the request stops waiting for a container
+        and the warm pool can be refilled.
+     */
+    static void nodeClaimed(Map<String, Object> requestedCapability, String nodeId) {
+        pendingDemandLedger.nodeAssigned(requestedCapability, nodeId);
+        DockerSeleniumWarmPool currentWarmPool = warmPool;
+        if (currentWarmPool != null) {
+            currentWarmPool.nodeClaimed();
+        }
     }
 
-    public static void setConfiguredScreenWidth(int configuredScreenWidth) {
-        DockerSeleniumStarterRemoteProxy.configuredScreenWidth = configuredScreenWidth;
+    /*
+        Called by the docker-selenium nodes when they register, from then on their port is released on teardown.
+     */
+    static void nodeRegistered(int nodePort) {
+        registeredNodePorts.add(nodePort);
     }
 
-    public static int getConfiguredScreenHeight() {
-        return configuredScreenHeight <= 0 ? DEFAULT_SCREEN_HEIGHT : configuredScreenHeight;
+    /*
+        Called by the docker-selenium nodes on teardown, so their port can be used by new containers.
+     */
+    static void releaseNodePort(int nodePort) {
+        registeredNodePorts.remove(nodePort);
+        containerIdsByNodePort.remove(nodePort);
+        Path recordingFolder = recordingFoldersByNodePort.remove(nodePort);
+        if (recordingFolder != null) {
+            RecordingVolume.removeRecordingFolder(recordingFolder);
+        }
+        nodePortAllocator.release(nodePort);
     }
 
-    public static void setConfiguredScreenHeight(int configuredScreenHeight) {
-        DockerSeleniumStarterRemoteProxy.configuredScreenHeight = configuredScreenHeight;
+    /*
+        Releases the port only while it still belongs to the given container, so it is released once even when the
+        creation failure and the removal event of the container race. A null container id was never created.
+     */
+    private static void releaseNodePort(int nodePort, String containerId) {
+        if (containerId == null || containerIdsByNodePort.remove(nodePort, containerId)) {
+            releaseNodePort(nodePort);
+        }
     }
 
-    public static String getConfiguredTimeZone() {
-        return configuredTimeZone == null ? DEFAULT_TZ : configuredTimeZone;
+    /*
+        A node container that is removed before its node registers (e.g. it crashed while starting, or it did not
+        reach the hub before its deadline) has no teardown, so its port, container id and recording folder are
+        released here. Registered nodes release them on teardown.
+     */
+    @VisibleForTesting
+    static void nodeContainerRemoved(String containerId, int nodePort) {
+        if (!registeredNodePorts.contains(nodePort) && containerIdsByNodePort.remove(nodePort, containerId)) {
+            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Container {0} was removed before its node registered, " +
+                    "releasing port {1}", new Object[]{containerId, nodePort});
+            releaseNodePort(nodePort);
+        }
     }
 
-    public static void setConfiguredTimeZone(String configuredTimeZone) {
-        DockerSeleniumStarterRemoteProxy.configuredTimeZone = configuredTimeZone;
+    /*
+        The folder where the node with the given port records its video while the test runs, or null when the
+        video stays in the container until the test is done.
+     */
+    static Path getRecordingFolderForNode(int nodePort) {
+        return recordingFoldersByNodePort.get(nodePort);
     }
 
     @VisibleForTesting
-    protected static void setEnv(final Environment env) {
-        DockerSeleniumStarterRemoteProxy.env = env;
+    static void recordingStartedForNode(int nodePort, Path recordingFolder) {
+        recordingFoldersByNodePort.put(nodePort, recordingFolder);
     }
 
+    /*
+        When enabled, the nodes on the local Docker host record the video into the videos folder of Zalenium.
+     */
     @VisibleForTesting
-    static void restoreEnvironment() {
-        env = defaultEnvironment;
+    static synchronized void setVideoStreamingEnabled(boolean videoStreamingEnabled) {
+        DockerSeleniumStarterRemoteProxy.videoStreamingEnabled = videoStreamingEnabled;
     }
 
-    @SuppressWarnings("ConstantConditions")
-    private static String getLatestDownloadedImage(String imageName) throws DockerException, InterruptedException {
-        List<Image> images = dockerClient.listImages(DockerClient.ListImagesParam.byName(imageName));
-        if (images.isEmpty()) {
-            LOGGER.log(Level.SEVERE, "A downloaded docker-selenium image was not found!");
-            return DOCKER_SELENIUM_IMAGE;
-        }
-        for (int i = images.size() - 1; i >= 0; i--) {
-            if (images.get(i).repoTags() == null) {
-                images.remove(i);
-            }
+    /*
+        Null when video streaming is disabled, or when the videos folder is not mounted from the Docker host.
+     */
+    private static synchronized RecordingVolume getRecordingVolume() {
+        if (videoStreamingEnabled && !recordingVolumeResolved) {
+            recordingVolume = RecordingVolume.resolve(dockerClient, getContainerName(),
+                    Paths.get(new CommonProxyUtilities().currentLocalPath(), Dashboard.VIDEOS_FOLDER_NAME));
+            recordingVolumeResolved = true;
+            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Videos are recorded into {0}", recordingVolume);
         }
-        images.sort((o1, o2) -> o2.created().compareTo(o1.created()));
-        return images.get(0).repoTags().get(0);
+        return videoStreamingEnabled ? recordingVolume : null;
+    }
+
+    static String getNodeName(int nodePort) {
+        return String.format("%s_%s", getContainerName(), nodePort);
+    }
+
+    /*
+        The id of the container created for the node with the given port, or null when it was not created by this
+        hub instance (e.g. before a restart).
+     */
+    static String getContainerIdForNode(int nodePort) {
+        return containerIdsByNodePort.get(nodePort);
+    }
+
+    @VisibleForTesting
+    static void containerCreatedForNode(int nodePort, String containerId) {
+        containerIdsByNodePort.put(nodePort, containerId);
+    }
+
+    @VisibleForTesting
+    static NodePortAllocator getNodePortAllocator() {
+        return nodePortAllocator;
     }
 
     public HtmlRenderer getHtmlRender() {
@@ -327,9 +651,10 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     }
 
     /**
-     * Receives a request to create a new session, but instead of accepting it, it will create a
+     * Receives a request to create a new session, but instead of accepting it, it will queue the creation of a
      * docker-selenium container which will register to the hub, then reject the request and the hub
-     * will assign the request to the new registered node.
+     * will assign the request to the new registered node. The container is created by the provisioner, so this
+     * method returns right away and does not hold the registry while it matches the other queued requests.
      */
     @Override
     public TestSession getNewSession(Map<String, Object> requestedCapability) {
@@ -345,39 +670,38 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
             return null;
         }
 
-        // Check and configure specific screen resolution capabilities when they have been passed in the test config.
-        configureScreenResolutionFromCapabilities(requestedCapability);
-
-        // Check and configure time zone capabilities when they have been passed in the test config.
-        configureTimeZoneFromCapabilities(requestedCapability);
-
         String browserName = requestedCapability.get(CapabilityType.BROWSER_NAME).toString();
 
+        /*
+            The screen resolution and time zone passed in the test config (or the configured ones) go into a spec
+            that belongs to this request only, and it is used later when the container gets created.
+         */
+        DockerSeleniumContainerSpec containerSpec = getContainerSpec(browserName, requestedCapability);
+
         /*
             Here a docker-selenium container will be started and it will register to the hub
-            We check first if a node has been created for this request already. If so, we skip it
-            but increment the number of times it has been received. In case something went wrong with the node
-            creation, we remove the mark* after 10 times and we create a node again.
-            * The mark is an added custom capability
+            We check first in the ledger if a node has been created for this request already. If so, we skip it
+            until the node registers. If the creation failed, or the node did not register before its deadline,
+            a node is created again. When the deadline passed, the new node is forced to be created.
          */
-        String waitingForNode = String.format("waitingFor_%s_Node", browserName.toUpperCase());
-        if (!requestedCapability.containsKey(waitingForNode)) {
-            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Starting new node for {0}.", requestedCapability);
-            if (startDockerSeleniumContainer(browserName)) {
-                requestedCapability.put(waitingForNode, 1);
-            }
+        if (!pendingDemandLedger.needsContainer(requestedCapability)) {
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "Request waiting for a new node for {0}.", requestedCapability);
+            return null;
+        }
+        PendingDemandLedger.PendingDemand previousDemand = pendingDemandLedger.get(requestedCapability);
+        CompletableFuture<Integer> nodePort;
+        if (previousDemand != null && !previousDemand.hasFailed()) {
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "Request has waited {0} ms for a node, something went wrong " +
+                    "with the previous attempt, creating a new node for {1}.",
+                    new Object[]{NODE_REGISTRATION_TIMEOUT_MILLIS, requestedCapability});
+            nodePort = startDockerSeleniumContainer(containerSpec, true);
         } else {
-            int attempts = (int) requestedCapability.get(waitingForNode);
-            attempts++;
-            if (attempts >= 20) {
-                LOGGER.log(Level.FINE, LOGGING_PREFIX + "Request has waited 20 attempts for a node, something " +
-                        "went wrong with the previous attempts, creating a new node for {0}.", requestedCapability);
-                startDockerSeleniumContainer(browserName, true);
-                requestedCapability.put(waitingForNode, 1);
-            } else {
-                requestedCapability.put(waitingForNode, attempts);
-                LOGGER.log(Level.FINE, LOGGING_PREFIX + "Request waiting for a node new node for {0}.", requestedCapability);
-            }
+            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Starting new node for {0}.", requestedCapability);
+            nodePort = startDockerSeleniumContainer(containerSpec);
+        }
+        // Without room on any Docker host nothing was queued, the request is checked again in the next loop.
+        if (nodePort != null) {
+            pendingDemandLedger.containerRequested(requestedCapability, browserName, nodePort);
         }
         return null;
     }
@@ -392,6 +716,7 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         readConfigurationFromEnvVariables();
         setupCompleted = false;
         createStartupContainers();
+        startWarmPool(readWarmPoolConfigurationFromEnvVariables());
     }
 
     @Override
@@ -412,87 +737,141 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     }
 
     @VisibleForTesting
-    public boolean startDockerSeleniumContainer(String browser) {
-        return startDockerSeleniumContainer(browser, false);
-    }
-
-    @VisibleForTesting
-    public boolean startDockerSeleniumContainer(String browser, boolean forceCreation) {
-
-        if (validateAmountOfDockerSeleniumContainers() || forceCreation) {
-
-            String hostIpAddress = "localhost";
-
-            /*
-                Building the docker command, depending if Chrome or Firefox is requested.
-                To launch only the requested node type.
-             */
-
-            final int nodePort = findFreePortInRange(LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY);
-            final int vncPort = nodePort + 10000;
-
-            List<String> envVariables = new ArrayList<>();
-            envVariables.add("ZALENIUM=true");
-            envVariables.add("SELENIUM_HUB_HOST=" + hostIpAddress);
-            envVariables.add("SELENIUM_HUB_PORT=4445");
-            envVariables.add("SELENIUM_NODE_HOST=" + hostIpAddress);
-            envVariables.add("GRID=false");
-            envVariables.add("RC_CHROME=false");
-            envVariables.add("RC_FIREFOX=false");
-            envVariables.add("USE_SELENIUM=3");
-            envVariables.add("WAIT_TIMEOUT=120s");
-            envVariables.add("PICK_ALL_RANDOM_PORTS=true");
-            envVariables.add("VIDEO_STOP_SLEEP_SECS=1");
-            envVariables.add("WAIT_TIME_OUT_VIDEO_STOP=20s");
-            boolean sendAnonymousUsageInfo = env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false);
-            envVariables.add("SEND_ANONYMOUS_USAGE_INFO=" + sendAnonymousUsageInfo);
-            envVariables.add("BUILD_URL=" + env.getStringEnvVariable("BUILD_URL", ""));
-            envVariables.add("NOVNC=true");
-            envVariables.add("NOVNC_PORT=" + vncPort);
-            envVariables.add("SCREEN_WIDTH=" + getScreenWidth());
-            envVariables.add("SCREEN_HEIGHT=" + getScreenHeight());
-            envVariables.add("TZ=" + getTimeZone());
-            envVariables.add("SELENIUM_NODE_REGISTER_CYCLE=0");
-            envVariables.add("SELENIUM_NODE_PROXY_PARAMS=de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy");
-            if (BrowserType.CHROME.equalsIgnoreCase(browser)) {
-                envVariables.add("SELENIUM_NODE_CH_PORT=" + nodePort);
-                envVariables.add("CHROME=true");
-            } else {
-                envVariables.add("CHROME=false");
-            }
-            if (BrowserType.FIREFOX.equalsIgnoreCase(browser)) {
-                envVariables.add("SELENIUM_NODE_FF_PORT=" + nodePort);
-                envVariables.add("FIREFOX=true");
-            } else {
-                envVariables.add("FIREFOX=false");
-            }
+    public CompletableFuture<Integer> startDockerSeleniumContainer(DockerSeleniumContainerSpec containerSpec) {
+        return startDockerSeleniumContainer(containerSpec, false);
+    }
 
-            String networkMode = String.format("container:%s", getContainerName());
-            HostConfig hostConfig = HostConfig.builder()
-                    .shmSize(1073741824L) // 1GB
-                    .networkMode(networkMode)
-                    .appendBinds("/tmp/mounted:/tmp/mounted")
-                    .autoRemove(true)
-                    .build();
+    /*
+        Reserves room for the container on a Docker host and then queues its creation in the provisioner, so no
+        creation token is spent when there is no room. The future completes with the port where the node will
+        register, or -1 if the container was not created. Null is returned when no Docker host has room left,
+        nothing is queued then.
+     */
+    @VisibleForTesting
+    public CompletableFuture<Integer> startDockerSeleniumContainer(DockerSeleniumContainerSpec containerSpec,
+                                                                   boolean forceCreation) {
+        DockerHost dockerHost = reserveContainerCreation(forceCreation);
+        if (dockerHost == null) {
+            return null;
+        }
+        CompletableFuture<Integer> nodePort = getContainerProvisioner().submit(containerSpec + " node", () ->
+                createDockerSeleniumContainer(containerSpec, dockerHost));
+        nodePort.whenComplete((port, throwable) -> getDockerHostPool().release(dockerHost));
+        return nodePort;
+    }
 
-            try {
-                final ContainerConfig containerConfig = ContainerConfig.builder()
-                        .image(getLatestDownloadedImage(DOCKER_SELENIUM_IMAGE))
-                        .env(envVariables)
-                        .hostConfig(hostConfig)
-                        .build();
-
-                String dockerSeleniumContainerName = String.format("%s_%s", getContainerName(), nodePort);
-                final ContainerCreation dockerSeleniumContainer = dockerClient.createContainer(containerConfig,
-                        dockerSeleniumContainerName);
-                dockerClient.startContainer(dockerSeleniumContainer.id());
-                return true;
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
-                ga.trackException(e);
+    /*
+        Creates and starts a docker-selenium container with the browser, screen resolution and time zone of the
+        spec on the host reserved for it. Returns the port where the node will register, or -1 if the container
+        was not created.
+     */
+    @VisibleForTesting
+    int createDockerSeleniumContainer(DockerSeleniumContainerSpec containerSpec, DockerHost dockerHost) {
+        String browser = containerSpec.getBrowser();
+
+        /*
+            Local nodes share the network of the Zalenium container. Nodes on a remote host use the network of
+            that host, register with its address and reach the hub through the configured hub address.
+         */
+        String nodeHostAddress = LOCAL_NODE_ADDRESS;
+        String hubHostAddress = LOCAL_NODE_ADDRESS;
+        String hubPort = LOCAL_HUB_PORT;
+        String networkMode = String.format("container:%s", getContainerName());
+        if (!dockerHost.isLocal()) {
+            nodeHostAddress = dockerHost.getNodeAddress();
+            String[] hubAddressParts = getHubAddress().split(":");
+            hubHostAddress = hubAddressParts[0];
+            hubPort = hubAddressParts.length > 1 ? hubAddressParts[1] : DEFAULT_HUB_PORT;
+            networkMode = "host";
+        }
+
+        /*
+            Building the docker command, depending if Chrome or Firefox is requested.
+            To launch only the requested node type.
+         */
+
+        final int nodePort = nodePortAllocator.allocate();
+        if (nodePort == -1) {
+            LOGGER.log(Level.WARNING, LOGGING_PREFIX + "No free ports left in the range {0}-{1}.",
+                    new Object[]{LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY});
+            return -1;
+        }
+        final int vncPort = nodePort + 10000;
+
+        List<String> envVariables = new ArrayList<>();
+        envVariables.add("ZALENIUM=true");
+        envVariables.add("SELENIUM_HUB_HOST=" + hubHostAddress);
+        envVariables.add("SELENIUM_HUB_PORT=" + hubPort);
+        envVariables.add("SELENIUM_NODE_HOST=" + nodeHostAddress);
+        envVariables.add("GRID=false");
+        envVariables.add("RC_CHROME=false");
+        envVariables.add("RC_FIREFOX=false");
+        envVariables.add("USE_SELENIUM=3");
+        envVariables.add("WAIT_TIMEOUT=120s");
+        envVariables.add("PICK_ALL_RANDOM_PORTS=true");
+        envVariables.add("VIDEO_STOP_SLEEP_SECS=1");
+        envVariables.add("WAIT_TIME_OUT_VIDEO_STOP=20s");
+        boolean sendAnonymousUsageInfo = env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false);
+        envVariables.add("SEND_ANONYMOUS_USAGE_INFO=" + sendAnonymousUsageInfo);
+        envVariables.add("BUILD_URL=" + env.getStringEnvVariable("BUILD_URL", ""));
+        envVariables.add("NOVNC=true");
+        envVariables.add("NOVNC_PORT=" + vncPort);
+        envVariables.add("SCREEN_WIDTH=" + containerSpec.getScreenWidth());
+        envVariables.add("SCREEN_HEIGHT=" + containerSpec.getScreenHeight());
+        envVariables.add("TZ=" + containerSpec.getTimeZone());
+        envVariables.add("SELENIUM_NODE_REGISTER_CYCLE=0");
+        envVariables.add("SELENIUM_NODE_PROXY_PARAMS=de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy");
+        if (BrowserType.CHROME.equalsIgnoreCase(browser)) {
+            envVariables.add("SELENIUM_NODE_CH_PORT=" + nodePort);
+            envVariables.add("CHROME=true");
+        } else {
+            envVariables.add("CHROME=false");
+        }
+        if (BrowserType.FIREFOX.equalsIgnoreCase(browser)) {
+            envVariables.add("SELENIUM_NODE_FF_PORT=" + nodePort);
+            envVariables.add("FIREFOX=true");
+        } else {
+            envVariables.add("FIREFOX=false");
+        }
+
+        String dockerSeleniumContainerName = getNodeName(nodePort);
+        HostConfig.Builder hostConfigBuilder = HostConfig.builder()
+                .shmSize(1073741824L) // 1GB
+                .networkMode(networkMode)
+                .appendBinds("/tmp/mounted:/tmp/mounted")
+                .autoRemove(true);
+
+        String containerId = null;
+        try {
+            RecordingVolume nodeRecordingVolume = dockerHost.isLocal() ? getRecordingVolume() : null;
+            if (nodeRecordingVolume != null) {
+                hostConfigBuilder.appendBinds(nodeRecordingVolume.prepare(dockerSeleniumContainerName));
+                recordingStartedForNode(nodePort, nodeRecordingVolume.getRecordingFolder(dockerSeleniumContainerName));
             }
+            String image = dockerHost.getImageCache().getResolvedImage().getImage();
+            final ContainerConfig containerConfig = ContainerConfig.builder()
+                    .image(image)
+                    .env(envVariables)
+                    .hostConfig(hostConfigBuilder.build())
+                    .labels(ImmutableMap.of(ContainerInventory.BROWSER_LABEL, browser.toLowerCase(),
+                            ContainerInventory.NODE_PORT_LABEL, String.valueOf(nodePort)))
+                    .build();
+
+            final ContainerCreation dockerSeleniumContainer = dockerHost.getDockerClient()
+                    .createContainer(containerConfig, dockerSeleniumContainerName);
+            containerId = dockerSeleniumContainer.id();
+            dockerHost.getContainerInventory().containerCreated(containerId, image, browser);
+            containerCreatedForNode(nodePort, containerId);
+            dockerHost.getDockerClient().startContainer(containerId);
+            dockerHost.creationSucceeded();
+            return nodePort;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, LOGGING_PREFIX + dockerHost.getName() + " " + e.toString(), e);
+            ga.trackException(e);
+            dockerHost.creationFailed();
+            releaseNodePort(nodePort, containerId);
         }
-        return false;
+        return -1;
     }
 
     @VisibleForTesting
@@ -500,178 +879,112 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         return setupCompleted;
     }
 
+    private void startWarmPool(Map<DockerSeleniumContainerSpec, Integer> targetSizes) {
+        if (warmPool != null) {
+            warmPool.stop();
+        }
+        warmPool = new DockerSeleniumWarmPool(this, targetSizes);
+        warmPool.start();
+    }
+
+    /*
+        All startup containers are queued at once, the provisioner creates them in parallel.
+     */
     private void createStartupContainers() {
         int configuredContainers = getChromeContainersOnStartup() + getFirefoxContainersOnStartup();
         int containersToCreate = configuredContainers > getMaxDockerSeleniumContainers() ?
                 getMaxDockerSeleniumContainers() : configuredContainers;
-        new Thread(() -> {
-            LOGGER.log(Level.INFO, String.format("%s Setting up %s nodes...", LOGGING_PREFIX, configuredContainers));
-            int createdContainers = 0;
-            while (createdContainers < containersToCreate && getNumberOfRunningContainers() <= getMaxDockerSeleniumContainers()) {
-                boolean wasContainerCreated;
-                if (createdContainers < getChromeContainersOnStartup()) {
-                    wasContainerCreated = startDockerSeleniumContainer(BrowserType.CHROME);
-                } else {
-                    wasContainerCreated = startDockerSeleniumContainer(BrowserType.FIREFOX);
-                }
-                createdContainers = wasContainerCreated ? createdContainers + 1 : createdContainers;
+        LOGGER.log(Level.INFO, String.format("%s Setting up %s nodes...", LOGGING_PREFIX, configuredContainers));
+        List<CompletableFuture<Integer>> startupContainers = new ArrayList<>();
+        for (int i = 0; i < containersToCreate; i++) {
+            String browser = i < getChromeContainersOnStartup() ? BrowserType.CHROME : BrowserType.FIREFOX;
+            CompletableFuture<Integer> startupContainer = startDockerSeleniumContainer(
+                    new DockerSeleniumContainerSpec(browser, getConfiguredScreenWidth(), getConfiguredScreenHeight(),
+                            getConfiguredTimeZone()));
+            if (startupContainer != null) {
+                startupContainers.add(startupContainer);
             }
-            LOGGER.log(Level.INFO, String.format("%s containers were created, it will take a bit more until all get registered.", createdContainers));
-            setupCompleted = true;
-        }).start();
+        }
+        CompletableFuture.allOf(startupContainers.toArray(new CompletableFuture[startupContainers.size()]))
+                .thenRun(() -> {
+                    long createdContainers = startupContainers.stream().filter(c -> c.join() > 0).count();
+                    LOGGER.log(Level.INFO, String.format("%s containers were created, it will take a bit more " +
+                            "until all get registered.", createdContainers));
+                    setupCompleted = true;
+                });
     }
 
     /*
-        This method will search for a screenResolution capability to be passed when creating a docker-selenium node.
+        This method will search for the screenResolution and tz capabilities to be passed when creating a
+        docker-selenium node, falling back to the configured values when they are absent or not valid.
     */
-    private void configureScreenResolutionFromCapabilities(Map<String, Object> requestedCapability) {
-        boolean wasConfiguredScreenWidthAndHeightChanged = false;
+    @VisibleForTesting
+    static DockerSeleniumContainerSpec getContainerSpec(String browser, Map<String, Object> requestedCapability) {
+        int screenWidth = getConfiguredScreenWidth();
+        int screenHeight = getConfiguredScreenHeight();
+        boolean wasScreenResolutionProvided = false;
         String[] screenResolutionNames = {"screenResolution", "resolution", "screen-resolution"};
         for (String screenResolutionName : screenResolutionNames) {
             if (requestedCapability.containsKey(screenResolutionName)) {
                 String screenResolution = requestedCapability.get(screenResolutionName).toString();
                 try {
-                    int screenWidth = Integer.parseInt(screenResolution.split("x")[0]);
-                    int screenHeight = Integer.parseInt(screenResolution.split("x")[1]);
-                    if (screenWidth > 0 && screenHeight > 0) {
-                        setScreenHeight(screenHeight);
-                        setScreenWidth(screenWidth);
-                        wasConfiguredScreenWidthAndHeightChanged = true;
+                    int requestedWidth = Integer.parseInt(screenResolution.split("x")[0]);
+                    int requestedHeight = Integer.parseInt(screenResolution.split("x")[1]);
+                    if (requestedWidth > 0 && requestedHeight > 0) {
+                        screenWidth = requestedWidth;
+                        screenHeight = requestedHeight;
+                        wasScreenResolutionProvided = true;
                     } else {
-                        setScreenWidth(getConfiguredScreenWidth());
-                        setScreenHeight(getConfiguredScreenHeight());
                         LOGGER.log(Level.FINE, "One of the values provided for screenResolution is negative, " +
                                 "defaults will be used. Passed value -> " + screenResolution);
                     }
                 } catch (Exception e) {
-                    setScreenWidth(getConfiguredScreenWidth());
-                    setScreenHeight(getConfiguredScreenHeight());
                     LOGGER.log(Level.FINE, "Values provided for screenResolution are not valid integers or " +
                             "either the width or the height is missing, defaults will be used. Passed value -> "
                             + screenResolution);
                 }
             }
         }
-        // If the screen resolution parameters were not changed, we just set the defaults again.
-        // Also in the capabilities, to avoid the situation where a request grabs the node from other request
-        // just because the platform, version, and browser match.
-        if (!wasConfiguredScreenWidthAndHeightChanged) {
-            setScreenWidth(getConfiguredScreenWidth());
-            setScreenHeight(getConfiguredScreenHeight());
-            String screenResolution = String.format("%sx%s", getScreenWidth(), getScreenHeight());
-            requestedCapability.put("screenResolution", screenResolution);
+        // If the screen resolution parameters were not provided, we put the defaults in the capabilities, to avoid
+        // the situation where a request grabs the node from other request just because the platform, version,
+        // and browser match.
+        if (!wasScreenResolutionProvided) {
+            requestedCapability.put("screenResolution", String.format("%sx%s", screenWidth, screenHeight));
         }
-    }
 
-    /*
-    This method will search for a tz capability to be passed when creating a docker-selenium node.
-    */
-    private void configureTimeZoneFromCapabilities(Map<String, Object> requestedCapability) {
-        boolean wasConfiguredTimeZoneChanged = false;
         String timeZoneName = "tz";
+        String timeZone;
         if (requestedCapability.containsKey(timeZoneName)) {
-            String timeZone = requestedCapability.get(timeZoneName).toString();
-            setTimeZone(timeZone);
-            wasConfiguredTimeZoneChanged = true;
-        }
-        // If the time zone parameter was not changed, we just set the defaults again.
-        if (!wasConfiguredTimeZoneChanged) {
-            setTimeZone(getConfiguredTimeZone());
-            requestedCapability.put(timeZoneName, getConfiguredTimeZone());
+            timeZone = getValidTimeZone(requestedCapability.get(timeZoneName).toString(), getConfiguredTimeZone());
+        } else {
+            // Same as above, the default time zone is added to the capabilities.
+            timeZone = getConfiguredTimeZone();
+            requestedCapability.put(timeZoneName, timeZone);
         }
+        return new DockerSeleniumContainerSpec(browser, screenWidth, screenHeight, timeZone);
     }
 
-    private int getNumberOfRunningContainers() {
+    /*
+        Creations run in parallel, so the containers being created are counted together with the running ones on
+        each host. Otherwise several creations could pass the validation at the same time and go over the max.
+        amount. Too many containers registering at the same time is avoided by the rate limit of the
+        ContainerProvisioner, so only the max. amount of containers is validated here.
+     */
+    private static DockerHost reserveContainerCreation(boolean forceCreation) {
         try {
-            List<Container> containerList = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
-            int numberOfDockerSeleniumContainers = 0;
-            for (Container container : containerList) {
-                if (container.image().contains(DOCKER_SELENIUM_IMAGE) && !"exited".equalsIgnoreCase(container.state())) {
-                    numberOfDockerSeleniumContainers++;
-                }
+            DockerHostPool currentDockerHostPool = getDockerHostPool();
+            DockerHost dockerHost = currentDockerHostPool.reserve(forceCreation);
+            if (dockerHost == null) {
+                LOGGER.log(Level.WARNING, LOGGING_PREFIX + "Max. number of docker-selenium containers has been " +
+                        "reached on all Docker hosts, no more will be created until the number decreases -> {0}",
+                        currentDockerHostPool);
             }
-            return numberOfDockerSeleniumContainers;
+            return dockerHost;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
             ga.trackException(e);
         }
-        return 0;
-    }
-
-    private boolean validateAmountOfDockerSeleniumContainers() {
-        try {
-            int numberOfDockerSeleniumContainers = getNumberOfRunningContainers();
-
-            /*
-                Validation to avoid the situation where 20 containers are running and only 4 proxies are registered.
-                The remaining 16 are not registered because they are all trying to do it and the hub just cannot
-                process all the registrations fast enough, causing many unexpected errors.
-            */
-            int numberOfProxies = 0;
-            for (RemoteProxy remoteProxy : getRegistry().getAllProxies()) {
-                if (remoteProxy instanceof DockerSeleniumRemoteProxy) {
-                    numberOfProxies++;
-                }
-            }
-            LOGGER.log(Level.FINE, "Number of proxies -> " + numberOfProxies);
-            int newSessionRequestCount = getRegistry().getNewSessionRequestCount();
-            LOGGER.log(Level.FINE, "(getNewSessionRequestCount()) -> " + newSessionRequestCount);
-            int proxiesAndNewSessions = numberOfProxies + newSessionRequestCount;
-            LOGGER.log(Level.FINE, "Number of proxies + new sessions requested -> " + proxiesAndNewSessions);
-            LOGGER.log(Level.FINE, "Number of DockerSelenium containers -> " + numberOfDockerSeleniumContainers);
-            if (numberOfDockerSeleniumContainers > proxiesAndNewSessions) {
-                LOGGER.log(Level.FINE, LOGGING_PREFIX + "More docker-selenium containers running than proxies, {0} vs. {1}",
-                        new Object[]{numberOfDockerSeleniumContainers, numberOfProxies});
-                Thread.sleep(500);
-                return false;
-            }
-
-            LOGGER.log(Level.FINE, () -> String.format("%s %s docker-selenium containers running", LOGGING_PREFIX,
-                    numberOfDockerSeleniumContainers));
-            if (numberOfDockerSeleniumContainers >= getMaxDockerSeleniumContainers()) {
-                LOGGER.log(Level.WARNING, LOGGING_PREFIX + "Max. number of docker-selenium containers has been reached, " +
-                        "no more will be created until the number decreases below {0}.", getMaxDockerSeleniumContainers());
-                return false;
-            }
-            return true;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
-            ga.trackException(e);
-        }
-        return false;
-    }
-
-    /*
-        Method adapted from https://gist.github.com/vorburger/3429822
-     */
-    private int findFreePortInRange(int lowerBoundary, int upperBoundary) {
-        /*
-            If the list size is this big (~9800), it means that almost all ports have been used, but
-            probably many have been released already. The list is cleared so ports can be reused.
-            If by any chance one of the first allocated ports is still used, it will be skipped by the
-            existing validation.
-         */
-        if (allocatedPorts.size() > (upperBoundary - lowerBoundary - 200)) {
-            allocatedPorts.clear();
-            LOGGER.log(Level.INFO, () -> LOGGING_PREFIX + "Cleaning allocated ports list.");
-        }
-        for (int portNumber = lowerBoundary; portNumber <= upperBoundary; portNumber++) {
-            if (!allocatedPorts.contains(portNumber)) {
-                int freePort = -1;
-
-                try (ServerSocket serverSocket = new ServerSocket(portNumber)) {
-                    freePort = serverSocket.getLocalPort();
-                } catch (IOException e) {
-                    LOGGER.log(Level.FINE, LOGGING_PREFIX + e.toString(), e);
-                }
-
-                if (freePort != -1) {
-                    allocatedPorts.add(freePort);
-                    return freePort;
-                }
-            }
-        }
-        return -1;
+        return null;
     }
 
 }
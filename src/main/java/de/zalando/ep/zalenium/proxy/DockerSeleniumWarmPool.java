@@ -0,0 +1,225 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.selenium.remote.BrowserType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a configured amount of idle and registered docker-selenium nodes per browser, screen resolution and
+ * time zone profile. When a pooled node is claimed by a session, the pool is refilled in the background, so
+ * new sessions only need to be matched to an existing node instead of waiting for a container to boot.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerSeleniumWarmPool {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerSeleniumWarmPool.class.getName());
+    private static final String LOGGING_PREFIX = "[WP] ";
+    private static final long CHECK_INTERVAL_SECS = 5;
+
+    private final DockerSeleniumStarterRemoteProxy starterProxy;
+    private final Map<DockerSeleniumContainerSpec, Integer> targetSizes;
+    private final List<PendingNode> pendingNodes = new ArrayList<>();
+    private ScheduledExecutorService executor;
+
+    public DockerSeleniumWarmPool(DockerSeleniumStarterRemoteProxy starterProxy,
+                                  Map<DockerSeleniumContainerSpec, Integer> targetSizes) {
+        this.starterProxy = starterProxy;
+        this.targetSizes = new LinkedHashMap<>(targetSizes);
+    }
+
+    /*
+        Builds the target sizes from the configured amount of Chrome and Firefox nodes (using the default screen
+        resolution and time zone) plus the additional profiles with the format
+        "browser:WIDTHxHEIGHT:TimeZone:size,...", e.g. "chrome:1280x1024:America/Montreal:2,firefox:1920x1080:UTC:1".
+     */
+    public static Map<DockerSeleniumContainerSpec, Integer> buildTargetSizes(
+            int chromePoolSize, int firefoxPoolSize, String additionalProfiles, int defaultScreenWidth,
+            int defaultScreenHeight, String defaultTimeZone) {
+        Map<DockerSeleniumContainerSpec, Integer> targetSizes = new LinkedHashMap<>();
+        if (chromePoolSize > 0) {
+            targetSizes.put(new DockerSeleniumContainerSpec(BrowserType.CHROME, defaultScreenWidth,
+                    defaultScreenHeight, defaultTimeZone), chromePoolSize);
+        }
+        if (firefoxPoolSize > 0) {
+            targetSizes.put(new DockerSeleniumContainerSpec(BrowserType.FIREFOX, defaultScreenWidth,
+                    defaultScreenHeight, defaultTimeZone), firefoxPoolSize);
+        }
+        if (additionalProfiles == null || additionalProfiles.trim().isEmpty()) {
+            return targetSizes;
+        }
+        for (String profileDefinition : additionalProfiles.split(",")) {
+            String[] values = profileDefinition.trim().split(":");
+            try {
+                String[] screenResolution = values[1].split("x");
+                DockerSeleniumContainerSpec profile = new DockerSeleniumContainerSpec(values[0].toLowerCase(),
+                        Integer.parseInt(screenResolution[0]), Integer.parseInt(screenResolution[1]), values[2]);
+                int size = Integer.parseInt(values[3]);
+                if (size > 0 && profile.getScreenWidth() > 0 && profile.getScreenHeight() > 0) {
+                    targetSizes.merge(profile, size, Integer::sum);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, LOGGING_PREFIX + "Invalid warm pool profile, it will be ignored -> "
+                        + profileDefinition, e);
+            }
+        }
+        return targetSizes;
+    }
+
+    public boolean isEnabled() {
+        return !targetSizes.isEmpty();
+    }
+
+    public Map<DockerSeleniumContainerSpec, Integer> getTargetSizes() {
+        return targetSizes;
+    }
+
+    public synchronized void start() {
+        if (!isEnabled() || executor != null) {
+            return;
+        }
+        LOGGER.log(Level.INFO, () -> LOGGING_PREFIX + "Keeping warm nodes for " + targetSizes);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DockerSeleniumWarmPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::replenishSafely, 0, CHECK_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /*
+        Invoked when a pooled node gets a session, the refill happens right away in the pool thread.
+     */
+    public synchronized void nodeClaimed() {
+        if (executor != null) {
+            executor.execute(this::replenishSafely);
+        }
+    }
+
+    private void replenishSafely() {
+        try {
+            replenish();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void replenish() {
+        List<DockerSeleniumRemoteProxy> registeredNodes = getRegisteredNodes();
+        Set<Integer> registeredPorts = new HashSet<>();
+        for (DockerSeleniumRemoteProxy node : registeredNodes) {
+            registeredPorts.add(node.getRemoteHost().getPort());
+        }
+        // Nodes that registered already, or that won't register anymore, are not pending.
+        long now = System.currentTimeMillis();
+        Iterator<PendingNode> iterator = pendingNodes.iterator();
+        while (iterator.hasNext()) {
+            PendingNode pendingNode = iterator.next();
+            if (registeredPorts.contains(pendingNode.nodePort) ||
+                    now - pendingNode.startTime > DockerSeleniumStarterRemoteProxy.NODE_REGISTRATION_TIMEOUT_MILLIS) {
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<DockerSeleniumContainerSpec, Integer> targetSize : targetSizes.entrySet()) {
+            DockerSeleniumContainerSpec profile = targetSize.getKey();
+            int idleNodes = 0;
+            for (DockerSeleniumRemoteProxy node : registeredNodes) {
+                if (isIdle(node) && hasProfile(node, profile)) {
+                    idleNodes++;
+                }
+            }
+            int startingNodes = 0;
+            for (PendingNode pendingNode : pendingNodes) {
+                if (profile.equals(pendingNode.profile)) {
+                    startingNodes++;
+                }
+            }
+            int missingNodes = targetSize.getValue() - idleNodes - startingNodes;
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "{0} -> idle: {1}, starting: {2}, missing: {3}",
+                    new Object[]{profile, idleNodes, startingNodes, missingNodes});
+            for (int i = 0; i < missingNodes; i++) {
+                CompletableFuture<Integer> nodePort = starterProxy.startDockerSeleniumContainer(profile, false);
+                if (nodePort == null) {
+                    // No Docker host has room left, the next check tries again.
+                    break;
+                }
+                PendingNode pendingNode = new PendingNode(profile, System.currentTimeMillis());
+                pendingNodes.add(pendingNode);
+                nodePort.thenAccept(port -> containerCreated(pendingNode, port));
+            }
+        }
+    }
+
+    /*
+        When the container could not be created, the node is not pending anymore and the next check tries again.
+     */
+    private synchronized void containerCreated(PendingNode pendingNode, int nodePort) {
+        if (nodePort <= 0) {
+            pendingNodes.remove(pendingNode);
+        } else {
+            pendingNode.nodePort = nodePort;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getPendingNodesCount() {
+        return pendingNodes.size();
+    }
+
+    private List<DockerSeleniumRemoteProxy> getRegisteredNodes() {
+        List<DockerSeleniumRemoteProxy> registeredNodes = new ArrayList<>();
+        for (RemoteProxy remoteProxy : starterProxy.getRegistry().getAllProxies()) {
+            if (remoteProxy instanceof DockerSeleniumRemoteProxy) {
+                registeredNodes.add((DockerSeleniumRemoteProxy) remoteProxy);
+            }
+        }
+        return registeredNodes;
+    }
+
+    private boolean isIdle(DockerSeleniumRemoteProxy node) {
+        return !node.isBusy() && node.isAcceptingSessions();
+    }
+
+    private boolean hasProfile(DockerSeleniumRemoteProxy node, DockerSeleniumContainerSpec profile) {
+        for (TestSlot testSlot : node.getTestSlots()) {
+            if (profile.matches(testSlot.getCapabilities())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class PendingNode {
+        private final DockerSeleniumContainerSpec profile;
+        private final long startTime;
+        private int nodePort = 0;
+
+        PendingNode(DockerSeleniumContainerSpec profile, long startTime) {
+            this.profile = profile;
+            this.startTime = startTime;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the lifecycle checks of all the nodes (session completed, test idle, node too old) from one thread, instead
+ * of one polling thread per node. Each node has a deadline for its next check, a single ticker wakes up at a fixed
+ * rate and runs only the checks that are due, so the amount of threads and wake ups does not grow with the grid.
+ * Checks must be quick, the slow work (copying artifacts, cleaning up, stopping containers) goes to the
+ * NodeTeardownPipeline.
+ */
+@SuppressWarnings("WeakerAccess")
+public class NodeLifecycleScheduler {
+
+    // Returned by a check when the node does not need to be checked anymore.
+    public static final long NO_MORE_CHECKS = -1;
+    private static final Logger LOGGER = Logger.getLogger(NodeLifecycleScheduler.class.getName());
+
+    private final long tickMillis;
+    private final PriorityQueue<ScheduledCheck> dueChecks = new PriorityQueue<>(
+            Comparator.comparingLong((ScheduledCheck check) -> check.deadline).thenComparingLong(check -> check.id));
+    private final AtomicLong checkIds = new AtomicLong(0);
+    private ScheduledExecutorService ticker;
+
+    public NodeLifecycleScheduler(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    /*
+        The check gets the current time and returns when it wants to run again (or NO_MORE_CHECKS). It does not
+        run until a time is given with runAt() or runNow().
+     */
+    public ScheduledCheck register(String name, LongUnaryOperator check) {
+        startIfNeeded();
+        return new ScheduledCheck(checkIds.incrementAndGet(), name, check);
+    }
+
+    public synchronized int getScheduledChecks() {
+        return dueChecks.size();
+    }
+
+    public synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        dueChecks.clear();
+    }
+
+    private synchronized void startIfNeeded() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "NodeLifecycleTicker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @VisibleForTesting
+    void tick() {
+        long now = System.currentTimeMillis();
+        List<ScheduledCheck> checksToRun = new ArrayList<>();
+        synchronized (this) {
+            while (!dueChecks.isEmpty() && dueChecks.peek().deadline <= now) {
+                ScheduledCheck scheduledCheck = dueChecks.poll();
+                scheduledCheck.queued = false;
+                checksToRun.add(scheduledCheck);
+            }
+        }
+        for (ScheduledCheck scheduledCheck : checksToRun) {
+            long nextDeadline;
+            try {
+                nextDeadline = scheduledCheck.check.applyAsLong(now);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, scheduledCheck.name + " Error in the lifecycle check.", e);
+                nextDeadline = now + tickMillis;
+            }
+            if (nextDeadline == NO_MORE_CHECKS) {
+                scheduledCheck.cancel();
+            } else {
+                scheduledCheck.runAt(nextDeadline);
+            }
+        }
+    }
+
+    private synchronized void enqueue(ScheduledCheck scheduledCheck, long deadline) {
+        if (scheduledCheck.cancelled) {
+            return;
+        }
+        // When the check is already waiting, the earliest deadline wins, so a wake up is never postponed.
+        if (scheduledCheck.queued) {
+            if (scheduledCheck.deadline <= deadline) {
+                return;
+            }
+            dueChecks.remove(scheduledCheck);
+        }
+        scheduledCheck.deadline = deadline;
+        scheduledCheck.queued = true;
+        dueChecks.add(scheduledCheck);
+    }
+
+    private synchronized void remove(ScheduledCheck scheduledCheck) {
+        scheduledCheck.cancelled = true;
+        if (scheduledCheck.queued) {
+            dueChecks.remove(scheduledCheck);
+            scheduledCheck.queued = false;
+        }
+    }
+
+    /**
+     * Handle of the check of one node.
+     */
+    public class ScheduledCheck {
+        private final long id;
+        private final String name;
+        private final LongUnaryOperator check;
+        private long deadline;
+        private boolean queued = false;
+        private boolean cancelled = false;
+
+        private ScheduledCheck(long id, String name, LongUnaryOperator check) {
+            this.id = id;
+            this.name = name;
+            this.check = check;
+        }
+
+        /*
+            Runs the check at the given time, or earlier if it was already due earlier.
+         */
+        public void runAt(long deadline) {
+            enqueue(this, deadline);
+        }
+
+        public void runNow() {
+            runAt(System.currentTimeMillis());
+        }
+
+        public void cancel() {
+            remove(this);
+        }
+    }
+}
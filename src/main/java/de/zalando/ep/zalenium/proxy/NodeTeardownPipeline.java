@@ -0,0 +1,187 @@
+package de.zalando.ep.zalenium.proxy;
+
+import de.zalando.ep.zalenium.util.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the teardown of the nodes in stages (stop the video, collect the artifacts, copy them, update the dashboard,
+ * clean up or stop the container), each one with its own bounded pool of threads. A slow stage only delays the work
+ * waiting for that stage, e.g. a slow dashboard write does not keep a container running, and the queue of each
+ * stage shows where the teardown is piling up.
+ * Work submitted from outside the pipeline (the lifecycle ticker, the registry threads) is always queued without
+ * waiting, the queues are unbounded and a warning is logged when one grows over the threshold. Only the threads of
+ * the pipeline itself wait before handing work to a stage that has more than the threshold waiting, so a slow stage
+ * slows down the stages before it instead of the callers.
+ */
+@SuppressWarnings("WeakerAccess")
+public class NodeTeardownPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(NodeTeardownPipeline.class.getName());
+
+    private final Map<Stage, StageExecutor> stageExecutors = new EnumMap<>(Stage.class);
+
+    public NodeTeardownPipeline(ToIntFunction<Stage> threadsPerStage, int queueThresholdPerStage) {
+        for (Stage stage : Stage.values()) {
+            stageExecutors.put(stage, new StageExecutor(stage, threadsPerStage.applyAsInt(stage),
+                    queueThresholdPerStage));
+        }
+    }
+
+    /*
+        The work of a node for the given stage, it submits the work of its next stage when it is done.
+     */
+    public void submit(Stage stage, String nodeId, Runnable work) {
+        stageExecutors.get(stage).submit(nodeId, work);
+    }
+
+    public StageMetrics getStageMetrics(Stage stage) {
+        return stageExecutors.get(stage).metrics;
+    }
+
+    public Map<Stage, StageMetrics> getMetrics() {
+        Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+        stageExecutors.forEach((stage, stageExecutor) -> metrics.put(stage, stageExecutor.metrics));
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    public void shutdown() {
+        stageExecutors.values().forEach(stageExecutor -> stageExecutor.executor.shutdownNow());
+    }
+
+    @Override
+    public String toString() {
+        return getMetrics().toString();
+    }
+
+    public enum Stage {
+        STOP_VIDEO, COLLECT_LOGS, COPY_ARTIFACTS, UPDATE_DASHBOARD, STOP_CONTAINER
+    }
+
+    /**
+     * How much work waits for a stage, how long it waited, and how long the stage took.
+     */
+    public static class StageMetrics {
+        private final ThreadPoolExecutor executor;
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram executionLatency = new LatencyHistogram();
+
+        private StageMetrics(ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        public LatencyHistogram getQueueLatency() {
+            return queueLatency;
+        }
+
+        public LatencyHistogram getExecutionLatency() {
+            return executionLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queued: %s, active: %s, waiting -> %s, running -> %s", getQueueDepth(),
+                    getActiveCount(), queueLatency, executionLatency);
+        }
+    }
+
+    private static class StageExecutor {
+        // Marks the threads of the pipeline, the only ones that wait for room in the next stage.
+        private static final ThreadLocal<Boolean> pipelineThread = ThreadLocal.withInitial(() -> false);
+        private final Stage stage;
+        private final int queueThreshold;
+        private final ThreadPoolExecutor executor;
+        private final StageMetrics metrics;
+        // Notified every time work leaves the queue, the threads of the previous stages wait on it.
+        private final Object queueDrained = new Object();
+        private final AtomicBoolean overThreshold = new AtomicBoolean(false);
+
+        private StageExecutor(Stage stage, int threads, int queueThreshold) {
+            this.stage = stage;
+            this.queueThreshold = queueThreshold;
+            AtomicInteger threadNumber = new AtomicInteger(0);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(() -> {
+                            pipelineThread.set(true);
+                            runnable.run();
+                        }, "NodeTeardown-" + stage + "-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+            this.metrics = new StageMetrics(executor);
+        }
+
+        private void submit(String nodeId, Runnable work) {
+            if (pipelineThread.get()) {
+                waitForRoom(nodeId);
+            }
+            warnWhenOverThreshold();
+            long submitted = System.currentTimeMillis();
+            executor.execute(() -> {
+                synchronized (queueDrained) {
+                    queueDrained.notifyAll();
+                }
+                long start = System.currentTimeMillis();
+                metrics.queueLatency.record(start - submitted, false);
+                boolean failed = false;
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    failed = true;
+                    LOGGER.log(Level.SEVERE, String.format("%s Error in the teardown stage %s.", nodeId, stage), e);
+                } finally {
+                    metrics.executionLatency.record(System.currentTimeMillis() - start, failed);
+                }
+            });
+        }
+
+        /*
+            Only the threads of the pipeline get here, they wait while the stage has more work waiting than the
+            threshold. The last stage hands nothing over, so the waits cannot go in a circle.
+         */
+        private void waitForRoom(String nodeId) {
+            synchronized (queueDrained) {
+                try {
+                    while (executor.getQueue().size() >= queueThreshold && !executor.isShutdown()) {
+                        queueDrained.wait(1000);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.log(Level.FINE, String.format("%s Interrupted while waiting for the teardown stage %s.",
+                            nodeId, stage), e);
+                }
+            }
+        }
+
+        private void warnWhenOverThreshold() {
+            int queueDepth = executor.getQueue().size();
+            if (queueDepth >= queueThreshold) {
+                if (overThreshold.compareAndSet(false, true)) {
+                    LOGGER.log(Level.WARNING, "Teardown stage {0} has {1} nodes waiting, {2}",
+                            new Object[]{stage, queueDepth, metrics});
+                }
+            } else if (queueDepth < queueThreshold / 2) {
+                overThreshold.set(false);
+            }
+        }
+    }
+}
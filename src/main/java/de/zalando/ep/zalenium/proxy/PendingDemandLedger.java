@@ -0,0 +1,182 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the new session requests that got a docker-selenium container started for them. The registry
+ * passes the same requested capabilities map every time it tries to match a queued request, so entries are keyed
+ * by the identity of that map, and they go away with the request once it is not referenced anymore.
+ * A request gets a new container only when the previous one failed to be created, or when it did not register
+ * before its deadline, no matter how often the registry loops over the queue.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PendingDemandLedger {
+
+    // Weak keys are compared by identity, which is what is needed for the requested capabilities map.
+    private final ConcurrentMap<Map<String, Object>, PendingDemand> pendingDemands = new MapMaker().weakKeys().makeMap();
+    private final long registrationTimeoutMillis;
+    private final long failedRetryIntervalMillis;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    public PendingDemandLedger(long registrationTimeoutMillis, long failedRetryIntervalMillis) {
+        this.registrationTimeoutMillis = registrationTimeoutMillis;
+        this.failedRetryIntervalMillis = failedRetryIntervalMillis;
+    }
+
+    public PendingDemand get(Map<String, Object> requestedCapability) {
+        return pendingDemands.get(requestedCapability);
+    }
+
+    /*
+        A request needs a container when it has none yet, when the creation failed and the retry interval passed,
+        or when the container did not register before the deadline. While the creation is queued or running, the
+        request waits for it.
+     */
+    public boolean needsContainer(Map<String, Object> requestedCapability) {
+        PendingDemand pendingDemand = pendingDemands.get(requestedCapability);
+        if (pendingDemand == null) {
+            return true;
+        }
+        if (pendingDemand.isAssigned()) {
+            return false;
+        }
+        if (!pendingDemand.isCompleted()) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        if (pendingDemand.hasFailed()) {
+            return now >= pendingDemand.getCompletionTime() + failedRetryIntervalMillis;
+        }
+        return now >= pendingDemand.getRegistrationDeadline();
+    }
+
+    public PendingDemand containerRequested(Map<String, Object> requestedCapability, String browser,
+                                            CompletableFuture<Integer> nodePort) {
+        PendingDemand previousDemand = pendingDemands.get(requestedCapability);
+        int attempt = previousDemand == null ? 1 : previousDemand.getAttempt() + 1;
+        PendingDemand pendingDemand = new PendingDemand(browser, attempt, clock.getAsLong());
+        pendingDemands.put(requestedCapability, pendingDemand);
+        /*
+            A start that fails (creation error, circuit breaker open, no Docker host left) counts as a failed
+            creation, so the request is retried after the short retry interval instead of waiting for the deadline.
+            The deadline starts once the container was created, the time it waited in the provisioner queue does
+            not count against the registration.
+        */
+        nodePort.whenComplete((port, throwable) -> {
+            long completionTime = clock.getAsLong();
+            if (throwable != null || port == null) {
+                pendingDemand.containerFailed(completionTime);
+            } else {
+                pendingDemand.containerCreated(port, completionTime, completionTime + registrationTimeoutMillis);
+            }
+        });
+        return pendingDemand;
+    }
+
+    /*
+        Invoked when a node got the session for the request, it does not need a container anymore.
+     */
+    public void nodeAssigned(Map<String, Object> requestedCapability, String nodeId) {
+        PendingDemand pendingDemand = pendingDemands.get(requestedCapability);
+        if (pendingDemand != null) {
+            pendingDemand.assignNode(nodeId);
+        }
+    }
+
+    public List<PendingDemand> getUnassignedDemands() {
+        List<PendingDemand> unassignedDemands = new ArrayList<>();
+        for (PendingDemand pendingDemand : pendingDemands.values()) {
+            if (!pendingDemand.isAssigned()) {
+                unassignedDemands.add(pendingDemand);
+            }
+        }
+        return unassignedDemands;
+    }
+
+    @VisibleForTesting
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Container started for a request: when it was requested, the port it got, until when it has to register once
+     * it was created, and the node that finally took the session.
+     */
+    public static class PendingDemand {
+        private final String browser;
+        private final int attempt;
+        private final long requestTime;
+        private volatile long registrationDeadline = 0;
+        private volatile int nodePort = 0;
+        private volatile long completionTime = 0;
+        private volatile String assignedNodeId;
+
+        PendingDemand(String browser, int attempt, long requestTime) {
+            this.browser = browser;
+            this.attempt = attempt;
+            this.requestTime = requestTime;
+        }
+
+        public String getBrowser() {
+            return browser;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public long getRequestTime() {
+            return requestTime;
+        }
+
+        public long getRegistrationDeadline() {
+            return registrationDeadline;
+        }
+
+        public int getNodePort() {
+            return nodePort;
+        }
+
+        public long getCompletionTime() {
+            return completionTime;
+        }
+
+        public String getAssignedNodeId() {
+            return assignedNodeId;
+        }
+
+        public boolean isAssigned() {
+            return assignedNodeId != null;
+        }
+
+        public boolean isCompleted() {
+            return completionTime > 0;
+        }
+
+        public boolean hasFailed() {
+            return isCompleted() && nodePort <= 0;
+        }
+
+        private void containerCreated(int nodePort, long completionTime, long registrationDeadline) {
+            this.nodePort = nodePort;
+            this.registrationDeadline = registrationDeadline;
+            this.completionTime = completionTime;
+        }
+
+        private void containerFailed(long completionTime) {
+            containerCreated(-1, completionTime, 0);
+        }
+
+        private void assignNode(String nodeId) {
+            this.assignedNodeId = nodeId;
+        }
+    }
+}
@@ -9,8 +9,6 @@ import org.openqa.grid.internal.Registry;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /*
     Almost all concepts and ideas for this part of the implementation are taken from the open source project seen here:
@@ -19,40 +17,21 @@ import java.util.logging.Logger;
 
 public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
 
-    private static final String SAUCE_LABS_ACCOUNT_INFO = "https://saucelabs.com/rest/v1/users/%s";
+    private static final String SAUCE_LABS_ACCOUNT_CONCURRENCY = "https://saucelabs.com/rest/v1/users/%s/concurrency";
     private static final String SAUCE_LABS_USER_NAME = getEnv().getStringEnvVariable("SAUCE_USERNAME", "");
     private static final String SAUCE_LABS_ACCESS_KEY = getEnv().getStringEnvVariable("SAUCE_ACCESS_KEY", "");
     private static final String SAUCE_LABS_URL = "http://ondemand.saucelabs.com:80";
-    private static final Logger LOGGER = Logger.getLogger(SauceLabsRemoteProxy.class.getName());
     private static final String SAUCE_LABS_PROXY_NAME = "SauceLabs";
 
     public SauceLabsRemoteProxy(RegistrationRequest request, Registry registry) {
-        super(updateSLCapabilities(request, String.format(SAUCE_LABS_ACCOUNT_INFO, SAUCE_LABS_USER_NAME)), registry);
+        super(updateSLCapabilities(request), registry);
     }
 
     @VisibleForTesting
-    static RegistrationRequest updateSLCapabilities(RegistrationRequest registrationRequest, String url) {
-        JsonElement slAccountInfo = getCommonProxyUtilities().readJSONFromUrl(url, SAUCE_LABS_USER_NAME,
-                SAUCE_LABS_ACCESS_KEY);
-        try {
-            registrationRequest.getConfiguration().capabilities.clear();
-            String logMessage = String.format("[SL] Account max. concurrency fetched from %s", url);
-            int sauceLabsAccountConcurrency;
-            if (slAccountInfo == null) {
-                logMessage = String.format("[SL] Account max. concurrency was NOT fetched from %s", url);
-                sauceLabsAccountConcurrency = 1;
-            } else {
-                sauceLabsAccountConcurrency = slAccountInfo.getAsJsonObject().getAsJsonObject("concurrency_limit").
-                        get("overall").getAsInt();
-            }
-            LOGGER.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, sauceLabsAccountConcurrency,
-                    SAUCE_LABS_PROXY_NAME);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-            getGa().trackException(e);
-        }
-        return addCapabilitiesToRegistrationRequest(registrationRequest, 1, SAUCE_LABS_PROXY_NAME);
+    static RegistrationRequest updateSLCapabilities(RegistrationRequest registrationRequest) {
+        registrationRequest.getConfiguration().capabilities.clear();
+        return addCapabilitiesToRegistrationRequest(registrationRequest, CONSERVATIVE_SLOT_COUNT,
+                SAUCE_LABS_PROXY_NAME);
     }
 
     @Override
@@ -121,6 +100,26 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
         return ".flv";
     }
 
+    /*
+        Sauce Labs tells the sessions running and the ones remaining, e.g.
+        {"concurrency": {"user": {"current": {"overall": 2}, "remaining": {"overall": 8}}}}
+     */
+    @Override
+    public CloudConcurrencyTracker.AccountConcurrency readAccountConcurrency() {
+        JsonElement concurrencyInfo = getCommonProxyUtilities().readJSONFromUrl(
+                String.format(SAUCE_LABS_ACCOUNT_CONCURRENCY, SAUCE_LABS_USER_NAME), SAUCE_LABS_USER_NAME,
+                SAUCE_LABS_ACCESS_KEY, 1);
+        if (concurrencyInfo == null) {
+            return null;
+        }
+        JsonObject accounts = concurrencyInfo.getAsJsonObject().getAsJsonObject("concurrency");
+        JsonObject account = accounts.has(SAUCE_LABS_USER_NAME) ? accounts.getAsJsonObject(SAUCE_LABS_USER_NAME) :
+                accounts.entrySet().iterator().next().getValue().getAsJsonObject();
+        int running = account.getAsJsonObject("current").get("overall").getAsInt();
+        int remaining = account.getAsJsonObject("remaining").get("overall").getAsInt();
+        return new CloudConcurrencyTracker.AccountConcurrency(running + remaining, running);
+    }
+
     @Override
     public String getProxyName() {
         return "SauceLabs";
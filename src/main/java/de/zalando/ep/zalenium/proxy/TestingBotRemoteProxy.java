@@ -25,30 +25,14 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
     private static final String TESTINGBOT_PROXY_NAME = "TestingBot";
 
     public TestingBotRemoteProxy(RegistrationRequest request, Registry registry) {
-        super(updateTBCapabilities(request, TESTINGBOT_ACCOUNT_INFO), registry);
+        super(updateTBCapabilities(request), registry);
     }
 
     @VisibleForTesting
-    private static RegistrationRequest updateTBCapabilities(RegistrationRequest registrationRequest, String url) {
-        JsonElement testingBotAccountInfo = getCommonProxyUtilities().readJSONFromUrl(url, TESTINGBOT_KEY, TESTINGBOT_SECRET);
-        try {
-            registrationRequest.getConfiguration().capabilities.clear();
-            String logMessage = String.format("[TB] Getting account max. concurrency from %s", url);
-            int testingBotAccountConcurrency;
-            if (testingBotAccountInfo == null) {
-                logMessage = String.format("[TB] Account max. concurrency was NOT fetched from %s", url);
-                testingBotAccountConcurrency = 1;
-            } else {
-                testingBotAccountConcurrency = testingBotAccountInfo.getAsJsonObject().get("max_concurrent").getAsInt();
-            }
-            logger.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, testingBotAccountConcurrency,
-                    TESTINGBOT_PROXY_NAME);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, e.toString(), e);
-            getGa().trackException(e);
-        }
-        return addCapabilitiesToRegistrationRequest(registrationRequest, 1, TESTINGBOT_PROXY_NAME);
+    private static RegistrationRequest updateTBCapabilities(RegistrationRequest registrationRequest) {
+        registrationRequest.getConfiguration().capabilities.clear();
+        return addCapabilitiesToRegistrationRequest(registrationRequest, CONSERVATIVE_SLOT_COUNT,
+                TESTINGBOT_PROXY_NAME);
     }
 
     @Override
@@ -118,6 +102,21 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
         return ".mp4";
     }
 
+    /*
+        TestingBot only tells the sessions the account allows, so only the sessions of this hub count as running.
+     */
+    @Override
+    public CloudConcurrencyTracker.AccountConcurrency readAccountConcurrency() {
+        JsonElement testingBotAccountInfo = getCommonProxyUtilities().readJSONFromUrl(TESTINGBOT_ACCOUNT_INFO,
+                TESTINGBOT_KEY, TESTINGBOT_SECRET, 1);
+        if (testingBotAccountInfo == null) {
+            return null;
+        }
+        return new CloudConcurrencyTracker.AccountConcurrency(
+                testingBotAccountInfo.getAsJsonObject().get("max_concurrent").getAsInt(),
+                CloudConcurrencyTracker.UNKNOWN);
+    }
+
     @Override
     public String getProxyName() {
         return TESTINGBOT_PROXY_NAME;
@@ -0,0 +1,297 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP client shared by all the calls to the cloud testing providers (account information, test information).
+ * Connections are pooled and kept alive, so a lookup does not need a new TLS handshake each time, every call has
+ * connect and read timeouts, and the JSON answers are parsed while they are read from the connection.
+ * Files (videos, logs) are written to disk while they are downloaded, so their size does not matter for the heap.
+ * Latency and errors are measured per host.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudHttpClient {
+
+    private static final int MAX_CONNECTIONS = 50;
+    private static final int MAX_CONNECTIONS_PER_HOST = 10;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+    private static final long IDLE_CONNECTION_TIMEOUT_SECS = 60;
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final String PARTIAL_DOWNLOAD_SUFFIX = ".part";
+    // Keeps the ETag or Last-Modified of the file a partial download belongs to.
+    private static final String VALIDATOR_SUFFIX = ".validator";
+    private static final Logger LOGGER = Logger.getLogger(CloudHttpClient.class.getName());
+    private static final CloudHttpClient sharedInstance = new CloudHttpClient(createHttpClient());
+
+    private final CloseableHttpClient httpClient;
+    private final ConcurrentMap<String, LatencyHistogram> hostMetrics = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    CloudHttpClient(CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public static CloudHttpClient getInstance() {
+        return sharedInstance;
+    }
+
+    private static CloseableHttpClient createHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                IDLE_CONNECTION_TIMEOUT_SECS, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setSocketTimeout(READ_TIMEOUT_MILLIS)
+                .build();
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECS, TimeUnit.SECONDS)
+                .useSystemProperties()
+                .build();
+    }
+
+    /*
+        GETs the given URL with basic authentication and parses the answer as JSON. Answers with an error status
+        are thrown as an IOException, so the caller can retry them.
+     */
+    public JsonElement getJson(String url, String user, String password) throws IOException {
+        HttpGet httpGet = new HttpGet(url);
+        httpGet.setHeader(HttpHeaders.AUTHORIZATION, basicAuthentication(user, password));
+        httpGet.setHeader(HttpHeaders.ACCEPT, "application/json");
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            HttpEntity entity = response.getEntity();
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode >= 400 || entity == null) {
+                    throw new IOException(String.format("%s answered %s", url, response.getStatusLine()));
+                }
+                JsonReader jsonReader = new JsonReader(new InputStreamReader(entity.getContent(),
+                        StandardCharsets.UTF_8));
+                JsonElement jsonElement = new JsonParser().parse(jsonReader);
+                failed = false;
+                return jsonElement;
+            } finally {
+                // Reading what is left keeps the connection in the pool for the next call.
+                EntityUtils.consumeQuietly(entity);
+            }
+        } finally {
+            recordLatency(url, System.currentTimeMillis() - start, failed);
+        }
+    }
+
+    /*
+        Downloads a file into "<target>.part" and renames it to the target once it is complete, so a file with the
+        final name is never partial. When a previous attempt left a partial file, only the missing bytes are
+        requested, with an If-Range holding the ETag or Last-Modified of the first answer, so the server sends the
+        whole file again when it changed meanwhile. Partial files without one are downloaded again from the start.
+        The authorization can be null when the file is public.
+     */
+    public void download(String url, Path target, String authorization) throws IOException {
+        Path partialFile = getPartialFile(target);
+        Path validatorFile = getValidatorFile(target);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        String validator = Files.exists(validatorFile) ?
+                new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8).trim() : "";
+        long offset = Files.exists(partialFile) && !validator.isEmpty() ? Files.size(partialFile) : 0;
+        HttpGet httpGet = new HttpGet(url);
+        if (authorization != null) {
+            httpGet.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        if (offset > 0) {
+            httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            httpGet.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            HttpEntity entity = response.getEntity();
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0
+                        && offset == getTotalLength(response)) {
+                    // The previous attempt got all the bytes but failed before renaming the file.
+                    LOGGER.log(Level.FINE, "{0} was already downloaded completely", url);
+                } else if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0) {
+                    // The partial file does not fit the file on the server, the next attempt starts from byte 0.
+                    deletePartialDownload(target);
+                    throw new IOException(String.format("%s answered %s for a partial file of %s bytes, it was " +
+                            "deleted", url, response.getStatusLine(), offset));
+                } else if (statusCode >= 400 || entity == null) {
+                    throw new IOException(String.format("%s answered %s", url, response.getStatusLine()));
+                } else {
+                    // Servers that do not support ranges answer with the whole file.
+                    boolean resumed = statusCode == HttpStatus.SC_PARTIAL_CONTENT && offset > 0
+                            && isContentRangeFrom(response, offset);
+                    if (offset > 0) {
+                        LOGGER.log(Level.INFO, "{0} {1} from byte {2}",
+                                new Object[]{resumed ? "Resuming" : "Restarting", url, resumed ? offset : 0});
+                    }
+                    if (!resumed) {
+                        saveValidator(response, validatorFile);
+                    }
+                    long written = writeTo(entity.getContent(), partialFile, resumed);
+                    if (entity.getContentLength() >= 0 && written < entity.getContentLength()) {
+                        throw new IOException(String.format("%s ended after %s of %s bytes", url, written,
+                                entity.getContentLength()));
+                    }
+                }
+                Files.move(partialFile, target, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(validatorFile);
+                failed = false;
+            } finally {
+                EntityUtils.consumeQuietly(entity);
+            }
+        } finally {
+            recordLatency(url, System.currentTimeMillis() - start, failed);
+        }
+    }
+
+    public static Path getPartialFile(Path target) {
+        return target.resolveSibling(target.getFileName() + PARTIAL_DOWNLOAD_SUFFIX);
+    }
+
+    private static Path getValidatorFile(Path target) {
+        return target.resolveSibling(target.getFileName() + PARTIAL_DOWNLOAD_SUFFIX + VALIDATOR_SUFFIX);
+    }
+
+    /*
+        Removes what an unfinished download of the target left behind.
+     */
+    public static void deletePartialDownload(Path target) throws IOException {
+        Files.deleteIfExists(getPartialFile(target));
+        Files.deleteIfExists(getValidatorFile(target));
+    }
+
+    /*
+        If-Range only takes a strong ETag, otherwise the Last-Modified date is used. Without either of them, the
+        partial file cannot be resumed.
+     */
+    private static void saveValidator(CloseableHttpResponse response, Path validatorFile) throws IOException {
+        Header eTag = response.getFirstHeader(HttpHeaders.ETAG);
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        String validator = "";
+        if (eTag != null && !eTag.getValue().trim().startsWith("W/")) {
+            validator = eTag.getValue().trim();
+        } else if (lastModified != null) {
+            validator = lastModified.getValue().trim();
+        }
+        if (validator.isEmpty()) {
+            Files.deleteIfExists(validatorFile);
+        } else {
+            Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /*
+        Copies the stream to the file through a fixed size buffer, appending to what is already there when the
+        download is resumed.
+     */
+    private static long writeTo(InputStream content, Path file, boolean append) throws IOException {
+        long written = 0;
+        try (ReadableByteChannel in = Channels.newChannel(content);
+             FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DOWNLOAD_BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        return written;
+    }
+
+    /*
+        A partial answer has to start where the partial file ends, e.g. "bytes 1024-2047/2048".
+     */
+    private static boolean isContentRangeFrom(CloseableHttpResponse response, long offset) {
+        Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        return contentRange != null && contentRange.getValue().trim().startsWith("bytes " + offset + "-");
+    }
+
+    /*
+        The total length of the file, the number after the slash in the Content-Range, or -1 when it is not known.
+     */
+    private static long getTotalLength(CloseableHttpResponse response) {
+        Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        if (contentRange != null) {
+            String value = contentRange.getValue();
+            try {
+                return Long.parseLong(value.substring(value.lastIndexOf('/') + 1).trim());
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Unexpected Content-Range " + value, e);
+            }
+        }
+        return -1;
+    }
+
+    public static String basicAuthentication(String user, String password) {
+        String userPass = user + ":" + password;
+        return "Basic " + new String(new Base64().encode(userPass.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8);
+    }
+
+    public Map<String, LatencyHistogram> getHostMetrics() {
+        return Collections.unmodifiableMap(hostMetrics);
+    }
+
+    private void recordLatency(String url, long latencyMillis, boolean failed) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            host = null;
+        }
+        hostMetrics.computeIfAbsent(host == null ? "unknown" : host, key -> new LatencyHistogram())
+                .record(latencyMillis, failed);
+    }
+
+    @Override
+    public String toString() {
+        return hostMetrics.toString();
+    }
+}
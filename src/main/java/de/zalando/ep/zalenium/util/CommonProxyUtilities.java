@@ -2,7 +2,6 @@ package de.zalando.ep.zalenium.util;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.ExecuteWatchdog;
@@ -10,9 +9,7 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.*;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -24,26 +21,18 @@ public class CommonProxyUtilities {
     private static final Logger LOG = Logger.getLogger(CommonProxyUtilities.class.getName());
 
     /*
-        Reading a JSON with DockerSelenium capabilities from a given URL
-        http://stackoverflow.com/questions/4308554/simplest-way-to-read-json-from-a-url-in-java
-        http://stackoverflow.com/questions/496651/connecting-to-remote-url-which-requires-authentication-using-java
+        Reading a JSON from a given URL with basic authentication, through the pooled client shared by all the
+        calls to the cloud testing providers.
      */
     public JsonElement readJSONFromUrl(String jsonUrl, String user, String password) {
-        int maxAttempts = 10;
+        return readJSONFromUrl(jsonUrl, user, password, 10);
+    }
+
+    public JsonElement readJSONFromUrl(String jsonUrl, String user, String password, int maxAttempts) {
         int currentAttempts = 0;
         while (currentAttempts < maxAttempts) {
             try {
-                URL url = new URL(jsonUrl);
-                URLConnection urlConnection = url.openConnection();
-                String userPass = user + ":" + password;
-                String basicAuth = "Basic " + new String(new Base64().encode(userPass.getBytes()));
-                urlConnection.setRequestProperty("Authorization", basicAuth);
-
-                InputStream is = urlConnection.getInputStream();
-                BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-                String jsonText = readAll(rd);
-                is.close();
-                return new JsonParser().parse(jsonText);
+                return CloudHttpClient.getInstance().getJson(jsonUrl, user, password);
             } catch (Exception e) {
                 currentAttempts++;
                 LOG.log(Level.SEVERE, e.toString(), e);
@@ -64,9 +53,7 @@ public class CommonProxyUtilities {
 
     public JsonElement readJSONFromFile(String fileName) {
         try(FileReader fr = new FileReader(new File(currentLocalPath(), fileName))) {
-            BufferedReader rd = new BufferedReader(fr);
-            String jsonText = readAll(rd);
-            return new JsonParser().parse(jsonText);
+            return new JsonParser().parse(new BufferedReader(fr));
         } catch (Exception e) {
             LOG.log(Level.SEVERE, e.toString(), e);
         }
@@ -85,64 +72,14 @@ public class CommonProxyUtilities {
     }
 
     /*
-        Downloading a file, method adapted from:
-        http://code.runnable.com/Uu83dm5vSScIAACw/download-a-file-from-the-web-for-java-files-and-save
+        Downloading a file straight to disk, it fails with an IOException when the file is not ready yet. A failed
+        attempt leaves a partial file, which the next attempt resumes instead of starting over.
      */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void downloadFile(String fileUrl, String fileNameWithFullPath, String user, String password,
-                             boolean authenticate)
-            throws InterruptedException {
-        int maxAttempts = 10;
-        int currentAttempts = 0;
-        // Videos are usually not ready right away, we put a little sleep to avoid falling into the catch/retry.
-        Thread.sleep(1000 * 5);
-        while (currentAttempts < maxAttempts) {
-            try {
-                URL link = new URL(fileUrl);
-                String userPass = user + ":" + password;
-                URLConnection urlConnection = link.openConnection();
-                if (authenticate) {
-                    String basicAuth = "Basic " + new String(new Base64().encode(userPass.getBytes()));
-                    urlConnection.setRequestProperty("Authorization", basicAuth);
-                }
-
-                //Code to download
-                InputStream in = new BufferedInputStream(urlConnection.getInputStream());
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                byte[] buf = new byte[1024];
-                int n;
-                while (-1!=(n=in.read(buf)))
-                {
-                    out.write(buf, 0, n);
-                }
-                out.close();
-                in.close();
-                byte[] response = out.toByteArray();
-                File fileToDownload = new File(fileNameWithFullPath);
-                File fileToDownloadFolder = fileToDownload.getParentFile();
-                if (!fileToDownloadFolder.exists()) {
-                    fileToDownloadFolder.mkdirs();
-                }
-                FileOutputStream fos = new FileOutputStream(fileNameWithFullPath);
-                fos.write(response);
-                fos.close();
-                //End download code
-                currentAttempts = maxAttempts + 1;
-                LOG.log(Level.INFO, "File downloaded to " + fileNameWithFullPath);
-            } catch (IOException e) {
-                // Catching this exception generally means that the file was not ready, so we try again.
-                currentAttempts++;
-                if (currentAttempts >= maxAttempts) {
-                    LOG.log(Level.SEVERE, e.toString(), e);
-                } else {
-                    LOG.log(Level.INFO, "Trying download once again from " + fileUrl);
-                    Thread.sleep(currentAttempts * 5 * 1000);
-                }
-            } catch (Exception e) {
-                currentAttempts = maxAttempts + 1;
-                LOG.log(Level.SEVERE, e.toString(), e);
-            }
-        }
+                             boolean authenticate) throws IOException {
+        String authorization = authenticate ? CloudHttpClient.basicAuthentication(user, password) : null;
+        CloudHttpClient.getInstance().download(fileUrl, Paths.get(fileNameWithFullPath), authorization);
+        LOG.log(Level.INFO, "File downloaded to " + fileNameWithFullPath);
     }
 
     public void convertFlvFileToMP4(TestInformation testInformation) {
@@ -186,13 +123,4 @@ public class CommonProxyUtilities {
         return dateFormat.format(new Date());
     }
 
-    private static String readAll(Reader reader) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = reader.read()) != -1) {
-            sb.append((char) cp);
-        }
-        return sb.toString();
-    }
-
 }
@@ -47,7 +47,9 @@ public class Dashboard {
                 replace("{proxyName}", testInformation.getProxyName()).
                 replace("{seleniumLogFileName}", testInformation.getSeleniumLogFileName()).
                 replace("{browserDriverLogFileName}", testInformation.getBrowserDriverLogFileName()).
-                replace("{browserConsoleLogFileName}", testInformation.getBrowserConsoleLogFileName());
+                replace("{browserConsoleLogFileName}", testInformation.getBrowserConsoleLogFileName()).
+                replace("{sessionStartOffsetMillis}",
+                        String.valueOf(testInformation.getSessionStartOffsetInVideoMillis()));
 
         File testList = new File(localVideosPath, "list.html");
         // Putting the new entry at the top
@@ -0,0 +1,106 @@
+package de.zalando.ep.zalenium.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts calls in fixed latency buckets, plus how many of them failed, so slow or failing calls can be spotted
+ * without keeping every single measurement.
+ */
+@SuppressWarnings("WeakerAccess")
+public class LatencyHistogram {
+
+    // Upper bounds (inclusive) of the buckets, the last bucket takes everything above the last bound.
+    private static final long[] BUCKET_BOUNDS_MILLIS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLongArray errorBucketCounts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong errors = new AtomicLong(0);
+    private final AtomicLong totalMillis = new AtomicLong(0);
+    private final AtomicLong maxMillis = new AtomicLong(0);
+
+    public void record(long latencyMillis, boolean failed) {
+        int bucket = getBucket(latencyMillis);
+        bucketCounts.incrementAndGet(bucket);
+        calls.incrementAndGet();
+        if (failed) {
+            errorBucketCounts.incrementAndGet(bucket);
+            errors.incrementAndGet();
+        }
+        totalMillis.addAndGet(latencyMillis);
+        maxMillis.accumulateAndGet(latencyMillis, Math::max);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getAverageMillis() {
+        long count = calls.get();
+        return count == 0 ? 0 : totalMillis.get() / count;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public long[] getBucketCounts() {
+        return toArray(bucketCounts);
+    }
+
+    public long[] getErrorBucketCounts() {
+        return toArray(errorBucketCounts);
+    }
+
+    public static long[] getBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    /*
+        Smallest bucket bound that covers the given percentile (0-100) of the calls, or -1 when it is above the
+        last bound.
+     */
+    public long getPercentileUpperBoundMillis(double percentile) {
+        long count = calls.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            accumulated += bucketCounts.get(i);
+            if (accumulated >= target) {
+                return BUCKET_BOUNDS_MILLIS[i];
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls: %s, errors: %s, avg: %s ms, p95 <= %s ms, max: %s ms", getCalls(), getErrors(),
+                getAverageMillis(), getPercentileUpperBoundMillis(95), getMaxMillis());
+    }
+
+    private static int getBucket(long latencyMillis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (latencyMillis <= BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    private static long[] toArray(AtomicLongArray atomicLongArray) {
+        long[] values = new long[atomicLongArray.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = atomicLongArray.get(i);
+        }
+        return values;
+    }
+}
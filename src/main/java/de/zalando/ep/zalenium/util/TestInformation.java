@@ -26,6 +26,10 @@ public class TestInformation {
     private String logsFolderPath;
     private String testNameNoExtension;
     private boolean videoRecorded;
+    // Taken once, so the video and the logs keep the same name when the file extension is set later.
+    private final String timestamp = commonProxyUtilities.getCurrentDateAndTimeFormatted();
+    private volatile long sessionStartTime = 0;
+    private volatile long videoStartTime = 0;
 
     public TestInformation(String seleniumSessionId, String testName, String proxyName, String browser,
                            String browserVersion, String platform) {
@@ -57,6 +61,34 @@ public class TestInformation {
         this.videoRecorded = videoRecorded;
     }
 
+    public long getSessionStartTime() {
+        return sessionStartTime;
+    }
+
+    public void setSessionStartTime(long sessionStartTime) {
+        this.sessionStartTime = sessionStartTime;
+    }
+
+    public long getVideoStartTime() {
+        return videoStartTime;
+    }
+
+    public void setVideoStartTime(long videoStartTime) {
+        this.videoStartTime = videoStartTime;
+    }
+
+    /*
+        How far the session start is into the video, so the video can be trimmed or played from the test start.
+        The recording starts before the session, it is only negative when the session started before the recording
+        was running. Zero when one of the times is unknown.
+     */
+    public long getSessionStartOffsetInVideoMillis() {
+        if (sessionStartTime == 0 || videoStartTime == 0) {
+            return 0;
+        }
+        return sessionStartTime - videoStartTime;
+    }
+
     public String getVideoFolderPath() {
         return videoFolderPath;
     }
@@ -126,7 +158,7 @@ public class TestInformation {
                 replace("{testName}", getTestName()).
                 replace("{browser}", this.browser).
                 replace("{platform}", this.platform).
-                replace("{timestamp}", commonProxyUtilities.getCurrentDateAndTimeFormatted()).
+                replace("{timestamp}", timestamp).
                 replace(" ", "_");
         this.fileName = FILE_NAME_TEMPLATE.replace("{fileName}", testNameNoExtension).
                 replace("{fileExtension}", fileExtension).
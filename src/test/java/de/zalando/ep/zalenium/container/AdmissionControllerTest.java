@@ -0,0 +1,100 @@
+package de.zalando.ep.zalenium.container;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.MemoryStats;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControllerTest {
+
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    private HostResourceReader hostResourceReader;
+    private DockerClient dockerClient;
+    private Collection<String> runningContainerIds;
+    private AdmissionController admissionController;
+
+    @Before
+    public void setUp() {
+        hostResourceReader = mock(HostResourceReader.class);
+        dockerClient = mock(DockerClient.class);
+        runningContainerIds = Collections.emptyList();
+        admissionController = new AdmissionController(hostResourceReader, () -> dockerClient,
+                () -> runningContainerIds, 90, GB);
+    }
+
+    @Test
+    public void containersAreAdmittedUntilTheFirstSample() {
+        Assert.assertTrue(admissionController.canAdmit());
+    }
+
+    @Test
+    public void cpuAdmissionResumesOnlyWellBelowTheThreshold() throws Exception {
+        // 4 cpus, a container without stats counts as half a cpu
+        sample(4, 3.5, 16 * GB);
+        Assert.assertFalse(admissionController.canAdmit());
+
+        sample(4, 3.0, 16 * GB);
+        Assert.assertFalse(admissionController.canAdmit());
+
+        sample(4, 2.0, 16 * GB);
+        Assert.assertTrue(admissionController.canAdmit());
+    }
+
+    @Test
+    public void memoryAdmissionResumesOnlyWellAboveTheThreshold() throws Exception {
+        // a container without stats counts as 1GB
+        sample(4, 0, 1.5 * GB);
+        Assert.assertFalse(admissionController.canAdmit());
+
+        sample(4, 0, 2.2 * GB);
+        Assert.assertFalse(admissionController.canAdmit());
+
+        sample(4, 0, 3 * GB);
+        Assert.assertTrue(admissionController.canAdmit());
+    }
+
+    @Test
+    public void containersAdmittedSinceTheLastSampleAreCounted() throws Exception {
+        sample(4, 2.0, 16 * GB);
+        Assert.assertTrue(admissionController.canAdmit());
+        admissionController.containerAdmitted();
+        admissionController.containerAdmitted();
+        Assert.assertTrue(admissionController.canAdmit());
+        admissionController.containerAdmitted();
+        Assert.assertFalse(admissionController.canAdmit());
+
+        sample(4, 2.0, 16 * GB);
+        Assert.assertFalse(admissionController.isAdmitting());
+    }
+
+    @Test
+    public void memoryOfTheRunningContainersIsTakenFromDockerStats() throws Exception {
+        ContainerStats containerStats = mock(ContainerStats.class);
+        MemoryStats memoryStats = mock(MemoryStats.class);
+        when(memoryStats.usage()).thenReturn(3 * GB);
+        when(containerStats.memoryStats()).thenReturn(memoryStats);
+        when(dockerClient.stats(anyString())).thenReturn(containerStats);
+        runningContainerIds = Arrays.asList("first", "second");
+
+        // With the default 1GB per container it would fit
+        sample(4, 0, 3.5 * GB);
+        Assert.assertFalse(admissionController.canAdmit());
+    }
+
+    private void sample(double cpus, double load, double memoryAvailable) throws Exception {
+        when(hostResourceReader.read()).thenReturn(new HostResourceReader.HostResources(cpus, load, 16 * GB,
+                (long) memoryAvailable));
+        admissionController.sample();
+    }
+}
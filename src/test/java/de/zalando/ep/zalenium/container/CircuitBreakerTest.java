@@ -0,0 +1,57 @@
+package de.zalando.ep.zalenium.container;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, 1000, 0, () -> 0L);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess(5);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        Assert.assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void slowCallsCountAsFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 1000, 500, () -> 0L);
+
+        circuitBreaker.recordSuccess(600);
+        circuitBreaker.recordSuccess(700);
+
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void onlyOneTrialCallIsAllowedAfterTheOpenTime() {
+        AtomicLong clock = new AtomicLong(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, 0, clock::get);
+        circuitBreaker.recordFailure();
+
+        clock.set(1000);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        // The trial call failed, the circuit opens again
+        circuitBreaker.recordFailure();
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        clock.set(2000);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess(5);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest());
+    }
+}
@@ -0,0 +1,137 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Event;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContainerInventoryTest {
+
+    private static final String IMAGE = "elgalu/selenium";
+
+    private DockerClient dockerClient;
+    private ContainerInventory containerInventory;
+
+    @Before
+    public void setUp() {
+        dockerClient = mock(DockerClient.class);
+        containerInventory = new ContainerInventory(dockerClient, IMAGE);
+    }
+
+    @Test
+    public void reconcileCountsOnlyRunningDockerSeleniumContainers() throws DockerException, InterruptedException {
+        List<Container> containers = new ArrayList<>();
+        containers.add(getContainer("c1", IMAGE + ":latest", "running", "chrome"));
+        containers.add(getContainer("c2", IMAGE + ":latest", "exited", "chrome"));
+        containers.add(getContainer("c3", IMAGE + ":latest", "running", "firefox"));
+        containers.add(getContainer("c4", "nginx:latest", "running", null));
+        when(dockerClient.listContainers(any(DockerClient.ListContainersParam.class))).thenReturn(containers);
+
+        containerInventory.reconcile();
+
+        Assert.assertEquals(2, containerInventory.getRunningCount());
+        Assert.assertEquals(1, containerInventory.getRunningCount("chrome"));
+        Assert.assertEquals(1, containerInventory.getRunningCount("FIREFOX"));
+        Assert.assertEquals(2, containerInventory.getRunningCountByImage(IMAGE + ":latest"));
+    }
+
+    @Test
+    public void eventsUpdateTheCounts() {
+        containerInventory.processEvent(getEvent("create", "c1", IMAGE + ":latest", "chrome"));
+        containerInventory.processEvent(getEvent("start", "c1", IMAGE + ":latest", "chrome"));
+        containerInventory.processEvent(getEvent("start", "c2", IMAGE + ":latest", "firefox"));
+        containerInventory.processEvent(getEvent("start", "c3", "nginx:latest", null));
+        Assert.assertEquals(2, containerInventory.getRunningCount());
+
+        containerInventory.processEvent(getEvent("die", "c1", IMAGE + ":latest", "chrome"));
+        Assert.assertEquals(1, containerInventory.getRunningCount());
+        Assert.assertEquals(0, containerInventory.getRunningCount("chrome"));
+
+        containerInventory.processEvent(getEvent("destroy", "c2", IMAGE + ":latest", "firefox"));
+        Assert.assertEquals(0, containerInventory.getRunningCount());
+    }
+
+    @Test
+    public void createdContainersAreCountedBeforeTheirEvents() {
+        containerInventory.containerCreated("c1", IMAGE + ":latest", "chrome");
+        Assert.assertEquals(1, containerInventory.getRunningCount("chrome"));
+
+        // The start event for the same container should not count it twice.
+        containerInventory.processEvent(getEvent("start", "c1", IMAGE + ":latest", "chrome"));
+        Assert.assertEquals(1, containerInventory.getRunningCount());
+    }
+
+    @Test
+    public void removedNodeContainersAreNotifiedWithTheirPort() {
+        Map<String, Integer> removedNodeContainers = new HashMap<>();
+        containerInventory.addNodeContainerRemovedListener(removedNodeContainers::put);
+
+        containerInventory.processEvent(getEvent("die", "c1", IMAGE + ":latest", "chrome", "40001"));
+        Assert.assertTrue(removedNodeContainers.isEmpty());
+        containerInventory.processEvent(getEvent("destroy", "c1", IMAGE + ":latest", "chrome", "40001"));
+        // Containers without the label are not nodes created by Zalenium.
+        containerInventory.processEvent(getEvent("destroy", "c2", "nginx:latest", null));
+
+        Assert.assertEquals(ImmutableMap.of("c1", 40001), removedNodeContainers);
+    }
+
+    @Test
+    public void reconcileFixesDriftFromMissedEvents() throws DockerException, InterruptedException {
+        containerInventory.processEvent(getEvent("start", "c1", IMAGE + ":latest", "chrome"));
+        containerInventory.processEvent(getEvent("start", "c2", IMAGE + ":latest", "chrome"));
+        when(dockerClient.listContainers(any(DockerClient.ListContainersParam.class)))
+                .thenReturn(new ArrayList<>());
+
+        // Both events were processed before the listing, so the listing wins.
+        containerInventory.reconcile();
+
+        Assert.assertEquals(0, containerInventory.getRunningCount());
+    }
+
+    private static Container getContainer(String id, String image, String state, String browser) {
+        Container container = mock(Container.class);
+        when(container.id()).thenReturn(id);
+        when(container.image()).thenReturn(image);
+        when(container.state()).thenReturn(state);
+        ImmutableMap<String, String> labels = browser == null ? ImmutableMap.of() :
+                ImmutableMap.of(ContainerInventory.BROWSER_LABEL, browser);
+        when(container.labels()).thenReturn(labels);
+        return container;
+    }
+
+    private static Event getEvent(String action, String id, String image, String browser) {
+        return getEvent(action, id, image, browser, null);
+    }
+
+    private static Event getEvent(String action, String id, String image, String browser, String nodePort) {
+        Event event = mock(Event.class);
+        Event.Actor actor = mock(Event.Actor.class);
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("image", image);
+        if (browser != null) {
+            attributes.put(ContainerInventory.BROWSER_LABEL, browser);
+        }
+        if (nodePort != null) {
+            attributes.put(ContainerInventory.NODE_PORT_LABEL, nodePort);
+        }
+        when(actor.id()).thenReturn(id);
+        when(actor.attributes()).thenReturn(ImmutableMap.copyOf(attributes));
+        when(event.type()).thenReturn(Event.Type.CONTAINER);
+        when(event.action()).thenReturn(action);
+        when(event.actor()).thenReturn(actor);
+        return event;
+    }
+}
@@ -0,0 +1,74 @@
+package de.zalando.ep.zalenium.container;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContainerProvisionerTest {
+
+    private ContainerProvisioner containerProvisioner;
+
+    @After
+    public void tearDown() {
+        if (containerProvisioner != null) {
+            containerProvisioner.shutdown();
+        }
+    }
+
+    @Test
+    public void createsRunInParallelUpToTheConfiguredLimit() throws Exception {
+        containerProvisioner = new ContainerProvisioner(3, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        List<CompletableFuture<Integer>> creates = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int nodePort = 40000 + i;
+            creates.add(containerProvisioner.submit("node " + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return nodePort;
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (containerProvisioner.getInFlightCreates() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, containerProvisioner.getInFlightCreates());
+        Assert.assertEquals(3, containerProvisioner.getQueueDepth());
+
+        release.countDown();
+        CompletableFuture.allOf(creates.toArray(new CompletableFuture[creates.size()])).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, maxRunning.get());
+        Assert.assertEquals(6, containerProvisioner.getCompletedCreates());
+        Assert.assertEquals(0, containerProvisioner.getInFlightCreates());
+    }
+
+    @Test
+    public void failedCreatesAreCounted() throws Exception {
+        containerProvisioner = new ContainerProvisioner(1, 100);
+
+        int failedNodePort = containerProvisioner.submit("failing node", () -> {
+            throw new IllegalStateException("Docker is not available");
+        }).get(5, TimeUnit.SECONDS);
+        int notCreatedNodePort = containerProvisioner.submit("not created node", () -> -1).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(-1, failedNodePort);
+        Assert.assertEquals(-1, notCreatedNodePort);
+        Assert.assertEquals(2, containerProvisioner.getFailedCreates());
+        Assert.assertEquals(0, containerProvisioner.getCompletedCreates());
+    }
+}
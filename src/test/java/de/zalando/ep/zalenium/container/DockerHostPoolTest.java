@@ -0,0 +1,107 @@
+package de.zalando.ep.zalenium.container;
+
+import com.spotify.docker.client.DockerClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DockerHostPoolTest {
+
+    private final AtomicLong clock = new AtomicLong(0);
+
+    @Test
+    public void containersGoToTheHostWithTheMostFreeCapacity() {
+        DockerHost almostFullHost = dockerHost("10.0.0.2", 10, 8);
+        DockerHost emptyHost = dockerHost("10.0.0.3", 10, 2);
+        DockerHost smallHost = dockerHost("10.0.0.4", 5, 0);
+        DockerHostPool dockerHostPool = new DockerHostPool(Arrays.asList(almostFullHost, emptyHost, smallHost));
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(emptyHost, dockerHostPool.reserve(false));
+        }
+        Assert.assertSame(smallHost, dockerHostPool.reserve(false));
+        Assert.assertEquals(4, emptyHost.getContainersBeingCreated());
+
+        dockerHostPool.release(emptyHost);
+        Assert.assertEquals(3, emptyHost.getContainersBeingCreated());
+        Assert.assertEquals(10, dockerHostPool.getRunningCount());
+    }
+
+    @Test
+    public void fullHostsAreOnlyUsedWhenTheCreationIsForced() {
+        DockerHost firstHost = dockerHost("10.0.0.2", 2, 2);
+        DockerHost secondHost = dockerHost("10.0.0.3", 3, 3);
+        DockerHostPool dockerHostPool = new DockerHostPool(Arrays.asList(firstHost, secondHost));
+
+        Assert.assertNull(dockerHostPool.reserve(false));
+        Assert.assertNotNull(dockerHostPool.reserve(true));
+    }
+
+    @Test
+    public void hostIsSkippedAfterFailedCreationsUntilItGetsANewChance() {
+        DockerHost failingHost = dockerHost("10.0.0.2", 10, 0);
+        DockerHost busyHost = dockerHost("10.0.0.3", 10, 5);
+        DockerHostPool dockerHostPool = new DockerHostPool(Arrays.asList(failingHost, busyHost));
+
+        for (int i = 0; i < 3; i++) {
+            DockerHost dockerHost = dockerHostPool.reserve(false);
+            Assert.assertSame(failingHost, dockerHost);
+            dockerHost.creationFailed();
+            dockerHostPool.release(dockerHost);
+        }
+        Assert.assertFalse(failingHost.isHealthy());
+        Assert.assertSame(busyHost, dockerHostPool.reserve(false));
+
+        clock.addAndGet(30 * 1000L);
+        Assert.assertTrue(failingHost.isHealthy());
+        Assert.assertSame(failingHost, dockerHostPool.reserve(false));
+        failingHost.creationSucceeded();
+        Assert.assertTrue(failingHost.isHealthy());
+    }
+
+    @Test
+    public void nodesAreMappedToTheirRemoteHost() {
+        DockerHost localHost = new DockerHost("local", "localhost", true, () -> mock(DockerClient.class),
+                () -> inventory(0), () -> mock(DockerImageCache.class), () -> 10);
+        DockerHost remoteHost = dockerHost("10.0.0.2", 10, 0);
+        DockerHostPool dockerHostPool = new DockerHostPool(Arrays.asList(localHost, remoteHost));
+
+        Assert.assertSame(remoteHost, dockerHostPool.getRemoteHostForNode("10.0.0.2"));
+        Assert.assertNull(dockerHostPool.getRemoteHostForNode("localhost"));
+        Assert.assertNull(dockerHostPool.getRemoteHostForNode("10.0.0.9"));
+    }
+
+    @Test
+    public void dockerHostsAreParsedFromTheConfiguration() {
+        List<DockerHost> dockerHosts = DockerHostPool.parseDockerHosts(
+                "tcp://10.0.0.2:2375;192.168.0.2;20, tcp://10.0.0.3:2375 ,tcp://10.0.0.4:2375;;notANumber",
+                7, "elgalu/selenium", uri -> mock(DockerClient.class));
+
+        Assert.assertEquals(2, dockerHosts.size());
+        Assert.assertEquals("tcp://10.0.0.2:2375", dockerHosts.get(0).getName());
+        Assert.assertEquals("192.168.0.2", dockerHosts.get(0).getNodeAddress());
+        Assert.assertEquals(20, dockerHosts.get(0).getMaxContainers());
+        Assert.assertEquals("10.0.0.3", dockerHosts.get(1).getNodeAddress());
+        Assert.assertEquals(7, dockerHosts.get(1).getMaxContainers());
+        Assert.assertFalse(dockerHosts.get(1).isLocal());
+    }
+
+    private DockerHost dockerHost(String nodeAddress, int maxContainers, int runningContainers) {
+        ContainerInventory inventory = inventory(runningContainers);
+        DockerClient dockerClient = mock(DockerClient.class);
+        return new DockerHost(nodeAddress, nodeAddress, false, () -> dockerClient, () -> inventory,
+                () -> mock(DockerImageCache.class), () -> maxContainers, clock::get);
+    }
+
+    private static ContainerInventory inventory(int runningContainers) {
+        ContainerInventory inventory = mock(ContainerInventory.class);
+        when(inventory.getRunningCount()).thenReturn(runningContainers);
+        return inventory;
+    }
+}
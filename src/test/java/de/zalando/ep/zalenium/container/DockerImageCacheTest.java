@@ -0,0 +1,109 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerImageCacheTest {
+
+    private static final String IMAGE = "elgalu/selenium";
+
+    private DockerClient dockerClient;
+
+    @Before
+    public void setUp() throws DockerException, InterruptedException {
+        dockerClient = mock(DockerClient.class);
+        List<Image> images = new ArrayList<>();
+        images.add(getImage(IMAGE + ":3.3.1-p1", "1490000000"));
+        images.add(getImage(IMAGE + ":3.3.1-p2", "1490000100"));
+        images.add(getImage(null, "1490000200"));
+        when(dockerClient.listImages(any(DockerClient.ListImagesParam.class))).thenReturn(images);
+
+        ContainerConfig config = mock(ContainerConfig.class);
+        when(config.labels()).thenReturn(ImmutableMap.of("selenium3_chrome_version", "57.0"));
+        ImageInfo imageInfo = mock(ImageInfo.class);
+        when(imageInfo.config()).thenReturn(config);
+        when(dockerClient.inspectImage(anyString())).thenReturn(imageInfo);
+    }
+
+    @Test
+    public void latestTaggedImageIsResolvedOnlyOnce() throws DockerException, InterruptedException {
+        DockerImageCache imageCache = new DockerImageCache(dockerClient, IMAGE);
+
+        DockerImageCache.ResolvedImage resolvedImage = imageCache.getResolvedImage();
+        imageCache.getResolvedImage();
+
+        Assert.assertEquals(IMAGE + ":3.3.1-p2", resolvedImage.getImage());
+        Assert.assertEquals("57.0", resolvedImage.getLabel("selenium3_chrome_version"));
+        verify(dockerClient, times(1)).listImages(any(DockerClient.ListImagesParam.class));
+        verify(dockerClient, times(1)).inspectImage(anyString());
+    }
+
+    @Test
+    public void imageEventsInvalidateTheCache() throws DockerException, InterruptedException {
+        DockerImageCache imageCache = new DockerImageCache(dockerClient, IMAGE);
+        imageCache.getResolvedImage();
+
+        imageCache.processEvent(getEvent("pull", "nginx:latest"));
+        imageCache.getResolvedImage();
+        verify(dockerClient, times(1)).listImages(any(DockerClient.ListImagesParam.class));
+
+        imageCache.processEvent(getEvent("pull", IMAGE + ":latest"));
+        imageCache.getResolvedImage();
+        verify(dockerClient, times(2)).listImages(any(DockerClient.ListImagesParam.class));
+    }
+
+    @Test
+    public void expiredImageIsResolvedAgain() throws DockerException, InterruptedException {
+        DockerImageCache imageCache = new DockerImageCache(dockerClient, IMAGE, 0);
+
+        imageCache.getResolvedImage();
+        imageCache.getResolvedImage();
+
+        verify(dockerClient, times(2)).listImages(any(DockerClient.ListImagesParam.class));
+    }
+
+    @Test
+    public void imageNameIsUsedWhenNoImageIsDownloaded() throws DockerException, InterruptedException {
+        when(dockerClient.listImages(any(DockerClient.ListImagesParam.class))).thenReturn(new ArrayList<>());
+        DockerImageCache imageCache = new DockerImageCache(dockerClient, IMAGE);
+
+        Assert.assertEquals(IMAGE, imageCache.getResolvedImage().getImage());
+        Assert.assertNull(imageCache.getResolvedImage().getLabel("selenium3_chrome_version"));
+    }
+
+    private static Image getImage(String repoTag, String created) {
+        Image image = mock(Image.class);
+        when(image.repoTags()).thenReturn(repoTag == null ? null : ImmutableList.of(repoTag));
+        when(image.created()).thenReturn(created);
+        return image;
+    }
+
+    private static Event getEvent(String action, String image) {
+        Event event = mock(Event.class);
+        Event.Actor actor = mock(Event.Actor.class);
+        when(actor.id()).thenReturn(image);
+        when(event.type()).thenReturn(Event.Type.IMAGE);
+        when(event.action()).thenReturn(action);
+        when(event.actor()).thenReturn(actor);
+        return event;
+    }
+}
@@ -0,0 +1,77 @@
+package de.zalando.ep.zalenium.container;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HostResourceReaderTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path rootPath;
+
+    @Before
+    public void setUp() throws IOException {
+        rootPath = temporaryFolder.getRoot().toPath();
+        writeFile("proc/cpuinfo", "processor\t: 0\nmodel name\t: cpu\nprocessor\t: 1\nprocessor\t: 2\nprocessor\t: 3\n");
+        writeFile("proc/loadavg", "2.50 1.75 1.10 3/512 12345\n");
+        writeFile("proc/meminfo", "MemTotal:       16777216 kB\nMemFree:         1048576 kB\n" +
+                "MemAvailable:    8388608 kB\n");
+    }
+
+    @Test
+    public void machineValuesAreUsedWithoutCgroupLimits() throws IOException {
+        writeFile("sys/fs/cgroup/cpu.max", "max 100000\n");
+        writeFile("sys/fs/cgroup/memory.max", "max\n");
+
+        HostResourceReader.HostResources hostResources = new HostResourceReader(rootPath).read();
+
+        Assert.assertEquals(4, hostResources.getCpus(), 0.001);
+        Assert.assertEquals(2.5, hostResources.getLoad(), 0.001);
+        Assert.assertEquals(16384 * MB, hostResources.getMemoryTotal());
+        Assert.assertEquals(8192 * MB, hostResources.getMemoryAvailable());
+    }
+
+    @Test
+    public void cgroupV2LimitsAreUsedWhenLower() throws IOException {
+        writeFile("sys/fs/cgroup/cpu.max", "200000 100000\n");
+        writeFile("sys/fs/cgroup/memory.max", String.valueOf(4096 * MB));
+        writeFile("sys/fs/cgroup/memory.current", String.valueOf(3072 * MB));
+
+        HostResourceReader.HostResources hostResources = new HostResourceReader(rootPath).read();
+
+        Assert.assertEquals(2, hostResources.getCpus(), 0.001);
+        Assert.assertEquals(4096 * MB, hostResources.getMemoryTotal());
+        Assert.assertEquals(1024 * MB, hostResources.getMemoryAvailable());
+    }
+
+    @Test
+    public void cgroupV1LimitsAreUsedWhenLower() throws IOException {
+        writeFile("sys/fs/cgroup/cpu/cpu.cfs_quota_us", "150000");
+        writeFile("sys/fs/cgroup/cpu/cpu.cfs_period_us", "100000");
+        writeFile("sys/fs/cgroup/memory/memory.limit_in_bytes", String.valueOf(2048 * MB));
+        writeFile("sys/fs/cgroup/memory/memory.usage_in_bytes", String.valueOf(512 * MB));
+
+        HostResourceReader.HostResources hostResources = new HostResourceReader(rootPath).read();
+
+        Assert.assertEquals(1.5, hostResources.getCpus(), 0.001);
+        Assert.assertEquals(2048 * MB, hostResources.getMemoryTotal());
+        Assert.assertEquals(1536 * MB, hostResources.getMemoryAvailable());
+    }
+
+    private void writeFile(String path, String content) throws IOException {
+        Path file = rootPath.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package de.zalando.ep.zalenium.container;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class NodePortAllocatorTest {
+
+    @Test
+    public void portsAreNotHandedOutTwice() {
+        NodePortAllocator allocator = getAllocator(40000, 40002, Collections.emptySet());
+
+        Assert.assertEquals(40000, allocator.allocate());
+        Assert.assertEquals(40001, allocator.allocate());
+        Assert.assertEquals(40002, allocator.allocate());
+        Assert.assertEquals(-1, allocator.allocate());
+        Assert.assertEquals(3, allocator.getAllocatedCount());
+    }
+
+    @Test
+    public void releasedPortsAreReusedAfterTheRestOfTheRange() {
+        NodePortAllocator allocator = getAllocator(40000, 40002, Collections.emptySet());
+        allocator.allocate();
+        allocator.allocate();
+
+        allocator.release(40000);
+
+        Assert.assertFalse(allocator.isAllocated(40000));
+        Assert.assertEquals(40002, allocator.allocate());
+        Assert.assertEquals(40000, allocator.allocate());
+    }
+
+    @Test
+    public void portsUsedOutsideOfZaleniumAreSkipped() {
+        Set<Integer> usedPorts = new HashSet<>();
+        usedPorts.add(40000);
+        NodePortAllocator allocator = getAllocator(40000, 40001, usedPorts);
+
+        Assert.assertEquals(40001, allocator.allocate());
+        Assert.assertFalse(allocator.isAllocated(40000));
+        Assert.assertEquals(-1, allocator.allocate());
+    }
+
+    @Test
+    public void concurrentAllocationsGetDifferentPorts() throws InterruptedException {
+        NodePortAllocator allocator = getAllocator(40000, 40999, Collections.emptySet());
+        Set<Integer> allocatedPorts = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 800; i++) {
+            executorService.execute(() -> allocatedPorts.add(allocator.allocate()));
+        }
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(800, allocatedPorts.size());
+        Assert.assertEquals(800, allocator.getAllocatedCount());
+    }
+
+    private static NodePortAllocator getAllocator(int lowerBoundary, int upperBoundary, Set<Integer> usedPorts) {
+        return new NodePortAllocator(lowerBoundary, upperBoundary) {
+            @Override
+            protected boolean isPortAvailable(int port) {
+                return !usedPorts.contains(port);
+            }
+        };
+    }
+}
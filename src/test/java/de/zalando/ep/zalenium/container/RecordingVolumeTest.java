@@ -0,0 +1,57 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerMount;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecordingVolumeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void videosFolderIsFoundInTheMountsOfZalenium() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        ContainerInfo containerInfo = mock(ContainerInfo.class);
+        ContainerMount otherMount = mock(ContainerMount.class);
+        when(otherMount.destination()).thenReturn("/var/run/docker.sock");
+        when(otherMount.source()).thenReturn("/var/run/docker.sock");
+        ContainerMount videosMount = mock(ContainerMount.class);
+        when(videosMount.destination()).thenReturn("/home/seluser/videos");
+        when(videosMount.source()).thenReturn("/tmp/videos");
+        when(containerInfo.mounts()).thenReturn(ImmutableList.of(otherMount, videosMount));
+        when(dockerClient.inspectContainer("zalenium")).thenReturn(containerInfo);
+
+        Assert.assertNotNull(RecordingVolume.resolve(dockerClient, "zalenium", Paths.get("/home/seluser/videos")));
+        Assert.assertNull(RecordingVolume.resolve(dockerClient, "zalenium", Paths.get("/opt/videos")));
+    }
+
+    @Test
+    public void eachNodeGetsItsOwnFolderMountedAsVideos() throws IOException {
+        Path videosFolder = temporaryFolder.newFolder("videos").toPath();
+        RecordingVolume recordingVolume = new RecordingVolume(videosFolder, "/tmp/videos");
+
+        String bind = recordingVolume.prepare("zalenium_40000");
+
+        Assert.assertEquals("/tmp/videos/.recordings/zalenium_40000:/videos", bind);
+        Path recordingFolder = recordingVolume.getRecordingFolder("zalenium_40000");
+        Assert.assertTrue(Files.isDirectory(recordingFolder));
+
+        Files.write(recordingFolder.resolve("leftover.mp4"), new byte[]{1});
+        RecordingVolume.removeRecordingFolder(recordingFolder);
+        Assert.assertFalse(Files.exists(recordingFolder));
+    }
+}
@@ -0,0 +1,109 @@
+package de.zalando.ep.zalenium.container;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedDockerClientTest {
+
+    private DockerClient dockerClient;
+
+    @Before
+    public void setUp() {
+        dockerClient = mock(DockerClient.class);
+    }
+
+    @Test
+    public void identicalReadCallsInFlightShareTheSameAnswer() throws Exception {
+        CountDownLatch daemonAnswer = new CountDownLatch(1);
+        List<Container> containers = ImmutableList.of(mock(Container.class));
+        when(dockerClient.listContainers(any(DockerClient.ListContainersParam.class))).thenAnswer(invocation -> {
+            daemonAnswer.await(5, TimeUnit.SECONDS);
+            return containers;
+        });
+        DockerClient sharedDockerClient = SharedDockerClient.wrap(dockerClient, new CircuitBreaker(5, 1000, 0));
+        SharedDockerClient metrics = SharedDockerClient.of(sharedDockerClient);
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<List<Container>>> calls = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                calls.add(executor.submit(() ->
+                        sharedDockerClient.listContainers(DockerClient.ListContainersParam.allContainers())));
+            }
+            Callable<Boolean> allCallsInFlight = () -> metrics.getCoalescedCalls() == 4;
+            await().atMost(2, TimeUnit.SECONDS).until(allCallsInFlight);
+            daemonAnswer.countDown();
+
+            for (Future<List<Container>> call : calls) {
+                Assert.assertSame(containers, call.get(2, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(dockerClient, times(1)).listContainers(any(DockerClient.ListContainersParam.class));
+    }
+
+    @Test
+    public void latencyAndErrorsAreMeasuredPerCall() throws DockerException, InterruptedException {
+        when(dockerClient.inspectContainer(anyString())).thenThrow(new ContainerNotFoundException("ANY_ID"));
+        DockerClient sharedDockerClient = SharedDockerClient.wrap(dockerClient, new CircuitBreaker(1, 1000, 0));
+
+        sharedDockerClient.listContainers();
+        try {
+            sharedDockerClient.inspectContainer("ANY_ID");
+            Assert.fail("The exception from the daemon should be thrown");
+        } catch (ContainerNotFoundException e) {
+            Assert.assertTrue(e.getMessage().contains("ANY_ID"));
+        }
+
+        SharedDockerClient metrics = SharedDockerClient.of(sharedDockerClient);
+        Assert.assertEquals(1, metrics.getCallMetrics().get("listContainers").getCalls());
+        Assert.assertEquals(0, metrics.getCallMetrics().get("listContainers").getErrors());
+        Assert.assertEquals(1, metrics.getCallMetrics().get("inspectContainer").getErrors());
+        // A missing container is a proper answer, the daemon is fine.
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, metrics.getCircuitState());
+    }
+
+    @Test
+    public void callsAreRejectedWhileTheDaemonKeepsFailing() throws DockerException, InterruptedException {
+        when(dockerClient.listContainers()).thenThrow(new DockerException("Daemon is not answering"));
+        DockerClient sharedDockerClient = SharedDockerClient.wrap(dockerClient, new CircuitBreaker(2, 60000, 0));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                sharedDockerClient.listContainers();
+                Assert.fail("The call should fail");
+            } catch (DockerException e) {
+                // Expected
+            }
+        }
+
+        SharedDockerClient metrics = SharedDockerClient.of(sharedDockerClient);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, metrics.getCircuitState());
+        Assert.assertEquals(1, metrics.getRejectedCalls());
+        verify(dockerClient, times(2)).listContainers();
+    }
+}
@@ -0,0 +1,37 @@
+package de.zalando.ep.zalenium.container;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucketTest {
+
+    @Test
+    public void burstUpToCapacityIsAllowedAndThenRateLimited() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucket tokenBucket = new TokenBucket(2, 3, clock::get);
+
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), tokenBucket.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertTrue(tokenBucket.tryAcquire() > 0);
+    }
+
+    @Test
+    public void tokensDoNotGrowOverCapacity() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucket tokenBucket = new TokenBucket(10, 2, clock::get);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertEquals(0, tokenBucket.tryAcquire());
+        Assert.assertTrue(tokenBucket.tryAcquire() > 0);
+    }
+}
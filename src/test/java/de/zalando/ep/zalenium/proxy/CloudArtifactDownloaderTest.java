@@ -0,0 +1,141 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+
+public class CloudArtifactDownloaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void failedDownloadsAreRetriedWithoutExceedingTheProviderConcurrency() throws IOException {
+        Path queueFile = temporaryFolder.getRoot().toPath().resolve("queue.json");
+        CloudArtifactDownloader downloader = new CloudArtifactDownloader(2, 10, 100, 5, queueFile, 10);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        List<String> downloaded = new CopyOnWriteArrayList<>();
+        TestArtifactSource source = new TestArtifactSource("SauceLabs", download -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                // The video of the first test is not ready for the first two attempts
+                if ("session0".equals(download.getSeleniumSessionId()) && download.getAttempts() <= 2) {
+                    throw new IOException("Not ready yet");
+                }
+                downloaded.add(download.getSeleniumSessionId());
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        try {
+            for (int i = 0; i < 6; i++) {
+                downloader.enqueue(source, "session" + i);
+            }
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> downloader.getPendingDownloads() == 0);
+            Assert.assertEquals(6, downloaded.size());
+            Assert.assertEquals("session0", downloaded.get(downloaded.size() - 1));
+            Assert.assertTrue(maxRunning.get() <= 2);
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void pendingDownloadsArePickedUpAfterARestart() throws Exception {
+        Path queueFile = temporaryFolder.getRoot().toPath().resolve("queue.json");
+        CloudArtifactDownloader downloader = new CloudArtifactDownloader(1, 10, 100, 5, queueFile, 10);
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            downloader.enqueue(new TestArtifactSource("TestingBot", download -> stopped.await()), "session1");
+        } finally {
+            downloader.shutdown();
+            stopped.countDown();
+        }
+
+        CloudArtifactDownloader restartedDownloader = new CloudArtifactDownloader(1, 10, 100, 5, queueFile, 10);
+        List<String> downloaded = new CopyOnWriteArrayList<>();
+        try {
+            Assert.assertEquals(1, restartedDownloader.getPendingDownloads());
+            restartedDownloader.register(new TestArtifactSource("TestingBot",
+                    download -> downloaded.add(download.getSeleniumSessionId())));
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> restartedDownloader.getPendingDownloads() == 0);
+            Assert.assertEquals("session1", downloaded.get(0));
+        } finally {
+            restartedDownloader.shutdown();
+        }
+        Assert.assertEquals(0, new CloudArtifactDownloader(1, 10, 100, 5, queueFile, 10).getPendingDownloads());
+    }
+
+    @Test
+    public void queueIsSavedByTheTimerAndNotWhenADownloadIsEnqueued() throws Exception {
+        Path queueFile = temporaryFolder.getRoot().toPath().resolve("queue.json");
+        CloudArtifactDownloader downloader = new CloudArtifactDownloader(1, 10, 100, 5, queueFile,
+                TimeUnit.HOURS.toMillis(1));
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            downloader.enqueue(new TestArtifactSource("BrowserStack", download -> stopped.await()), "session1");
+            Assert.assertFalse(Files.exists(queueFile));
+        } finally {
+            // The last changes are saved when the downloader stops.
+            downloader.shutdown();
+            stopped.countDown();
+        }
+        Assert.assertEquals(1, new CloudArtifactDownloader(1, 10, 100, 5, queueFile, 10).getPendingDownloads());
+    }
+
+    @Test
+    public void retryDelayGrowsUpToTheMaxWithJitter() {
+        CloudArtifactDownloader downloader = new CloudArtifactDownloader(1, 1000, 30000, 5,
+                temporaryFolder.getRoot().toPath().resolve("queue.json"), 10);
+        try {
+            for (int i = 0; i < 10; i++) {
+                long firstRetryDelay = downloader.getRetryDelayMillis(1);
+                Assert.assertTrue(firstRetryDelay >= 500 && firstRetryDelay <= 1000);
+                long lateRetryDelay = downloader.getRetryDelayMillis(8);
+                Assert.assertTrue(lateRetryDelay >= 15000 && lateRetryDelay <= 30000);
+            }
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    private interface DownloadWork {
+        void run(CloudArtifactDownloader.Download download) throws Exception;
+    }
+
+    private static class TestArtifactSource implements CloudArtifactDownloader.ArtifactSource {
+        private final String proxyName;
+        private final DownloadWork work;
+
+        private TestArtifactSource(String proxyName, DownloadWork work) {
+            this.proxyName = proxyName;
+            this.work = work;
+        }
+
+        @Override
+        public String getProxyName() {
+            return proxyName;
+        }
+
+        @Override
+        public void downloadArtifacts(CloudArtifactDownloader.Download download) throws Exception {
+            work.run(download);
+        }
+    }
+}
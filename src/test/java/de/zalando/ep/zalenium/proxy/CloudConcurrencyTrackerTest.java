@@ -0,0 +1,90 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+
+public class CloudConcurrencyTrackerTest {
+
+    @Test
+    public void slotsAreOnlyReservedWhileTheAccountHasFreeSlots() {
+        CloudConcurrencyTracker tracker = new CloudConcurrencyTracker(TimeUnit.HOURS.toMillis(1));
+        // Another team runs one of the three sessions of the account
+        TestConcurrencySource sauceLabs = new TestConcurrencySource("SauceLabs",
+                () -> new CloudConcurrencyTracker.AccountConcurrency(3, 1));
+        // Only the allowed sessions are known
+        TestConcurrencySource testingBot = new TestConcurrencySource("TestingBot",
+                () -> new CloudConcurrencyTracker.AccountConcurrency(1, CloudConcurrencyTracker.UNKNOWN));
+        try {
+            tracker.register(sauceLabs);
+            tracker.register(testingBot);
+            await().atMost(5, TimeUnit.SECONDS).until(() -> tracker.getFreeSlots(sauceLabs) == 2
+                    && tracker.getFreeSlots(testingBot) == 1);
+
+            Assert.assertTrue(tracker.tryReserveSlot(sauceLabs));
+            Assert.assertTrue(tracker.tryReserveSlot(sauceLabs));
+            Assert.assertFalse(tracker.tryReserveSlot(sauceLabs));
+            tracker.releaseSlot(sauceLabs);
+            Assert.assertTrue(tracker.tryReserveSlot(sauceLabs));
+
+            Assert.assertTrue(tracker.tryReserveSlot(testingBot));
+            Assert.assertFalse(tracker.tryReserveSlot(testingBot));
+            Assert.assertEquals(3, tracker.getAllowedSlots(sauceLabs));
+        } finally {
+            tracker.shutdown();
+        }
+    }
+
+    @Test
+    public void slotsAreNotLimitedWhenTheAccountCannotBePolledAnymore() {
+        CloudConcurrencyTracker tracker = new CloudConcurrencyTracker(50);
+        AtomicBoolean providerIsDown = new AtomicBoolean(false);
+        TestConcurrencySource browserStack = new TestConcurrencySource("BrowserStack", () -> {
+            if (providerIsDown.get()) {
+                throw new IOException("Service Unavailable");
+            }
+            return new CloudConcurrencyTracker.AccountConcurrency(2, 2);
+        });
+        try {
+            tracker.register(browserStack);
+            await().atMost(5, TimeUnit.SECONDS).until(() -> tracker.getFreeSlots(browserStack) == 0);
+            Assert.assertFalse(tracker.tryReserveSlot(browserStack));
+
+            providerIsDown.set(true);
+            await().atMost(5, TimeUnit.SECONDS)
+                    .until(() -> tracker.getFreeSlots(browserStack) == CloudConcurrencyTracker.UNKNOWN);
+            Assert.assertTrue(tracker.tryReserveSlot(browserStack));
+        } finally {
+            tracker.shutdown();
+        }
+    }
+
+    private interface ConcurrencyReader {
+        CloudConcurrencyTracker.AccountConcurrency read() throws Exception;
+    }
+
+    private static class TestConcurrencySource implements CloudConcurrencyTracker.ConcurrencySource {
+        private final String proxyName;
+        private final ConcurrencyReader reader;
+
+        private TestConcurrencySource(String proxyName, ConcurrencyReader reader) {
+            this.proxyName = proxyName;
+            this.reader = reader;
+        }
+
+        @Override
+        public String getProxyName() {
+            return proxyName;
+        }
+
+        @Override
+        public CloudConcurrencyTracker.AccountConcurrency readAccountConcurrency() throws Exception {
+            return reader.read();
+        }
+    }
+}
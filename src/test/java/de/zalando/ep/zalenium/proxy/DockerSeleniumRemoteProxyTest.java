@@ -1,17 +1,24 @@
 package de.zalando.ep.zalenium.proxy;
 
+import com.google.common.collect.ImmutableList;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.*;
+import de.zalando.ep.zalenium.container.RecordingVolume;
 import de.zalando.ep.zalenium.util.Environment;
+import de.zalando.ep.zalenium.util.TestInformation;
 import de.zalando.ep.zalenium.util.TestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.awaitility.Duration;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
 import org.openqa.grid.internal.TestSession;
@@ -22,8 +29,16 @@ import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +53,9 @@ import static org.mockito.Mockito.*;
 
 public class DockerSeleniumRemoteProxyTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private DockerSeleniumRemoteProxy proxy;
     private Registry registry;
 
@@ -254,6 +272,228 @@ public class DockerSeleniumRemoteProxyTest {
         await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.FIVE_SECONDS).until(callable);
     }
 
+    @Test
+    public void nodeIsCleanedUpAndReusedWhenMoreSessionsAreAllowedViaCapability() throws Exception {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("maxTestSessions", 2);
+
+        DockerSeleniumRemoteProxy spyProxy = spy(proxy);
+        doReturn("ANY_CONTAINER_ID").when(spyProxy).getContainerId();
+        spyProxy.startPolling();
+
+        // First session, the node does not take other sessions until it is cleaned up
+        TestSession newSession = spyProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        Assert.assertFalse(spyProxy.isTestSessionLimitReached());
+        Assert.assertNull(spyProxy.getNewSession(requestedCapability));
+        releaseSession(spyProxy, newSession);
+
+        Callable<Boolean> callable = spyProxy::isAcceptingSessions;
+        await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(callable);
+        verify(spyProxy, times(1)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.CLEAN_UP_SESSION, "ANY_CONTAINER_ID");
+        Assert.assertFalse(spyProxy.isDown());
+
+        // Second and last session, the node is removed afterwards
+        newSession = spyProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        Assert.assertTrue(spyProxy.isTestSessionLimitReached());
+        releaseSession(spyProxy, newSession);
+
+        callable = spyProxy::isDown;
+        await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(callable);
+        verify(spyProxy, times(1)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.CLEAN_UP_SESSION, "ANY_CONTAINER_ID");
+    }
+
+    @Test
+    public void nodeIsNotReusedWhenCleanUpFails() throws Exception {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("maxTestSessions", 5);
+
+        DockerSeleniumRemoteProxy spyProxy = spy(proxy);
+        doReturn("ANY_CONTAINER_ID").when(spyProxy).getContainerId();
+        doThrow(new DockerException("Container is gone")).when(spyProxy).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.CLEAN_UP_SESSION, "ANY_CONTAINER_ID");
+        spyProxy.startPolling();
+
+        TestSession newSession = spyProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        releaseSession(spyProxy, newSession);
+
+        Callable<Boolean> callable = spyProxy::isDown;
+        await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(callable);
+        Assert.assertFalse(spyProxy.isAcceptingSessions());
+    }
+
+    @Test
+    public void nodeIsCleanedUpAsSoonAsTheSessionEnds() throws Exception {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("maxTestSessions", 2);
+
+        DockerSeleniumRemoteProxy spyProxy = spy(proxy);
+        doReturn("ANY_CONTAINER_ID").when(spyProxy).getContainerId();
+        spyProxy.startPolling();
+
+        // The registry calls afterSession before it releases the slot
+        TestSession newSession = spyProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        spyProxy.afterSession(newSession);
+
+        verify(spyProxy, timeout(2000)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.CLEAN_UP_SESSION, "ANY_CONTAINER_ID");
+        Assert.assertTrue(spyProxy.isBusy());
+    }
+
+    @Test
+    public void containerIdIsTakenFromTheStarterProxyWithoutListingContainers() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        DockerSeleniumRemoteProxy.setDockerClient(dockerClient);
+        DockerSeleniumStarterRemoteProxy.containerCreatedForNode(40000, "INDEXED_CONTAINER_ID");
+        try {
+            Assert.assertEquals("INDEXED_CONTAINER_ID", proxy.getContainerId());
+            verify(dockerClient, never()).listContainers(any());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.releaseNodePort(40000);
+        }
+    }
+
+    @Test
+    public void containerWithoutTheNodePortLabelIsFoundByItsName() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        DockerSeleniumRemoteProxy.setDockerClient(dockerClient);
+        Container otherNode = mock(Container.class);
+        when(otherNode.id()).thenReturn("OTHER_CONTAINER_ID");
+        when(otherNode.names()).thenReturn(ImmutableList.of("/zalenium_400001"));
+        Container node = mock(Container.class);
+        when(node.id()).thenReturn("NAMED_CONTAINER_ID");
+        when(node.names()).thenReturn(ImmutableList.of("/zalenium_40000"));
+        // The first listing is filtered by the label, the second one by the name
+        when(dockerClient.listContainers(any(), any())).thenReturn(Collections.emptyList(),
+                Arrays.asList(otherNode, node));
+
+        Assert.assertEquals("NAMED_CONTAINER_ID", proxy.getContainerId());
+        verify(dockerClient, times(2)).listContainers(any(), any());
+    }
+
+    @Test
+    public void videoAndLogsAreCopiedFromASingleArchive() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        when(dockerClient.archiveContainer("ANY_CONTAINER_ID", "/tmp/artifacts/")).thenReturn(
+                new ByteArrayInputStream(tarOf("artifacts/videos/session.mp4", "video",
+                        "artifacts/cont/selenium.log", "log")));
+        DockerSeleniumRemoteProxy.setDockerClient(dockerClient);
+        File videosFolder = temporaryFolder.newFolder("videos");
+        File logsFolder = new File(videosFolder, "logs");
+        TestInformation testInformation = mock(TestInformation.class);
+        when(testInformation.getVideoFolderPath()).thenReturn(videosFolder.getAbsolutePath());
+        when(testInformation.getFileName()).thenReturn("test.mp4");
+        when(testInformation.isVideoRecorded()).thenReturn(true);
+        when(testInformation.getLogsFolderPath()).thenReturn(logsFolder.getAbsolutePath());
+
+        proxy.copyArtifacts("ANY_CONTAINER_ID", testInformation);
+
+        verify(dockerClient, times(1)).archiveContainer(anyString(), anyString());
+        verify(testInformation).setFileExtension(".mp4");
+        Assert.assertEquals("video", new String(Files.readAllBytes(new File(videosFolder, "test.mp4").toPath()),
+                StandardCharsets.UTF_8));
+        Assert.assertEquals("log", new String(Files.readAllBytes(new File(logsFolder, "selenium.log").toPath()),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void videoRecordedOutsideOfTheContainerIsMovedInsteadOfCopied() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        when(dockerClient.archiveContainer("ANY_CONTAINER_ID", "/tmp/artifacts/")).thenReturn(
+                new ByteArrayInputStream(tarOf("artifacts/cont/selenium.log", "log")));
+        DockerSeleniumRemoteProxy.setDockerClient(dockerClient);
+        File videosFolder = temporaryFolder.newFolder("videos");
+        RecordingVolume recordingVolume = new RecordingVolume(videosFolder.toPath(), "/tmp/videos");
+        try {
+            Path recordingFolder = recordingVolume.getRecordingFolder("zalenium_40000");
+            DockerSeleniumStarterRemoteProxy.recordingStartedForNode(40000, recordingFolder);
+            Files.createDirectories(recordingFolder);
+            Files.write(recordingFolder.resolve("session.mp4"), "video".getBytes(StandardCharsets.UTF_8));
+            TestInformation testInformation = mock(TestInformation.class);
+            when(testInformation.getVideoFolderPath()).thenReturn(videosFolder.getAbsolutePath());
+            when(testInformation.getFileName()).thenReturn("test.mp4");
+            when(testInformation.isVideoRecorded()).thenReturn(true);
+            when(testInformation.getLogsFolderPath()).thenReturn(new File(videosFolder, "logs").getAbsolutePath());
+
+            proxy.copyArtifacts("ANY_CONTAINER_ID", testInformation);
+
+            Assert.assertEquals("video", new String(Files.readAllBytes(new File(videosFolder, "test.mp4").toPath()),
+                    StandardCharsets.UTF_8));
+            Assert.assertFalse(Files.exists(recordingFolder.resolve("session.mp4")));
+        } finally {
+            DockerSeleniumStarterRemoteProxy.releaseNodePort(40000);
+        }
+    }
+
+    @Test
+    public void videoOfAPassedTestIsNotKeptWhenOnlyFailedTestsVideosAreKept() throws Exception {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("keepOnlyFailedTestsVideos", true);
+        TestSession newSession = proxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        Assert.assertTrue(proxy.isVideoKept(false));
+
+        WebDriverRequest request = mock(WebDriverRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getRequestType()).thenReturn(RequestType.REGULAR);
+        when(request.getPathInfo()).thenReturn("/session/123/cookie");
+        when(request.getBody()).thenReturn("{\"cookie\": {\"name\": \"zaleniumTestPassed\", \"value\": \"true\"}}");
+        proxy.beforeCommand(newSession, request, mock(HttpServletResponse.class));
+
+        Assert.assertFalse(proxy.isVideoKept(false));
+        // An idle test keeps its video anyway
+        Assert.assertTrue(proxy.isVideoKept(true));
+
+        DockerClient dockerClient = mock(DockerClient.class);
+        when(dockerClient.archiveContainer("ANY_CONTAINER_ID", "/tmp/artifacts/")).thenReturn(
+                new ByteArrayInputStream(tarOf("artifacts/videos/session.mp4", "video",
+                        "artifacts/cont/selenium.log", "log")));
+        DockerSeleniumRemoteProxy.setDockerClient(dockerClient);
+        File videosFolder = temporaryFolder.newFolder("videos");
+        TestInformation testInformation = mock(TestInformation.class);
+        when(testInformation.getVideoFolderPath()).thenReturn(videosFolder.getAbsolutePath());
+        when(testInformation.getFileName()).thenReturn("test.mp4");
+        when(testInformation.getLogsFolderPath()).thenReturn(new File(videosFolder, "logs").getAbsolutePath());
+
+        proxy.copyArtifacts("ANY_CONTAINER_ID", testInformation);
+
+        Assert.assertFalse(new File(videosFolder, "test.mp4").exists());
+        Assert.assertTrue(new File(videosFolder, "logs/selenium.log").exists());
+    }
+
+    @Test
+    public void maxTestSessionsIsTakenFromEnvVariable() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(DockerSeleniumRemoteProxy.ZALENIUM_MAX_TEST_SESSIONS)).thenReturn("3");
+        when(environment.getIntEnvVariable(any(String.class), anyInt())).thenCallRealMethod();
+        when(environment.getBooleanEnvVariable(any(String.class), any(Boolean.class))).thenCallRealMethod();
+        DockerSeleniumRemoteProxy.setEnv(environment);
+        DockerSeleniumRemoteProxy reusableProxy = getNewProxy(40001);
+
+        Assert.assertNotNull(reusableProxy.getNewSession(getCapabilitySupportedByDockerSelenium()));
+        Assert.assertFalse(reusableProxy.isTestSessionLimitReached());
+    }
+
+    @Test
+    public void idleNodeIsRemovedWhenItIsTooOld() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(DockerSeleniumRemoteProxy.ZALENIUM_MAX_NODE_AGE_SECS)).thenReturn("1");
+        when(environment.getIntEnvVariable(any(String.class), anyInt())).thenCallRealMethod();
+        when(environment.getBooleanEnvVariable(any(String.class), any(Boolean.class))).thenCallRealMethod();
+        DockerSeleniumRemoteProxy.setEnv(environment);
+        DockerSeleniumRemoteProxy agingProxy = getNewProxy(40002);
+        agingProxy.startPolling();
+
+        Callable<Boolean> callable = agingProxy::isDown;
+        await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.FIVE_SECONDS).until(callable);
+        Assert.assertNull(agingProxy.getNewSession(getCapabilitySupportedByDockerSelenium()));
+    }
+
     @Test
     public void fallbackToDefaultValueWhenEnvVariableIsNotABoolean() {
         Environment environment = mock(Environment.class, withSettings().useConstructor());
@@ -285,9 +525,9 @@ public class DockerSeleniumRemoteProxyTest {
                     DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
             DockerSeleniumStarterRemoteProxy dsProxy = new DockerSeleniumStarterRemoteProxy(request, registry);
             DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(1);
-            DockerSeleniumStarterRemoteProxy.setScreenHeight(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT);
-            DockerSeleniumStarterRemoteProxy.setScreenWidth(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH);
-            DockerSeleniumStarterRemoteProxy.setTimeZone(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ);
+            DockerSeleniumStarterRemoteProxy.setConfiguredScreenHeight(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT);
+            DockerSeleniumStarterRemoteProxy.setConfiguredScreenWidth(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH);
+            DockerSeleniumStarterRemoteProxy.setConfiguredTimeZone(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ);
             dsProxy.getNewSession(getCapabilitySupportedByDockerSelenium());
 
             // Creating a spy proxy to verify the invoked methods
@@ -304,7 +544,7 @@ public class DockerSeleniumRemoteProxyTest {
             TestSession newSession = spyProxy.getNewSession(getCapabilitySupportedByDockerSelenium());
             Assert.assertNotNull(newSession);
 
-            // We start the session, in order to start recording
+            // The recording started when polling started, it is not done again when the session starts
             WebDriverRequest webDriverRequest = mock(WebDriverRequest.class);
             HttpServletResponse response = mock(HttpServletResponse.class);
             when(webDriverRequest.getMethod()).thenReturn("POST");
@@ -312,9 +552,9 @@ public class DockerSeleniumRemoteProxyTest {
             spyProxy.beforeCommand(newSession, webDriverRequest, response);
 
             // Assert video recording started
-            verify(spyProxy, times(1)).
+            verify(spyProxy, timeout(5000).times(1)).
                     videoRecording(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING);
-            verify(spyProxy, times(1)).
+            verify(spyProxy, timeout(5000).times(1)).
                     processContainerAction(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING, containerId);
 
             // We release the sessions, the node should be free
@@ -332,7 +572,7 @@ public class DockerSeleniumRemoteProxyTest {
                     .videoRecording(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.STOP_RECORDING);
             verify(spyProxy, timeout(40000))
                     .processContainerAction(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.STOP_RECORDING, containerId);
-            verify(spyProxy, timeout(40000)).copyVideos(containerId);
+            verify(spyProxy, timeout(40000)).copyArtifacts(eq(containerId), any(TestInformation.class));
         } finally {
             cleanUpAfterVideoRecordingTests(dockerClient, containerId, zaleniumContainerId);
         }
@@ -355,9 +595,8 @@ public class DockerSeleniumRemoteProxyTest {
                     DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
             DockerSeleniumStarterRemoteProxy dsProxy = new DockerSeleniumStarterRemoteProxy(request, registry);
             DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(1);
-            DockerSeleniumStarterRemoteProxy.setScreenHeight(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT);
-            DockerSeleniumStarterRemoteProxy.setScreenWidth(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH);
-            DockerSeleniumStarterRemoteProxy.setTimeZone(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ);
+            DockerSeleniumStarterRemoteProxy.setConfiguredScreenHeight(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT);
+            DockerSeleniumStarterRemoteProxy.setConfiguredScreenWidth(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH);
             DockerSeleniumStarterRemoteProxy.setConfiguredTimeZone(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ);
             dsProxy.getNewSession(getCapabilitySupportedByDockerSelenium());
 
@@ -390,7 +629,7 @@ public class DockerSeleniumRemoteProxyTest {
             spyProxy.beforeCommand(newSession, webDriverRequest, response);
 
             // Assert no video recording was started, videoRecording is invoked but processContainerAction should not
-            verify(spyProxy, times(1))
+            verify(spyProxy, timeout(5000).times(1))
                     .videoRecording(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING);
             verify(spyProxy, never())
                     .processContainerAction(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING, containerId);
@@ -406,17 +645,48 @@ public class DockerSeleniumRemoteProxyTest {
             spyProxy.afterSession(newSession);
 
             Assert.assertFalse(spyProxy.isBusy());
-            // Now we assert that videoRecording was invoked but processContainerAction not, neither copyVideos
+            // Now we assert that videoRecording was invoked but processContainerAction not, the logs are still copied
             verify(spyProxy, timeout(40000))
                     .videoRecording(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.STOP_RECORDING);
             verify(spyProxy, never())
                     .processContainerAction(DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.STOP_RECORDING, containerId);
-            verify(spyProxy, never()).copyVideos(containerId);
+            verify(spyProxy, timeout(40000)).copyArtifacts(eq(containerId), any(TestInformation.class));
         } finally {
             cleanUpAfterVideoRecordingTests(dockerClient, containerId, zaleniumContainerId);
         }
     }
 
+    @Test
+    public void videoRecordingIsStartedBeforeTheSession() throws Exception {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("maxTestSessions", 2);
+
+        DockerSeleniumRemoteProxy spyProxy = spy(proxy);
+        doReturn("ANY_CONTAINER_ID").when(spyProxy).getContainerId();
+        spyProxy.startPolling();
+        verify(spyProxy, timeout(5000)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING, "ANY_CONTAINER_ID");
+
+        TestSession newSession = spyProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(newSession);
+        WebDriverRequest webDriverRequest = mock(WebDriverRequest.class);
+        when(webDriverRequest.getMethod()).thenReturn("POST");
+        when(webDriverRequest.getRequestType()).thenReturn(RequestType.START_SESSION);
+        long start = System.currentTimeMillis();
+        spyProxy.beforeCommand(newSession, webDriverRequest, mock(HttpServletResponse.class));
+        TestInformation testInformation = spyProxy.getTestInformation();
+        Assert.assertTrue(testInformation.getSessionStartTime() >= start);
+        releaseSession(spyProxy, newSession);
+
+        // The video has the whole session, and the recording for the next one starts with the clean up
+        verify(spyProxy, timeout(5000)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.STOP_RECORDING, "ANY_CONTAINER_ID");
+        verify(spyProxy, timeout(5000).times(2)).processContainerAction(
+                DockerSeleniumRemoteProxy.DockerSeleniumContainerAction.START_RECORDING, "ANY_CONTAINER_ID");
+        Assert.assertTrue(testInformation.getVideoStartTime() > 0);
+        Assert.assertTrue(testInformation.getSessionStartOffsetInVideoMillis() >= 0);
+    }
+
     @Test
     public void videoRecordingIsDisabledViaCapability() {
         Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
@@ -427,6 +697,40 @@ public class DockerSeleniumRemoteProxyTest {
         Assert.assertEquals(DockerSeleniumRemoteProxy.isVideoRecordingEnabled(), false);
     }
 
+    private DockerSeleniumRemoteProxy getNewProxy(int port) {
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(port,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        request.getConfiguration().capabilities.clear();
+        request.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+        return DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+    }
+
+    private static byte[] tarOf(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarStream = new TarArchiveOutputStream(tar)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                byte[] content = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i]);
+                entry.setSize(content.length);
+                tarStream.putArchiveEntry(entry);
+                tarStream.write(content);
+                tarStream.closeArchiveEntry();
+            }
+        }
+        return tar.toByteArray();
+    }
+
+    private void releaseSession(DockerSeleniumRemoteProxy dockerSeleniumRemoteProxy, TestSession session) {
+        WebDriverRequest request = mock(WebDriverRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getMethod()).thenReturn("DELETE");
+        when(request.getRequestType()).thenReturn(RequestType.STOP_SESSION);
+
+        session.getSlot().doFinishRelease();
+        dockerSeleniumRemoteProxy.afterCommand(session, request, response);
+        dockerSeleniumRemoteProxy.afterSession(session);
+    }
+
     private void cleanUpAfterVideoRecordingTests(DockerClient dockerClient, String containerId,
                                      String zaleniumContainerId) throws DockerException, InterruptedException {
         String busyboxLatestImage = "busybox:latest";
@@ -4,6 +4,10 @@ import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
+import de.zalando.ep.zalenium.container.ContainerInventory;
+import de.zalando.ep.zalenium.container.DockerHost;
+import de.zalando.ep.zalenium.container.DockerImageCache;
+import de.zalando.ep.zalenium.container.NodePortAllocator;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.TestUtils;
 import org.junit.After;
@@ -18,13 +22,20 @@ import org.openqa.selenium.Platform;
 import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -33,6 +44,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.withSettings;
 import static org.awaitility.Awaitility.await;
 
@@ -60,6 +73,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         when(dockerClient.createContainer(any(ContainerConfig.class), anyString())).thenReturn(containerCreation);
 
         DockerSeleniumStarterRemoteProxy.setDockerClient(dockerClient);
+        DockerSeleniumStarterRemoteProxy.setContainerInventory(mock(ContainerInventory.class));
 
         // Spying on the proxy to see if methods are invoked or not
         spyProxy = spy(proxy);
@@ -86,7 +100,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class));
     }
 
     @Test
@@ -98,7 +112,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class));
     }
 
     @Test
@@ -111,7 +125,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME));
     }
 
     @Test
@@ -125,7 +139,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME));
     }
 
     @Test
@@ -137,9 +151,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         supportedCapability.put("screenResolution", "1280x760");
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.FIREFOX);
-        Assert.assertEquals(1280, DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(760, DockerSeleniumStarterRemoteProxy.getScreenHeight());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.FIREFOX, 1280, 760));
     }
 
     @Test
@@ -151,9 +163,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         supportedCapability.put("resolution", "1300x900");
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
-        Assert.assertEquals(1300, DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(900, DockerSeleniumStarterRemoteProxy.getScreenHeight());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME, 1300, 900));
     }
 
     @Test
@@ -165,9 +175,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         supportedCapability.put("screen-resolution", "1500x1000");
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.FIREFOX);
-        Assert.assertEquals(1500, DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(1000, DockerSeleniumStarterRemoteProxy.getScreenHeight());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.FIREFOX, 1500, 1000));
     }
 
     @Test
@@ -179,11 +187,9 @@ public class DockerSeleniumStarterRemoteProxyTest {
         supportedCapability.put("resolution", "-1300x800");
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
-        Assert.assertEquals(DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
-                DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight(),
-                DockerSeleniumStarterRemoteProxy.getScreenHeight());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME,
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight()));
     }
 
     @Test
@@ -195,11 +201,9 @@ public class DockerSeleniumStarterRemoteProxyTest {
         supportedCapability.put("screenResolution", "notAValidScreenResolution");
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
-        Assert.assertEquals(DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
-                DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight(),
-                DockerSeleniumStarterRemoteProxy.getScreenHeight());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME,
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight()));
     }
 
     @Test
@@ -212,7 +216,62 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.FIREFOX);
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.FIREFOX));
+    }
+
+    @Test
+    public void newSessionRequestDoesNotWaitForTheContainerCreation() {
+        CountDownLatch creationStarted = new CountDownLatch(1);
+        CountDownLatch creationAllowed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            creationStarted.countDown();
+            creationAllowed.await();
+            return 40000;
+        }).when(spyProxy).createDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class),
+                any(DockerHost.class));
+
+        Map<String, Object> supportedCapability = new HashMap<>();
+        supportedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        supportedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        try {
+            TestSession testSession = spyProxy.getNewSession(supportedCapability);
+
+            // The request returned while the creation is still blocked, so its demand is not completed yet.
+            Assert.assertNull(testSession);
+            PendingDemandLedger.PendingDemand pendingDemand =
+                    DockerSeleniumStarterRemoteProxy.getPendingDemandLedger().get(supportedCapability);
+            Assert.assertNotNull(pendingDemand);
+            Assert.assertEquals(0, pendingDemand.getCompletionTime());
+            await().atMost(5, SECONDS).until(() -> creationStarted.getCount() == 0);
+            verify(spyProxy, times(1)).createDockerSeleniumContainer(spec(BrowserType.CHROME),
+                    any(DockerHost.class));
+        } finally {
+            creationAllowed.countDown();
+        }
+    }
+
+    @Test
+    public void nothingIsQueuedWhileNoDockerHostHasRoomLeft() {
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(0);
+        long failedCreates = DockerSeleniumStarterRemoteProxy.getContainerProvisioner().getFailedCreates();
+        try {
+            Map<String, Object> requestedCapability = new HashMap<>();
+            requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+            requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+            spyProxy.getNewSession(requestedCapability);
+            spyProxy.getNewSession(requestedCapability);
+
+            // No demand is recorded, so each loop of the registry checks again for room.
+            verify(spyProxy, times(2)).startDockerSeleniumContainer(spec(BrowserType.CHROME));
+            verify(spyProxy, never()).createDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class),
+                    any(DockerHost.class));
+            Assert.assertNull(DockerSeleniumStarterRemoteProxy.getPendingDemandLedger().get(requestedCapability));
+            Assert.assertEquals(failedCreates,
+                    DockerSeleniumStarterRemoteProxy.getContainerProvisioner().getFailedCreates());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(
+                    DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING);
+        }
     }
 
     @Test
@@ -223,7 +282,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class));
     }
 
     @Test
@@ -231,21 +290,91 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Map<String, Object> requestedCapability = new HashMap<>();
         requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
         requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
-        requestedCapability.put("waitingFor_CHROME_Node", 1);
+        spyProxy.getNewSession(requestedCapability);
         TestSession testSession = spyProxy.getNewSession(requestedCapability);
         Assert.assertNull(testSession);
-        verify(spyProxy, times(0)).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(spec(BrowserType.CHROME));
+    }
+
+    @Test
+    public void containerIsStartedForRequestThatWasNotServedBeforeTheDeadline() {
+        AtomicLong clock = new AtomicLong(1000);
+        DockerSeleniumStarterRemoteProxy.getPendingDemandLedger().setClock(clock::get);
+        try {
+            Map<String, Object> requestedCapability = new HashMap<>();
+            requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.FIREFOX);
+            requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+            spyProxy.getNewSession(requestedCapability);
+            // The deadline starts once the container was created.
+            await().atMost(5, SECONDS).until(() -> DockerSeleniumStarterRemoteProxy.getPendingDemandLedger()
+                    .get(requestedCapability).isCompleted());
+            clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+            Assert.assertNull(spyProxy.getNewSession(requestedCapability));
+            verify(spyProxy, never()).startDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class), eq(true));
+            clock.addAndGet(TimeUnit.MINUTES.toMillis(2));
+            TestSession testSession = spyProxy.getNewSession(requestedCapability);
+            Assert.assertNull(testSession);
+            verify(spyProxy, times(1)).startDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class), eq(true));
+            Assert.assertEquals(2, DockerSeleniumStarterRemoteProxy.getPendingDemandLedger()
+                    .get(requestedCapability).getAttempt());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.getPendingDemandLedger().setClock(System::currentTimeMillis);
+        }
+    }
+
+    @Test
+    public void newContainerIsRequestedRightAfterTheStartFailed() {
+        AtomicLong clock = new AtomicLong(1000);
+        PendingDemandLedger ledger = new PendingDemandLedger(TimeUnit.MINUTES.toMillis(2), 1000);
+        ledger.setClock(clock::get);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        CompletableFuture<Integer> nodePort = new CompletableFuture<>();
+        ledger.containerRequested(requestedCapability, BrowserType.CHROME, nodePort);
+        Assert.assertFalse(ledger.needsContainer(requestedCapability));
+
+        nodePort.completeExceptionally(new IllegalStateException("Circuit breaker is open"));
+
+        Assert.assertTrue(ledger.get(requestedCapability).hasFailed());
+        clock.addAndGet(1000);
+        Assert.assertTrue(ledger.needsContainer(requestedCapability));
+    }
+
+    @Test
+    public void registrationDeadlineStartsWhenTheContainerWasCreated() {
+        AtomicLong clock = new AtomicLong(1000);
+        PendingDemandLedger ledger = new PendingDemandLedger(TimeUnit.MINUTES.toMillis(2), 1000);
+        ledger.setClock(clock::get);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        CompletableFuture<Integer> nodePort = new CompletableFuture<>();
+        ledger.containerRequested(requestedCapability, BrowserType.CHROME, nodePort);
+
+        // The creation waited in the provisioner queue for longer than the registration timeout.
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(5));
+        Assert.assertFalse(ledger.needsContainer(requestedCapability));
+        nodePort.complete(40000);
+        Assert.assertEquals(clock.get() + TimeUnit.MINUTES.toMillis(2),
+                ledger.get(requestedCapability).getRegistrationDeadline());
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertFalse(ledger.needsContainer(requestedCapability));
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(ledger.needsContainer(requestedCapability));
     }
 
     @Test
-    public void containerIsStartedForRequestProcessedMoreThan20Times() {
+    public void noContainerIsStartedForRequestAssignedToANode() {
         Map<String, Object> requestedCapability = new HashMap<>();
-        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.FIREFOX);
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
         requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
-        requestedCapability.put("waitingFor_FIREFOX_Node", 21);
-        TestSession testSession = spyProxy.getNewSession(requestedCapability);
-        Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(anyString(), eq(true));
+        spyProxy.getNewSession(requestedCapability);
+        DockerSeleniumStarterRemoteProxy.nodeClaimed(requestedCapability, "http://localhost:40000");
+
+        Assert.assertFalse(DockerSeleniumStarterRemoteProxy.getPendingDemandLedger()
+                .needsContainer(requestedCapability));
+        Assert.assertEquals("http://localhost:40000", DockerSeleniumStarterRemoteProxy.getPendingDemandLedger()
+                .get(requestedCapability).getAssignedNodeId());
     }
 
 
@@ -271,11 +400,11 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING,
                 DockerSeleniumStarterRemoteProxy.getMaxDockerSeleniumContainers());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT,
-                DockerSeleniumStarterRemoteProxy.getScreenHeight());
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH,
-                DockerSeleniumStarterRemoteProxy.getScreenWidth());
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ,
-                DockerSeleniumStarterRemoteProxy.getTimeZone());
+                DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
     }
 
     @Test
@@ -307,9 +436,9 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING,
                 DockerSeleniumStarterRemoteProxy.getMaxDockerSeleniumContainers());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH,
-                DockerSeleniumStarterRemoteProxy.getScreenWidth());
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_TZ,
-                DockerSeleniumStarterRemoteProxy.getTimeZone());
+                DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
     }
 
     @Test
@@ -343,9 +472,9 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Assert.assertEquals(amountOfChromeContainers, DockerSeleniumStarterRemoteProxy.getChromeContainersOnStartup());
         Assert.assertEquals(amountOfFirefoxContainers, DockerSeleniumStarterRemoteProxy.getFirefoxContainersOnStartup());
         Assert.assertEquals(amountOfMaxContainers, DockerSeleniumStarterRemoteProxy.getMaxDockerSeleniumContainers());
-        Assert.assertEquals(screenHeight, DockerSeleniumStarterRemoteProxy.getScreenHeight());
-        Assert.assertEquals(screenWidth, DockerSeleniumStarterRemoteProxy.getScreenWidth());
-        Assert.assertEquals(timeZone, DockerSeleniumStarterRemoteProxy.getTimeZone());
+        Assert.assertEquals(screenHeight, DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight());
+        Assert.assertEquals(screenWidth, DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth());
+        Assert.assertEquals(timeZone, DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
     }
 
     @Test
@@ -365,8 +494,8 @@ public class DockerSeleniumStarterRemoteProxyTest {
 
         Callable<Boolean> callable = () -> spyProxy.isSetupCompleted();
         await().atMost(1, SECONDS).pollInterval(100, MILLISECONDS).until(callable);
-        verify(spyProxy, times(amountOfChromeContainers)).startDockerSeleniumContainer(BrowserType.CHROME);
-        verify(spyProxy, times(amountOfFirefoxContainers)).startDockerSeleniumContainer(BrowserType.FIREFOX);
+        verify(spyProxy, times(amountOfChromeContainers)).startDockerSeleniumContainer(spec(BrowserType.CHROME));
+        verify(spyProxy, times(amountOfFirefoxContainers)).startDockerSeleniumContainer(spec(BrowserType.FIREFOX));
         Assert.assertEquals(amountOfChromeContainers, DockerSeleniumStarterRemoteProxy.getChromeContainersOnStartup());
         Assert.assertEquals(amountOfFirefoxContainers, DockerSeleniumStarterRemoteProxy.getFirefoxContainersOnStartup());
     }
@@ -376,8 +505,8 @@ public class DockerSeleniumStarterRemoteProxyTest {
         DockerSeleniumStarterRemoteProxy.setChromeContainersOnStartup(-1);
         DockerSeleniumStarterRemoteProxy.setFirefoxContainersOnStartup(-1);
         DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(-1);
-        DockerSeleniumStarterRemoteProxy.setScreenHeight(-1);
-        DockerSeleniumStarterRemoteProxy.setScreenWidth(-1);
+        DockerSeleniumStarterRemoteProxy.setConfiguredScreenHeight(-1);
+        DockerSeleniumStarterRemoteProxy.setConfiguredScreenWidth(-1);
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_CHROME_CONTAINERS,
                 DockerSeleniumStarterRemoteProxy.getChromeContainersOnStartup());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_FIREFOX_CONTAINERS,
@@ -385,9 +514,135 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING,
                 DockerSeleniumStarterRemoteProxy.getMaxDockerSeleniumContainers());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_HEIGHT,
-                DockerSeleniumStarterRemoteProxy.getScreenHeight());
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight());
         Assert.assertEquals(DockerSeleniumStarterRemoteProxy.DEFAULT_SCREEN_WIDTH,
-                DockerSeleniumStarterRemoteProxy.getScreenWidth());
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth());
+    }
+
+    @Test
+    public void requestsWithDifferentScreenResolutionAndTimeZoneGetTheirOwnContainerSpec() {
+        Map<String, Object> firstCapability = new HashMap<>();
+        firstCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        firstCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        firstCapability.put("screenResolution", "1024x768");
+        firstCapability.put("tz", "America/Montreal");
+        Map<String, Object> secondCapability = new HashMap<>();
+        secondCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        secondCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        secondCapability.put("screenResolution", "1920x1080");
+        secondCapability.put("tz", "Asia/Tokyo");
+
+        spyProxy.getNewSession(firstCapability);
+        spyProxy.getNewSession(secondCapability);
+
+        verify(spyProxy, timeout(1000).times(1)).createDockerSeleniumContainer(
+                eq(new DockerSeleniumContainerSpec(BrowserType.CHROME, 1024, 768, "America/Montreal")),
+                any(DockerHost.class));
+        verify(spyProxy, timeout(1000).times(1)).createDockerSeleniumContainer(
+                eq(new DockerSeleniumContainerSpec(BrowserType.CHROME, 1920, 1080, "Asia/Tokyo")),
+                any(DockerHost.class));
+    }
+
+    @Test
+    public void invalidTimeZoneFallsBackToTheConfiguredOne() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put("tz", "Not/A_Time_Zone");
+
+        DockerSeleniumContainerSpec containerSpec = DockerSeleniumStarterRemoteProxy.getContainerSpec(
+                BrowserType.FIREFOX, requestedCapability);
+
+        Assert.assertEquals(DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone(), containerSpec.getTimeZone());
+        Assert.assertEquals(String.format("%sx%s", DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight()),
+                requestedCapability.get("screenResolution"));
+    }
+
+    @Test
+    public void containerIsCreatedOnTheDockerHostWithTheMostFreeCapacity() throws Exception {
+        DockerClient firstHostClient = mockDockerClient();
+        DockerClient secondHostClient = mockDockerClient();
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(0);
+        DockerSeleniumStarterRemoteProxy.setHubAddress("10.0.0.1:4444");
+        DockerSeleniumStarterRemoteProxy.setRemoteDockerHosts(Arrays.asList(
+                remoteDockerHost("10.0.0.2", firstHostClient, 2), remoteDockerHost("10.0.0.3", secondHostClient, 5)));
+        int nodePort = -1;
+        try {
+            nodePort = spyProxy.startDockerSeleniumContainer(new DockerSeleniumContainerSpec(BrowserType.CHROME,
+                    1920, 1080, "Europe/Berlin"), false).get(5, SECONDS);
+
+            Assert.assertTrue(nodePort > 0);
+            verify(secondHostClient).createContainer(argThat(containerConfig ->
+                    "host".equals(containerConfig.hostConfig().networkMode())
+                            && containerConfig.env().contains("SELENIUM_NODE_HOST=10.0.0.3")
+                            && containerConfig.env().contains("SELENIUM_HUB_HOST=10.0.0.1")
+                            && containerConfig.env().contains("SELENIUM_HUB_PORT=4444")), anyString());
+            verify(firstHostClient, never()).createContainer(any(ContainerConfig.class), anyString());
+            Assert.assertEquals("ANY_CONTAINER_ID", DockerSeleniumStarterRemoteProxy.getContainerIdForNode(nodePort));
+            Assert.assertSame(secondHostClient, DockerSeleniumStarterRemoteProxy.getDockerClientForNode("10.0.0.3"));
+            Assert.assertNull(DockerSeleniumStarterRemoteProxy.getDockerClientForNode("localhost"));
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setRemoteDockerHosts(Collections.emptyList());
+            DockerSeleniumStarterRemoteProxy.setHubAddress(null);
+            DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(
+                    DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING);
+            DockerSeleniumStarterRemoteProxy.releaseNodePort(nodePort);
+        }
+        Assert.assertNull(DockerSeleniumStarterRemoteProxy.getContainerIdForNode(nodePort));
+    }
+
+    @Test
+    public void portOfAContainerRemovedBeforeItsNodeRegisteredIsReleased() {
+        NodePortAllocator nodePortAllocator = DockerSeleniumStarterRemoteProxy.getNodePortAllocator();
+        int unregisteredNodePort = nodePortAllocator.allocate();
+        int registeredNodePort = nodePortAllocator.allocate();
+        try {
+            DockerSeleniumStarterRemoteProxy.containerCreatedForNode(unregisteredNodePort, "UNREGISTERED_ID");
+            DockerSeleniumStarterRemoteProxy.containerCreatedForNode(registeredNodePort, "REGISTERED_ID");
+            DockerSeleniumStarterRemoteProxy.nodeRegistered(registeredNodePort);
+
+            // A container with another id is not the one holding the port anymore.
+            DockerSeleniumStarterRemoteProxy.nodeContainerRemoved("OLD_ID", unregisteredNodePort);
+            Assert.assertTrue(nodePortAllocator.isAllocated(unregisteredNodePort));
+
+            DockerSeleniumStarterRemoteProxy.nodeContainerRemoved("UNREGISTERED_ID", unregisteredNodePort);
+            DockerSeleniumStarterRemoteProxy.nodeContainerRemoved("REGISTERED_ID", registeredNodePort);
+
+            Assert.assertFalse(nodePortAllocator.isAllocated(unregisteredNodePort));
+            Assert.assertNull(DockerSeleniumStarterRemoteProxy.getContainerIdForNode(unregisteredNodePort));
+            // Registered nodes release their port on teardown.
+            Assert.assertTrue(nodePortAllocator.isAllocated(registeredNodePort));
+            Assert.assertEquals("REGISTERED_ID",
+                    DockerSeleniumStarterRemoteProxy.getContainerIdForNode(registeredNodePort));
+        } finally {
+            DockerSeleniumStarterRemoteProxy.releaseNodePort(unregisteredNodePort);
+            DockerSeleniumStarterRemoteProxy.releaseNodePort(registeredNodePort);
+        }
+    }
+
+    private static DockerClient mockDockerClient() throws DockerException, InterruptedException {
+        DockerClient dockerClient = mock(DockerClient.class);
+        ContainerCreation containerCreation = mock(ContainerCreation.class);
+        when(containerCreation.id()).thenReturn("ANY_CONTAINER_ID");
+        when(dockerClient.createContainer(any(ContainerConfig.class), anyString())).thenReturn(containerCreation);
+        return dockerClient;
+    }
+
+    private static DockerHost remoteDockerHost(String nodeAddress, DockerClient dockerClient, int maxContainers) {
+        ContainerInventory inventory = mock(ContainerInventory.class);
+        DockerImageCache imageCache = mock(DockerImageCache.class);
+        when(imageCache.getResolvedImage()).thenReturn(new DockerImageCache.ResolvedImage("elgalu/selenium:latest",
+                Collections.emptyMap()));
+        return new DockerHost(nodeAddress, nodeAddress, false, () -> dockerClient, () -> inventory,
+                () -> imageCache, () -> maxContainers);
+    }
+
+    private static DockerSeleniumContainerSpec spec(String browser) {
+        return argThat(containerSpec -> containerSpec != null && browser.equals(containerSpec.getBrowser()));
+    }
+
+    private static DockerSeleniumContainerSpec spec(String browser, int screenWidth, int screenHeight) {
+        return argThat(containerSpec -> containerSpec != null && browser.equals(containerSpec.getBrowser())
+                && containerSpec.getScreenWidth() == screenWidth && containerSpec.getScreenHeight() == screenHeight);
     }
 
 }
@@ -0,0 +1,114 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.spotify.docker.client.DockerClient;
+import de.zalando.ep.zalenium.container.ContainerInventory;
+import de.zalando.ep.zalenium.container.DockerHost;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.selenium.remote.BrowserType;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DockerSeleniumWarmPoolTest {
+
+    private DockerSeleniumStarterRemoteProxy spyStarterProxy;
+    private Registry registry;
+
+    @Before
+    public void setUp() {
+        registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30000,
+                DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
+        DockerSeleniumStarterRemoteProxy starterProxy = DockerSeleniumStarterRemoteProxy.getNewInstance(request, registry);
+        // Room for the containers is reserved in the inventory before their creation is queued
+        DockerSeleniumStarterRemoteProxy.setDockerClient(mock(DockerClient.class));
+        DockerSeleniumStarterRemoteProxy.setContainerInventory(mock(ContainerInventory.class));
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(
+                DockerSeleniumStarterRemoteProxy.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING);
+        spyStarterProxy = spy(starterProxy);
+    }
+
+    @After
+    public void tearDown() {
+        registry.stop();
+        DockerSeleniumStarterRemoteProxy.restoreDockerClient();
+    }
+
+    @Test
+    public void targetSizesAreBuiltFromBrowserSizesAndProfiles() {
+        Map<DockerSeleniumContainerSpec, Integer> targetSizes = DockerSeleniumWarmPool.buildTargetSizes(2, 1,
+                "chrome:1280x1024:America/Montreal:3, firefox:notAResolution:UTC:1", 1900, 1880, "Europe/Berlin");
+
+        Assert.assertEquals(3, targetSizes.size());
+        Assert.assertEquals(2, (int) targetSizes.get(new DockerSeleniumContainerSpec(BrowserType.CHROME,
+                1900, 1880, "Europe/Berlin")));
+        Assert.assertEquals(1, (int) targetSizes.get(new DockerSeleniumContainerSpec(BrowserType.FIREFOX,
+                1900, 1880, "Europe/Berlin")));
+        Assert.assertEquals(3, (int) targetSizes.get(new DockerSeleniumContainerSpec(BrowserType.CHROME,
+                1280, 1024, "America/Montreal")));
+    }
+
+    @Test
+    public void poolIsDisabledWhenNoSizesAreConfigured() {
+        DockerSeleniumWarmPool warmPool = new DockerSeleniumWarmPool(spyStarterProxy,
+                DockerSeleniumWarmPool.buildTargetSizes(0, 0, "", 1900, 1880, "Europe/Berlin"));
+        Assert.assertFalse(warmPool.isEnabled());
+    }
+
+    @Test
+    public void missingNodesAreStartedOnlyOnce() {
+        doReturn(40001, 40002, 40003).when(spyStarterProxy)
+                .createDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class), any(DockerHost.class));
+        DockerSeleniumWarmPool warmPool = new DockerSeleniumWarmPool(spyStarterProxy,
+                DockerSeleniumWarmPool.buildTargetSizes(2, 1, "", 1900, 1880, "Europe/Berlin"));
+
+        warmPool.replenish();
+        // Containers are still booting, so the second check should not start more of them.
+        warmPool.replenish();
+
+        verify(spyStarterProxy, timeout(1000).times(2)).createDockerSeleniumContainer(
+                eq(new DockerSeleniumContainerSpec(BrowserType.CHROME, 1900, 1880, "Europe/Berlin")),
+                any(DockerHost.class));
+        verify(spyStarterProxy, timeout(1000).times(1)).createDockerSeleniumContainer(
+                eq(new DockerSeleniumContainerSpec(BrowserType.FIREFOX, 1900, 1880, "Europe/Berlin")),
+                any(DockerHost.class));
+        Assert.assertEquals(3, warmPool.getPendingNodesCount());
+    }
+
+    @Test
+    public void registeredIdleNodesAreCountedInThePool() {
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40001,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        request.getConfiguration().capabilities.clear();
+        request.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+        DockerSeleniumRemoteProxy dockerSeleniumProxy = DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+        registry.add(dockerSeleniumProxy);
+
+        doReturn(-1).when(spyStarterProxy)
+                .createDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class), any(DockerHost.class));
+        DockerSeleniumWarmPool warmPool = new DockerSeleniumWarmPool(spyStarterProxy,
+                DockerSeleniumWarmPool.buildTargetSizes(1, 0, "",
+                        DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                        DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight(),
+                        DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone()));
+
+        warmPool.replenish();
+
+        verify(spyStarterProxy, times(0)).createDockerSeleniumContainer(any(DockerSeleniumContainerSpec.class),
+                any(DockerHost.class));
+    }
+}
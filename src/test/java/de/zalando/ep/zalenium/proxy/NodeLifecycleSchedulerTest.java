@@ -0,0 +1,97 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NodeLifecycleSchedulerTest {
+
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private NodeLifecycleScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void checksOfAllNodesRunInTheSameThread() throws InterruptedException {
+        scheduler = new NodeLifecycleScheduler(10);
+        int nodes = 200;
+        CountDownLatch checksDone = new CountDownLatch(nodes);
+        Set<String> checkThreads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < nodes; i++) {
+            scheduler.register("node" + i, now -> {
+                checkThreads.add(Thread.currentThread().getName());
+                checksDone.countDown();
+                return NodeLifecycleScheduler.NO_MORE_CHECKS;
+            }).runNow();
+        }
+
+        Assert.assertTrue(checksDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, checkThreads.size());
+        Assert.assertEquals(0, scheduler.getScheduledChecks());
+    }
+
+    @Test
+    public void onlyDueChecksRunAndTheEarliestDeadlineWins() {
+        // The ticker does not fire during the test, ticks are triggered by hand
+        scheduler = new NodeLifecycleScheduler(ONE_HOUR);
+        AtomicInteger wokenUpRuns = new AtomicInteger(0);
+        AtomicInteger postponedRuns = new AtomicInteger(0);
+        AtomicInteger futureRuns = new AtomicInteger(0);
+        long now = System.currentTimeMillis();
+
+        NodeLifecycleScheduler.ScheduledCheck wokenUp = scheduler.register("wokenUp", time -> {
+            wokenUpRuns.incrementAndGet();
+            return time + ONE_HOUR;
+        });
+        wokenUp.runAt(now + ONE_HOUR);
+        wokenUp.runNow();
+        NodeLifecycleScheduler.ScheduledCheck postponed = scheduler.register("postponed", time -> {
+            postponedRuns.incrementAndGet();
+            return time + ONE_HOUR;
+        });
+        postponed.runAt(now - 1);
+        postponed.runAt(now + ONE_HOUR);
+        scheduler.register("future", time -> {
+            futureRuns.incrementAndGet();
+            return time + ONE_HOUR;
+        }).runAt(now + ONE_HOUR);
+
+        scheduler.tick();
+
+        Assert.assertEquals(1, wokenUpRuns.get());
+        Assert.assertEquals(1, postponedRuns.get());
+        Assert.assertEquals(0, futureRuns.get());
+        Assert.assertEquals(3, scheduler.getScheduledChecks());
+
+        scheduler.tick();
+        Assert.assertEquals(1, wokenUpRuns.get());
+    }
+
+    @Test
+    public void cancelledChecksDoNotRun() {
+        scheduler = new NodeLifecycleScheduler(ONE_HOUR);
+        AtomicInteger runs = new AtomicInteger(0);
+        NodeLifecycleScheduler.ScheduledCheck scheduledCheck = scheduler.register("cancelled", time -> {
+            runs.incrementAndGet();
+            return time;
+        });
+        scheduledCheck.runNow();
+        scheduledCheck.cancel();
+        scheduledCheck.runNow();
+
+        scheduler.tick();
+
+        Assert.assertEquals(0, runs.get());
+        Assert.assertEquals(0, scheduler.getScheduledChecks());
+    }
+}
@@ -0,0 +1,104 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class NodeTeardownPipelineTest {
+
+    private NodeTeardownPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void aSlowStageDoesNotDelayTheOtherStages() throws InterruptedException {
+        pipeline = new NodeTeardownPipeline(stage -> 1, 10);
+        CountDownLatch dashboardBlocked = new CountDownLatch(1);
+        CountDownLatch containersStopped = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(NodeTeardownPipeline.Stage.UPDATE_DASHBOARD, "node" + i, () -> {
+                try {
+                    dashboardBlocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            pipeline.submit(NodeTeardownPipeline.Stage.STOP_CONTAINER, "node" + i, containersStopped::countDown);
+        }
+
+        Assert.assertTrue(containersStopped.await(5, TimeUnit.SECONDS));
+        await().atMost(5, TimeUnit.SECONDS).until(() ->
+                pipeline.getStageMetrics(NodeTeardownPipeline.Stage.UPDATE_DASHBOARD).getQueueDepth() == 2);
+        dashboardBlocked.countDown();
+    }
+
+    @Test
+    public void onlyThePipelineThreadsWaitForAStageOverItsThreshold() throws InterruptedException {
+        pipeline = new NodeTeardownPipeline(stage -> 1, 1);
+        CountDownLatch containersBlocked = new CountDownLatch(1);
+        List<String> stopContainerThreads = new CopyOnWriteArrayList<>();
+        Runnable stopContainer = () -> {
+            stopContainerThreads.add(Thread.currentThread().getName());
+            try {
+                containersBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        // Callers like the lifecycle ticker never wait, and never run the work themselves
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(NodeTeardownPipeline.Stage.STOP_CONTAINER, "node" + i, stopContainer);
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(() ->
+                pipeline.getStageMetrics(NodeTeardownPipeline.Stage.STOP_CONTAINER).getQueueDepth() == 2);
+
+        // A previous stage waits until the stage has room again
+        CountDownLatch handedOver = new CountDownLatch(1);
+        pipeline.submit(NodeTeardownPipeline.Stage.COPY_ARTIFACTS, "node3", () -> {
+            pipeline.submit(NodeTeardownPipeline.Stage.STOP_CONTAINER, "node3", stopContainer);
+            handedOver.countDown();
+        });
+        Assert.assertFalse(handedOver.await(200, TimeUnit.MILLISECONDS));
+
+        containersBlocked.countDown();
+        Assert.assertTrue(handedOver.await(5, TimeUnit.SECONDS));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> stopContainerThreads.size() == 4);
+        for (String threadName : stopContainerThreads) {
+            Assert.assertTrue(threadName.startsWith("NodeTeardown-STOP_CONTAINER"));
+        }
+    }
+
+    @Test
+    public void latencyAndFailuresAreRecordedPerStage() throws InterruptedException {
+        pipeline = new NodeTeardownPipeline(stage -> 2, 10);
+        CountDownLatch done = new CountDownLatch(2);
+
+        pipeline.submit(NodeTeardownPipeline.Stage.COPY_ARTIFACTS, "node", () -> {
+            done.countDown();
+            throw new IllegalStateException("Copy failed");
+        });
+        pipeline.submit(NodeTeardownPipeline.Stage.COPY_ARTIFACTS, "node", done::countDown);
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        NodeTeardownPipeline.StageMetrics metrics = pipeline.getStageMetrics(
+                NodeTeardownPipeline.Stage.COPY_ARTIFACTS);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> metrics.getExecutionLatency().getCalls() == 2);
+        Assert.assertEquals(2, metrics.getExecutionLatency().getCalls());
+        Assert.assertEquals(1, metrics.getExecutionLatency().getErrors());
+        Assert.assertEquals(2, metrics.getQueueLatency().getCalls());
+        Assert.assertEquals(0, pipeline.getStageMetrics(NodeTeardownPipeline.Stage.STOP_VIDEO)
+                .getExecutionLatency().getCalls());
+    }
+}
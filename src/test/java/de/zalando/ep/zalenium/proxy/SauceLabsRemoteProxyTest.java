@@ -21,6 +21,12 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.mockito.Mockito.*;
 
@@ -190,7 +196,7 @@ public class SauceLabsRemoteProxyTest {
             RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30001,
                     SauceLabsRemoteProxy.class.getCanonicalName());
 
-            request = SauceLabsRemoteProxy.updateSLCapabilities(request, "");
+            request = SauceLabsRemoteProxy.updateSLCapabilities(request);
 
             // Now the capabilities should be filled even if the url was not fetched
             Assert.assertFalse(request.getConfiguration().capabilities.isEmpty());
@@ -199,6 +205,64 @@ public class SauceLabsRemoteProxyTest {
         }
     }
 
+    @Test
+    public void slotsAreResizedOnceTheAccountConcurrencyIsRead() {
+        // The node registers with one slot, without waiting for the account information
+        Assert.assertEquals(1, sauceLabsProxy.getTestSlots().size());
+
+        sauceLabsProxy.accountConcurrencyRead(new CloudConcurrencyTracker.AccountConcurrency(10, 0));
+        Assert.assertEquals(10, sauceLabsProxy.getTestSlots().size());
+        Assert.assertEquals(10, sauceLabsProxy.getMaxNumberOfConcurrentTestSessions());
+
+        // A busy slot is kept until its test is over
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.MAC);
+        TestSession testSession = sauceLabsProxy.getNewSession(requestedCapability);
+        Assert.assertNotNull(testSession);
+        sauceLabsProxy.accountConcurrencyRead(new CloudConcurrencyTracker.AccountConcurrency(0, 0));
+        Assert.assertEquals(1, sauceLabsProxy.getTestSlots().size());
+        Assert.assertNotNull(sauceLabsProxy.getTestSlots().get(0).getSession());
+    }
+
+    @Test
+    public void slotsGettingASessionAreNotDroppedByAConcurrentResize() throws Exception {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.MAC);
+        List<TestSession> testSessions = new CopyOnWriteArrayList<>();
+        AtomicBoolean sessionsDone = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> resizes = executor.submit(() -> {
+                for (int i = 0; !sessionsDone.get(); i++) {
+                    sauceLabsProxy.resizeTestSlots(i % 2 == 0 ? 10 : 1);
+                }
+            });
+            Future<?> sessions = executor.submit(() -> {
+                for (int i = 0; i < 2000 && testSessions.size() < 10; i++) {
+                    TestSession testSession = sauceLabsProxy.getNewSession(requestedCapability);
+                    if (testSession != null) {
+                        testSessions.add(testSession);
+                    }
+                }
+                sessionsDone.set(true);
+            });
+            sessions.get(30, TimeUnit.SECONDS);
+            resizes.get(30, TimeUnit.SECONDS);
+        } finally {
+            sessionsDone.set(true);
+            executor.shutdownNow();
+        }
+
+        // Every session handed out is still in a slot of the proxy
+        Assert.assertFalse(testSessions.isEmpty());
+        for (TestSession testSession : testSessions) {
+            Assert.assertTrue(sauceLabsProxy.getTestSlots().contains(testSession.getSlot()));
+        }
+        Assert.assertEquals(testSessions.size(), sauceLabsProxy.getTotalUsed());
+    }
+
     @Test
     public void testEventIsInvoked() throws IOException {
         try {
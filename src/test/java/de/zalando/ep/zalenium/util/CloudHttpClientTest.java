@@ -0,0 +1,177 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.gson.JsonElement;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CloudHttpClientTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void jsonIsParsedFromTheResponseAndLatencyIsRecordedPerHost() throws IOException {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse response = mockResponse(200, "{\"concurrency\": {\"team\": 5}}");
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+        CloudHttpClient cloudHttpClient = new CloudHttpClient(httpClient);
+
+        JsonElement jsonElement = cloudHttpClient.getJson("https://saucelabs.com/rest/v1/users/user", "user", "key");
+
+        Assert.assertEquals(5, jsonElement.getAsJsonObject().getAsJsonObject("concurrency").get("team").getAsInt());
+        ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient).execute(request.capture());
+        Assert.assertEquals(CloudHttpClient.basicAuthentication("user", "key"),
+                request.getValue().getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+        verify(response).close();
+        LatencyHistogram latency = cloudHttpClient.getHostMetrics().get("saucelabs.com");
+        Assert.assertEquals(1, latency.getCalls());
+        Assert.assertEquals(0, latency.getErrors());
+    }
+
+    @Test
+    public void errorStatusIsThrownAndCountedAsAnError() throws IOException {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse response = mockResponse(503, "Service Unavailable");
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+        CloudHttpClient cloudHttpClient = new CloudHttpClient(httpClient);
+
+        try {
+            cloudHttpClient.getJson("https://api.testingbot.com/v1/user", "key", "secret");
+            Assert.fail("An error status should be thrown");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("503"));
+        }
+        Assert.assertEquals(1, cloudHttpClient.getHostMetrics().get("api.testingbot.com").getErrors());
+    }
+
+    @Test
+    public void interruptedDownloadIsResumedFromWhereItStopped() throws IOException {
+        byte[] video = new byte[100 * 1024];
+        new Random(1).nextBytes(video);
+        int interruptedAt = 70 * 1024;
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse firstResponse = mockResponse(200, null);
+        BasicHttpEntity interruptedEntity = new BasicHttpEntity();
+        interruptedEntity.setContentLength(video.length);
+        interruptedEntity.setContent(new SequenceInputStream(new ByteArrayInputStream(video, 0, interruptedAt),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                }));
+        when(firstResponse.getEntity()).thenReturn(interruptedEntity);
+        when(firstResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+        CloseableHttpResponse secondResponse = mockResponse(206, null);
+        when(secondResponse.getEntity()).thenReturn(new ByteArrayEntity(
+                Arrays.copyOfRange(video, interruptedAt, video.length)));
+        when(secondResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(
+                HttpHeaders.CONTENT_RANGE, String.format("bytes %s-%s/%s", interruptedAt, video.length - 1,
+                video.length)));
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(firstResponse, secondResponse);
+        CloudHttpClient cloudHttpClient = new CloudHttpClient(httpClient);
+        Path target = temporaryFolder.getRoot().toPath().resolve("videos/test.mp4");
+
+        try {
+            cloudHttpClient.download("https://saucelabs.com/video.mp4", target, null);
+            Assert.fail("The first attempt should fail");
+        } catch (IOException e) {
+            Assert.assertFalse(Files.exists(target));
+            Assert.assertEquals(interruptedAt, Files.size(CloudHttpClient.getPartialFile(target)));
+        }
+        cloudHttpClient.download("https://saucelabs.com/video.mp4", target, null);
+
+        ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(2)).execute(requests.capture());
+        Assert.assertNull(requests.getAllValues().get(0).getFirstHeader(HttpHeaders.RANGE));
+        Assert.assertEquals("bytes=" + interruptedAt + "-",
+                requests.getAllValues().get(1).getFirstHeader(HttpHeaders.RANGE).getValue());
+        Assert.assertEquals("\"v1\"", requests.getAllValues().get(1).getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+        Assert.assertArrayEquals(video, Files.readAllBytes(target));
+        Assert.assertFalse(Files.exists(CloudHttpClient.getPartialFile(target)));
+    }
+
+    @Test
+    public void partialFileThatDoesNotFitTheFileOnTheServerIsDeleted() throws IOException {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse firstResponse = mockResponse(200, null);
+        BasicHttpEntity interruptedEntity = new BasicHttpEntity();
+        interruptedEntity.setContentLength(2048);
+        interruptedEntity.setContent(new SequenceInputStream(new ByteArrayInputStream(new byte[1024]),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                }));
+        when(firstResponse.getEntity()).thenReturn(interruptedEntity);
+        when(firstResponse.getFirstHeader(HttpHeaders.LAST_MODIFIED)).thenReturn(new BasicHeader(
+                HttpHeaders.LAST_MODIFIED, "Wed, 21 Oct 2026 07:28:00 GMT"));
+        // The file on the server is shorter than what was already downloaded
+        CloseableHttpResponse secondResponse = mockResponse(416, null);
+        when(secondResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(
+                HttpHeaders.CONTENT_RANGE, "bytes */512"));
+        CloseableHttpResponse thirdResponse = mockResponse(200, null);
+        when(thirdResponse.getEntity()).thenReturn(new ByteArrayEntity(new byte[512]));
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(firstResponse, secondResponse, thirdResponse);
+        CloudHttpClient cloudHttpClient = new CloudHttpClient(httpClient);
+        Path target = temporaryFolder.getRoot().toPath().resolve("logs/selenium.log");
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                cloudHttpClient.download("https://testingbot.com/selenium.log", target, null);
+                Assert.fail("The attempt should fail");
+            } catch (IOException e) {
+                Assert.assertFalse(Files.exists(target));
+            }
+        }
+        Assert.assertFalse(Files.exists(CloudHttpClient.getPartialFile(target)));
+        cloudHttpClient.download("https://testingbot.com/selenium.log", target, null);
+
+        ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(3)).execute(requests.capture());
+        Assert.assertEquals("Wed, 21 Oct 2026 07:28:00 GMT",
+                requests.getAllValues().get(1).getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+        Assert.assertNull(requests.getAllValues().get(2).getFirstHeader(HttpHeaders.RANGE));
+        Assert.assertEquals(512, Files.size(target));
+    }
+
+    private static CloseableHttpResponse mockResponse(int statusCode, String body) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        if (body != null) {
+            when(response.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        }
+        return response;
+    }
+}